@@ -1,45 +1,33 @@
 package com.jozsef.webflux;
 
 import com.jozsef.webflux.handler.ProductHandler;
-import com.jozsef.webflux.model.Product;
-import com.jozsef.webflux.repository.ProductRepository;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerResponse;
-import reactor.core.publisher.Flux;
 
+import static com.jozsef.webflux.codec.ProductCodecs.APPLICATION_CBOR_SEQ;
+import static com.jozsef.webflux.codec.ProductCodecs.APPLICATION_PROTOBUF;
+import static com.jozsef.webflux.codec.ProductCodecs.APPLICATION_SMILE;
+import static com.jozsef.webflux.codec.ProductCodecs.APPLICATION_STREAM_SMILE;
+import static org.springframework.http.MediaType.APPLICATION_CBOR;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
 import static org.springframework.web.reactive.function.server.RequestPredicates.accept;
 import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
 
 @SpringBootApplication
-@Slf4j
+@ConfigurationPropertiesScan
 public class SpringWebfluxDemoApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(SpringWebfluxDemoApplication.class, args);
     }
 
-    @Bean
-    public CommandLineRunner init(ProductRepository repository) {
-        return args -> {
-            Flux<Product> productFlux = Flux.just(
-                    Product.builder().name("Big Latte").price(2.99).build(),
-                    Product.builder().name("Big Decaf").price(2.49).build(),
-                    Product.builder().name("Green Tea").price(1.99).build()
-                    ).flatMap(repository::insert);
-
-            productFlux.thenMany(repository.findAll())
-                       .subscribe(p -> log.info("Inserted product: {}", p));
-        };
-    }
-
     @Bean
     public RouterFunction<ServerResponse> routes(ProductHandler handler) {
 //        return route()
@@ -54,11 +42,20 @@ public class SpringWebfluxDemoApplication {
 
         return route()
                 .path("functional/products", builder -> builder
-                        .nest(accept(APPLICATION_JSON).or(contentType(APPLICATION_JSON)).or(accept(TEXT_EVENT_STREAM)),
+                        .nest(accept(APPLICATION_JSON, TEXT_EVENT_STREAM, APPLICATION_NDJSON, APPLICATION_SMILE,
+                                     APPLICATION_STREAM_SMILE, APPLICATION_CBOR, APPLICATION_CBOR_SEQ, APPLICATION_PROTOBUF)
+                                        .or(contentType(APPLICATION_JSON, APPLICATION_NDJSON, APPLICATION_SMILE, APPLICATION_STREAM_SMILE,
+                                                APPLICATION_CBOR, APPLICATION_CBOR_SEQ, APPLICATION_PROTOBUF)),
                                 nestedBuilder -> nestedBuilder.GET("/events", handler::getProductEvents)
+                                                              .GET("/export", handler::exportProducts)
+                                                              .GET("/search", handler::searchProducts)
+                                                              .GET("/stats", handler::getPriceStats)
+                                                              .GET("/snapshot", handler::getCatalogSnapshot)
                                                               .GET("/{id}", handler::getProduct)
                                                               .GET(handler::getAllProducts)
                                                               .PUT("/{id}", handler::updateProduct)
+                                                              .POST("/_bulk", handler::saveProducts)
+                                                              .POST("/_mget", handler::getProductsById)
                                                               .POST(handler::saveProduct)
                         )
                         .DELETE("/{id}", handler::deleteProduct)
@@ -0,0 +1,74 @@
+package com.jozsef.webflux.api;
+
+import com.jozsef.webflux.model.Product;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Entity tags for products, derived from their {@link Product#getVersion() version}.
+ */
+public final class ProductETags {
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private ProductETags() {
+    }
+
+    /**
+     * Strong tag of the product's version, or null for a product stored without one; it gets no tag rather than a
+     * tag every unversioned product would share.
+     */
+    public static String of(Product product) {
+        return product.getVersion() == null ? null : "\"" + product.getVersion() + "\"";
+    }
+
+    /**
+     * Versions an If-Match header accepts, or null when it is absent or {@code *} and any version matches. The
+     * header may list several tags; weak ones are skipped since If-Match compares strongly. Signals
+     * {@link IllegalArgumentException} for a malformed header or one that names no product version, which can never
+     * match.
+     */
+    public static Set<Long> expectedVersions(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        Set<Long> versions = new LinkedHashSet<>();
+        int position = 0;
+        while (position < ifMatch.length()) {
+            char c = ifMatch.charAt(position);
+            if (c == ',' || Character.isWhitespace(c)) {
+                position++;
+                continue;
+            }
+
+            boolean weak = ifMatch.startsWith(WEAK_PREFIX, position);
+            int open = weak ? position + WEAK_PREFIX.length() : position;
+            int close = ifMatch.indexOf('"', open + 1);
+            if (open >= ifMatch.length() || ifMatch.charAt(open) != '"' || close < 0) {
+                throw new IllegalArgumentException("Malformed If-Match header");
+            }
+
+            Long version = weak ? null : version(ifMatch.substring(open + 1, close));
+            if (version != null) {
+                versions.add(version);
+            }
+            position = close + 1;
+        }
+
+        if (versions.isEmpty()) {
+            throw new IllegalArgumentException("If-Match does not name a product version");
+        }
+        return versions;
+    }
+
+    private static Long version(String opaqueTag) {
+        try {
+            return Long.valueOf(opaqueTag);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
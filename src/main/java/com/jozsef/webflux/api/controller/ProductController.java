@@ -1,64 +1,214 @@
 package com.jozsef.webflux.api.controller;
 
+import com.jozsef.webflux.api.ProductETags;
+import com.jozsef.webflux.codec.ProductCodecs;
 import com.jozsef.webflux.model.Product;
 import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductLookupResult;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.jozsef.webflux.repository.ProductCursor;
+import com.jozsef.webflux.repository.ProductQuery;
+import com.jozsef.webflux.repository.ProductRepositoryCustom;
+import com.jozsef.webflux.search.ProductSearchIndex;
 import com.jozsef.webflux.service.ProductService;
+import com.jozsef.webflux.snapshot.ProductCatalogSnapshot;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/products")
 public class ProductController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
     private final ProductService productService;
 
     public ProductController(ProductService productService) {
         this.productService = productService;
     }
 
-    @GetMapping
-    public Flux<Product> getAllProducts() {
-        return this.productService.getAllProducts();
+    // explicit, so that JSON stays the answer to */* ahead of the binary codecs
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+            ProductCodecs.APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE, ProductCodecs.APPLICATION_PROTOBUF_VALUE})
+    public Mono<ResponseEntity<Flux<Product>>> getAllProducts(@RequestParam(required = false) String cursor,
+                                                             @RequestParam(required = false) Integer size,
+                                                             @RequestParam(defaultValue = ProductCursor.ID) String sort,
+                                                             @RequestParam(required = false) String namePrefix,
+                                                             @RequestParam(required = false) String nameContains,
+                                                             @RequestParam(required = false) Double minPrice,
+                                                             @RequestParam(required = false) Double maxPrice,
+                                                             @RequestParam(required = false) String fields) {
+        ProductQuery query = ProductQuery.builder()
+                .namePrefix(namePrefix)
+                .nameContains(nameContains)
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .sort(sort)
+                .fields(ProductQuery.parseFields(fields))
+                .build();
+
+        Mono<ResponseEntity<Flux<Product>>> response;
+        if (cursor == null && size == null) {
+            // validated before the body is returned, so a bad query is still a 400 rather than a broken stream
+            response = Mono.fromCallable(() -> ResponseEntity.ok(query.isAll()
+                    ? this.productService.getAllProducts()
+                    : this.productService.getProducts(query.validate())));
+        } else {
+            int pageSize = size == null ? ProductRepositoryCustom.DEFAULT_PAGE_SIZE : size;
+            response = productService.getProductPage(query, cursor, pageSize)
+                    .map(page -> {
+                        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+                        if (page.getNextCursor() != null) {
+                            builder.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+                        }
+                        return builder.body(Flux.fromIterable(page.getProducts()));
+                    });
+        }
+
+        return response.onErrorMap(IllegalArgumentException.class,
+                e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+    }
+
+    @GetMapping(value = "/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE,
+            ProductCodecs.APPLICATION_STREAM_SMILE_VALUE, ProductCodecs.APPLICATION_CBOR_SEQ_VALUE,
+            ProductCodecs.APPLICATION_PROTOBUF_VALUE})
+    public Flux<Product> exportProducts() {
+        return productService.exportProducts();
+    }
+
+    @GetMapping(value = "/search", produces = {MediaType.APPLICATION_JSON_VALUE, ProductCodecs.APPLICATION_SMILE_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, ProductCodecs.APPLICATION_PROTOBUF_VALUE})
+    public Flux<Product> searchProducts(@RequestParam("q") String query,
+                                        @RequestParam(defaultValue = "" + ProductSearchIndex.DEFAULT_LIMIT) int limit) {
+        return productService.searchProducts(query, limit)
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+    }
+
+    @GetMapping(value = "/stats", produces = {MediaType.APPLICATION_JSON_VALUE, ProductCodecs.APPLICATION_SMILE_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE})
+    public Mono<ProductStats> getPriceStats(@RequestParam(required = false) Double bucketWidth) {
+        return productService.getPriceStats(bucketWidth)
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+    }
+
+    @GetMapping(value = "/snapshot", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Resource>> getCatalogSnapshot(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = ProductCatalogSnapshot.acceptsGzip(acceptEncoding);
+
+        // a file resource is written with zero-copy file transfer where the server supports it
+        return productService.getCatalogSnapshot()
+                .map(snapshot -> {
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                            .eTag(snapshot.eTag(gzip))
+                            .lastModified(snapshot.getWrittenAt())
+                            .cacheControl(CacheControl.maxAge(snapshot.getMaxAge()).cachePublic())
+                            .varyBy(HttpHeaders.ACCEPT_ENCODING);
+                    if (gzip) {
+                        builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    }
+                    return builder.<Resource>body(new FileSystemResource(gzip ? snapshot.getGzipFile() : snapshot.getFile()));
+                })
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
     }
 
-    @GetMapping("/{id}")
+    @GetMapping(value = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, ProductCodecs.APPLICATION_SMILE_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, ProductCodecs.APPLICATION_PROTOBUF_VALUE})
     public Mono<ResponseEntity<Product>> getProduct(@PathVariable String id) {
+        // the ETag lets the result handler answer If-None-Match with 304 before the body is serialized
         return productService.getProductById(id)
-                .map(product -> ResponseEntity.ok(product))
+                .map(product -> okWithETag(product).body(product))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
-    @PostMapping
+    @PostMapping(value = "/_mget", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<ProductLookupResult> getProductsById(@RequestBody List<String> ids) {
+        return productService.getProductsById(ids)
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+    }
+
+    @PostMapping(produces = {MediaType.APPLICATION_JSON_VALUE, ProductCodecs.APPLICATION_SMILE_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, ProductCodecs.APPLICATION_PROTOBUF_VALUE})
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<Product> saveProduct(@RequestBody Product product) {
-        return productService.saveProduct(product);
+        return productService.saveProduct(product)
+                .onErrorMap(DuplicateKeyException.class,
+                        e -> new ResponseStatusException(HttpStatus.CONFLICT, "Product " + product.getId() + " already exists"));
     }
 
-    @PutMapping("{id}")
-    public Mono<ResponseEntity<Product>> updateProduct(@PathVariable String id, @RequestBody Product product) {
-        return productService.updateProduct(id, product)
-                .map(updatedProduct -> ResponseEntity.ok(updatedProduct))
-                .defaultIfEmpty(ResponseEntity.notFound().build());
+    @PostMapping(value = "/_bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+                    ProductCodecs.APPLICATION_SMILE_VALUE, ProductCodecs.APPLICATION_STREAM_SMILE_VALUE,
+                    MediaType.APPLICATION_CBOR_VALUE, ProductCodecs.APPLICATION_CBOR_SEQ_VALUE,
+                    ProductCodecs.APPLICATION_PROTOBUF_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ProductWriteResult> saveProducts(@RequestBody Flux<Product> products) {
+        return productService.saveProducts(products);
+    }
+
+    @PutMapping(value = "{id}", produces = {MediaType.APPLICATION_JSON_VALUE, ProductCodecs.APPLICATION_SMILE_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, ProductCodecs.APPLICATION_PROTOBUF_VALUE})
+    public Mono<ResponseEntity<Product>> updateProduct(@PathVariable String id, @RequestBody Product product,
+                                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Set<Long> expectedVersions;
+        try {
+            expectedVersions = ProductETags.expectedVersions(ifMatch);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build());
+        }
+
+        return productService.updateProduct(id, product, expectedVersions)
+                .map(updatedProduct -> okWithETag(updatedProduct).body(updatedProduct))
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorReturn(OptimisticLockingFailureException.class, ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build());
     }
 
     @DeleteMapping("{id}")
-    public Mono<ResponseEntity<Void>> deleteProduct(@PathVariable String id) {
-        return productService.deleteProduct(id).then(Mono.just(ResponseEntity.ok().<Void>build()))
-                .defaultIfEmpty(ResponseEntity.notFound().build());
+    public Mono<ResponseEntity<Void>> deleteProduct(@PathVariable String id,
+                                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Set<Long> expectedVersions;
+        try {
+            expectedVersions = ProductETags.expectedVersions(ifMatch);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build());
+        }
+
+        return productService.deleteProduct(id, expectedVersions)
+                .map(removedProduct -> ResponseEntity.ok().<Void>build())
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorReturn(OptimisticLockingFailureException.class, ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build());
     }
 
     @DeleteMapping
@@ -67,9 +217,20 @@ public class ProductController {
     }
 
     @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ProductEvent> getProductEvents() {
-        return Flux.interval(Duration.ofSeconds(1))
-                .map(val -> new ProductEvent(val, "Product Event"));
+    public Flux<ServerSentEvent<ProductEvent>> getProductEvents(
+            @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) Long lastEventId) {
+        return productService.getProductEvents(lastEventId)
+                .map(event -> ServerSentEvent.builder(event).id(Objects.toString(event.getEventId(), null)).build());
     }
 
+    @GetMapping(value = "/events", produces = ProductCodecs.APPLICATION_PROTOBUF_VALUE)
+    public Flux<ProductEvent> getProductEventMessages(
+            @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) Long lastEventId) {
+        return productService.getProductEvents(lastEventId);
+    }
+
+    private static ResponseEntity.BodyBuilder okWithETag(Product product) {
+        String eTag = ProductETags.of(product);
+        return eTag == null ? ResponseEntity.ok() : ResponseEntity.ok().eTag(eTag);
+    }
 }
@@ -0,0 +1,80 @@
+package com.jozsef.webflux.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.CodecConfigurer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary content types offered next to JSON. Smile comes with the default Jackson codecs; CBOR with streaming
+ * support and the Protobuf encoding of {@code Product} and {@code ProductEvent} are registered here.
+ */
+public final class ProductCodecs {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
+    /**
+     * Smile values written one after another, flushed as they are produced.
+     */
+    public static final String APPLICATION_STREAM_SMILE_VALUE = "application/stream+x-jackson-smile";
+    public static final MediaType APPLICATION_STREAM_SMILE = MediaType.valueOf(APPLICATION_STREAM_SMILE_VALUE);
+
+    /**
+     * RFC 8742 CBOR sequence: CBOR items written one after another, flushed as they are produced.
+     */
+    public static final String APPLICATION_CBOR_SEQ_VALUE = "application/cbor-seq";
+    public static final MediaType APPLICATION_CBOR_SEQ = MediaType.valueOf(APPLICATION_CBOR_SEQ_VALUE);
+
+    /**
+     * Messages of {@code proto/product.proto}; a stream of them is framed with varint length prefixes, the same
+     * as protobuf's {@code writeDelimitedTo}.
+     */
+    public static final String APPLICATION_PROTOBUF_VALUE = "application/x-protobuf";
+    public static final MediaType APPLICATION_PROTOBUF = MediaType.valueOf(APPLICATION_PROTOBUF_VALUE);
+
+    /**
+     * Content types a product or a list of products can be written as, JSON first as the default.
+     */
+    public static final List<MediaType> PRODUCT_MEDIA_TYPES = List.of(MediaType.APPLICATION_JSON, APPLICATION_SMILE,
+            MediaType.APPLICATION_CBOR, APPLICATION_PROTOBUF);
+
+    /**
+     * Content types an export can be streamed as, NDJSON first as the default.
+     */
+    public static final List<MediaType> STREAM_MEDIA_TYPES = List.of(MediaType.APPLICATION_NDJSON,
+            MediaType.TEXT_EVENT_STREAM, APPLICATION_STREAM_SMILE, APPLICATION_CBOR_SEQ, APPLICATION_PROTOBUF);
+
+    private ProductCodecs() {
+    }
+
+    public static void register(CodecConfigurer configurer) {
+        ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+
+        configurer.customCodecs().registerWithDefaultConfig(new StreamingCborEncoder(cborMapper));
+        configurer.customCodecs().registerWithDefaultConfig(new StreamingCborDecoder(cborMapper));
+        configurer.customCodecs().registerWithDefaultConfig(new ProductProtobufEncoder());
+        configurer.customCodecs().registerWithDefaultConfig(new ProductProtobufDecoder());
+    }
+
+    /**
+     * The first of {@code supported} the client accepts, honouring quality values, or the first of
+     * {@code supported} when the client states no preference.
+     */
+    public static MediaType select(List<MediaType> accepted, List<MediaType> supported) {
+        List<MediaType> byPreference = new ArrayList<>(accepted);
+        MediaType.sortBySpecificityAndQuality(byPreference);
+        for (MediaType acceptable : byPreference) {
+            for (MediaType candidate : supported) {
+                if (acceptable.isCompatibleWith(candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        return supported.get(0);
+    }
+
+}
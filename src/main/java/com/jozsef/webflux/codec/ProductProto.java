@@ -0,0 +1,171 @@
+package com.jozsef.webflux.codec;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes the messages of {@code proto/product.proto} straight from and to the model classes, which
+ * saves generating and copying into protoc message classes for two small messages.
+ */
+final class ProductProto {
+
+    private static final int PRODUCT_ID = 1;
+    private static final int PRODUCT_NAME = 2;
+    private static final int PRODUCT_PRICE = 3;
+    private static final int PRODUCT_VERSION = 4;
+
+    private static final int EVENT_ID = 1;
+    private static final int EVENT_TYPE = 2;
+    private static final int EVENT_PRODUCT_ID = 3;
+    private static final int EVENT_PRODUCT = 4;
+
+    private static final ProductEvent.Type[] EVENT_TYPES = ProductEvent.Type.values();
+
+    private ProductProto() {
+    }
+
+    static boolean supports(Class<?> type) {
+        return Product.class.isAssignableFrom(type) || ProductEvent.class.isAssignableFrom(type);
+    }
+
+    static int size(Object value) {
+        return value instanceof ProductEvent ? size((ProductEvent) value) : size((Product) value);
+    }
+
+    static void write(Object value, CodedOutputStream out) throws IOException {
+        if (value instanceof ProductEvent) {
+            write((ProductEvent) value, out);
+        } else {
+            write((Product) value, out);
+        }
+    }
+
+    static Object read(Class<?> type, CodedInputStream in) throws IOException {
+        return ProductEvent.class.isAssignableFrom(type) ? readEvent(in) : readProduct(in);
+    }
+
+    static int size(Product product) {
+        int size = 0;
+        if (product.getId() != null) {
+            size += CodedOutputStream.computeStringSize(PRODUCT_ID, product.getId());
+        }
+        if (product.getName() != null) {
+            size += CodedOutputStream.computeStringSize(PRODUCT_NAME, product.getName());
+        }
+        if (product.getPrice() != null) {
+            size += CodedOutputStream.computeDoubleSize(PRODUCT_PRICE, product.getPrice());
+        }
+        if (product.getVersion() != null) {
+            size += CodedOutputStream.computeInt64Size(PRODUCT_VERSION, product.getVersion());
+        }
+        return size;
+    }
+
+    static void write(Product product, CodedOutputStream out) throws IOException {
+        if (product.getId() != null) {
+            out.writeString(PRODUCT_ID, product.getId());
+        }
+        if (product.getName() != null) {
+            out.writeString(PRODUCT_NAME, product.getName());
+        }
+        if (product.getPrice() != null) {
+            out.writeDouble(PRODUCT_PRICE, product.getPrice());
+        }
+        if (product.getVersion() != null) {
+            out.writeInt64(PRODUCT_VERSION, product.getVersion());
+        }
+    }
+
+    static Product readProduct(CodedInputStream in) throws IOException {
+        Product product = new Product();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (tag) {
+                case PRODUCT_ID << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    product.setId(in.readString());
+                    break;
+                case PRODUCT_NAME << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    product.setName(in.readString());
+                    break;
+                case PRODUCT_PRICE << 3 | WireFormat.WIRETYPE_FIXED64:
+                    product.setPrice(in.readDouble());
+                    break;
+                case PRODUCT_VERSION << 3 | WireFormat.WIRETYPE_VARINT:
+                    product.setVersion(in.readInt64());
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return product;
+    }
+
+    static int size(ProductEvent event) {
+        int size = 0;
+        if (event.getEventId() != null) {
+            size += CodedOutputStream.computeInt64Size(EVENT_ID, event.getEventId());
+        }
+        if (event.getEventType() != null) {
+            size += CodedOutputStream.computeEnumSize(EVENT_TYPE, event.getEventType().ordinal());
+        }
+        if (event.getProductId() != null) {
+            size += CodedOutputStream.computeStringSize(EVENT_PRODUCT_ID, event.getProductId());
+        }
+        if (event.getProduct() != null) {
+            size += CodedOutputStream.computeTagSize(EVENT_PRODUCT) + CodedOutputStream.computeUInt32SizeNoTag(size(event.getProduct()))
+                    + size(event.getProduct());
+        }
+        return size;
+    }
+
+    static void write(ProductEvent event, CodedOutputStream out) throws IOException {
+        if (event.getEventId() != null) {
+            out.writeInt64(EVENT_ID, event.getEventId());
+        }
+        if (event.getEventType() != null) {
+            out.writeEnum(EVENT_TYPE, event.getEventType().ordinal());
+        }
+        if (event.getProductId() != null) {
+            out.writeString(EVENT_PRODUCT_ID, event.getProductId());
+        }
+        if (event.getProduct() != null) {
+            out.writeTag(EVENT_PRODUCT, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(size(event.getProduct()));
+            write(event.getProduct(), out);
+        }
+    }
+
+    static ProductEvent readEvent(CodedInputStream in) throws IOException {
+        ProductEvent event = new ProductEvent();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (tag) {
+                case EVENT_ID << 3 | WireFormat.WIRETYPE_VARINT:
+                    event.setEventId(in.readInt64());
+                    break;
+                case EVENT_TYPE << 3 | WireFormat.WIRETYPE_VARINT:
+                    int type = in.readEnum();
+                    event.setEventType(type >= 0 && type < EVENT_TYPES.length ? EVENT_TYPES[type] : null);
+                    break;
+                case EVENT_PRODUCT_ID << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    event.setProductId(in.readString());
+                    break;
+                case EVENT_PRODUCT << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    event.setProduct(readProduct(in));
+                    in.checkLastTagWas(0);
+                    in.popLimit(limit);
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return event;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.jozsef.webflux.codec;
+
+import com.google.protobuf.CodedInputStream;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a {@code Product} or {@code ProductEvent} protobuf message; a {@code Flux} of them from length-prefixed
+ * messages. The body is aggregated first, within {@link #setMaxMessageSize the limit}.
+ */
+public class ProductProtobufDecoder implements Decoder<Object> {
+
+    private static final List<MimeType> MIME_TYPES = List.of(ProductCodecs.APPLICATION_PROTOBUF);
+
+    private int maxMessageSize = 256 * 1024;
+
+    /**
+     * Limit on the aggregated body, 256K by default.
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        return ProductProto.supports(elementType.toClass())
+                && (mimeType == null || ProductCodecs.APPLICATION_PROTOBUF.isCompatibleWith(mimeType));
+    }
+
+    @Override
+    public Flux<Object> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType, MimeType mimeType,
+                               Map<String, Object> hints) {
+        return join(inputStream).flatMapIterable(buffer -> {
+            try {
+                CodedInputStream in = CodedInputStream.newInstance(buffer.asByteBuffer());
+                List<Object> values = new ArrayList<>();
+                while (!in.isAtEnd()) {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    values.add(ProductProto.read(elementType.toClass(), in));
+                    in.popLimit(limit);
+                }
+                return values;
+            } catch (IOException e) {
+                throw new DecodingException("Protobuf decoding error: " + e.getMessage(), e);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        });
+    }
+
+    @Override
+    public Mono<Object> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType, MimeType mimeType,
+                                     Map<String, Object> hints) {
+        return join(inputStream).map(buffer -> decode(buffer, elementType, mimeType, hints));
+    }
+
+    @Override
+    public Object decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints) {
+        try {
+            return ProductProto.read(targetType.toClass(), CodedInputStream.newInstance(buffer.asByteBuffer()));
+        } catch (IOException e) {
+            throw new DecodingException("Protobuf decoding error: " + e.getMessage(), e);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private Mono<DataBuffer> join(Publisher<DataBuffer> inputStream) {
+        return DataBufferUtils.join(inputStream, maxMessageSize)
+                              .onErrorMap(DataBufferLimitException.class,
+                                      e -> new DecodingException("Protobuf message exceeds " + maxMessageSize + " bytes", e));
+    }
+
+    @Override
+    public List<MimeType> getDecodableMimeTypes() {
+        return MIME_TYPES;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.jozsef.webflux.codec;
+
+import com.google.protobuf.CodedOutputStream;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@code Product} or {@code ProductEvent} as a protobuf message; a {@code Flux} of them as length-prefixed
+ * messages, flushed one by one.
+ */
+public class ProductProtobufEncoder implements HttpMessageEncoder<Object> {
+
+    private static final List<MimeType> MIME_TYPES = List.of(ProductCodecs.APPLICATION_PROTOBUF);
+    private static final List<MediaType> STREAMING_MEDIA_TYPES = List.of(ProductCodecs.APPLICATION_PROTOBUF);
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return ProductProto.supports(elementType.toClass()) && supportsMimeType(mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                   MimeType mimeType, Map<String, Object> hints) {
+        if (inputStream instanceof Mono) {
+            return Mono.from(inputStream)
+                       .map(value -> encode(value, bufferFactory, false))
+                       .flux();
+        }
+        return Flux.from(inputStream)
+                   .map(value -> encode(value, bufferFactory, true));
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  MimeType mimeType, Map<String, Object> hints) {
+        return encode(value, bufferFactory, false);
+    }
+
+    private DataBuffer encode(Object value, DataBufferFactory bufferFactory, boolean delimited) {
+        int size = ProductProto.size(value);
+        int length = delimited ? CodedOutputStream.computeUInt32SizeNoTag(size) + size : size;
+        DataBuffer buffer = bufferFactory.allocateBuffer(length);
+        boolean release = true;
+        try {
+            CodedOutputStream out = CodedOutputStream.newInstance(buffer.asOutputStream(), length);
+            if (delimited) {
+                out.writeUInt32NoTag(size);
+            }
+            ProductProto.write(value, out);
+            out.flush();
+            release = false;
+            return buffer;
+        } catch (IOException e) {
+            throw new EncodingException("Protobuf encoding error: " + e.getMessage(), e);
+        } finally {
+            if (release) {
+                DataBufferUtils.release(buffer);
+            }
+        }
+    }
+
+    @Override
+    public List<MimeType> getEncodableMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public List<MediaType> getStreamingMediaTypes() {
+        return STREAMING_MEDIA_TYPES;
+    }
+
+    private static boolean supportsMimeType(MimeType mimeType) {
+        return mimeType == null || ProductCodecs.APPLICATION_PROTOBUF.isCompatibleWith(mimeType);
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.jozsef.webflux.codec;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * {@link Jackson2CborDecoder} that can also read a {@code Flux}, either from a CBOR array or a CBOR sequence.
+ * Jackson has no non-blocking CBOR parser, so the body is aggregated first, within the configured in-memory limit.
+ */
+public class StreamingCborDecoder extends Jackson2CborDecoder {
+
+    public StreamingCborDecoder(ObjectMapper mapper) {
+        super(mapper, MediaType.APPLICATION_CBOR, ProductCodecs.APPLICATION_CBOR_SEQ);
+    }
+
+    @Override
+    public Flux<Object> decode(Publisher<DataBuffer> input, ResolvableType elementType, MimeType mimeType,
+                               Map<String, Object> hints) {
+        return DataBufferUtils.join(input, getMaxInMemorySize())
+                              .flatMapMany(buffer -> {
+                                  // a root level array is unwrapped, a sequence read value by value
+                                  try (MappingIterator<Object> values = getObjectMapper().readerFor(getJavaType(elementType.getType(), null))
+                                                                                         .readValues(buffer.asInputStream())) {
+                                      return Flux.fromIterable(values.readAll());
+                                  } catch (IOException e) {
+                                      return Flux.error(new DecodingException("CBOR decoding error: " + e.getMessage(), e));
+                                  } finally {
+                                      DataBufferUtils.release(buffer);
+                                  }
+                              });
+    }
+
+}
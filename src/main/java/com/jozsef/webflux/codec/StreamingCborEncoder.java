@@ -0,0 +1,51 @@
+package com.jozsef.webflux.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link Jackson2CborEncoder} that can also write a {@code Flux}, which the Spring one rejects. Under
+ * {@code application/cbor} the items are written as one CBOR array; under {@code application/cbor-seq} they are
+ * written back to back and flushed one by one.
+ */
+public class StreamingCborEncoder extends Jackson2CborEncoder {
+
+    public StreamingCborEncoder(ObjectMapper mapper) {
+        super(mapper, MediaType.APPLICATION_CBOR, ProductCodecs.APPLICATION_CBOR_SEQ);
+        setStreamingMediaTypes(List.of(ProductCodecs.APPLICATION_CBOR_SEQ));
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                   MimeType mimeType, Map<String, Object> hints) {
+        if (inputStream instanceof Mono) {
+            return Mono.from(inputStream)
+                       .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                       .flux();
+        }
+
+        if (mimeType != null && ProductCodecs.APPLICATION_CBOR_SEQ.isCompatibleWith(mimeType)) {
+            return Flux.from(inputStream)
+                       .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+        }
+
+        // like a JSON array response: collected and written in one go
+        ResolvableType listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+        return Flux.from(inputStream)
+                   .collectList()
+                   .map(list -> encodeValue(list, bufferFactory, listType, mimeType, hints))
+                   .flux();
+    }
+
+}
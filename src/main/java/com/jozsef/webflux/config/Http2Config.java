@@ -0,0 +1,32 @@
+package com.jozsef.webflux.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * HTTP/2 settings the server announces. Boot's {@code server.http2.enabled} decides the protocols: HTTP/1.1 and h2
+ * (negotiated by ALPN) with {@code server.ssl} configured, HTTP/1.1 and h2c (prior knowledge or upgrade) without.
+ */
+@Configuration(proxyBeanMethods = false)
+public class Http2Config {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "server.http2", name = "enabled")
+    public NettyServerCustomizer http2SettingsCustomizer(ProductProperties productProperties) {
+        ProductProperties.Http2 http2 = productProperties.getHttp2();
+        if (http2.getMaxConcurrentStreams() < 1) {
+            throw new IllegalArgumentException("HTTP/2 max-concurrent-streams must be positive");
+        }
+
+        return server -> server.http2Settings(settings -> {
+            settings.maxConcurrentStreams(http2.getMaxConcurrentStreams())
+                    .maxHeaderListSize(http2.getMaxHeaderListSize().toBytes());
+            if (http2.getInitialWindowSize() != null) {
+                settings.initialWindowSize(Math.toIntExact(http2.getInitialWindowSize().toBytes()));
+            }
+        });
+    }
+
+}
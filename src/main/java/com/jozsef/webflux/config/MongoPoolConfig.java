@@ -0,0 +1,31 @@
+package com.jozsef.webflux.config;
+
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pool of the Mongo client Boot builds, from {@code products.mongo.pool}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MongoPoolConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoPoolCustomizer(ProductProperties productProperties) {
+        ProductProperties.Mongo.Pool pool = productProperties.getMongo().getPool();
+        if (pool.getMinSize() < 0 || pool.getMaxSize() < 1 || pool.getMinSize() > pool.getMaxSize()) {
+            throw new IllegalArgumentException("Mongo pool needs 0 <= min-size <= max-size and max-size >= 1");
+        }
+
+        return builder -> builder.applyToConnectionPoolSettings(settings -> settings
+                .minSize(pool.getMinSize())
+                .maxSize(pool.getMaxSize())
+                .maxWaitTime(pool.getMaxWaitTime().toMillis(), TimeUnit.MILLISECONDS)
+                .maxConnectionIdleTime(pool.getMaxConnectionIdleTime().toMillis(), TimeUnit.MILLISECONDS)
+                .maxConnectionLifeTime(pool.getMaxConnectionLifeTime().toMillis(), TimeUnit.MILLISECONDS)
+                .maintenanceFrequency(pool.getMaintenanceFrequency().toMillis(), TimeUnit.MILLISECONDS));
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.jozsef.webflux.config;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.unix.UnixChannelOption;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.netty.FutureMono;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport, event loops and socket options of the HTTP server behind {@code /products} and
+ * {@code /functional/products}, from {@code products.server}. Unless a transport or thread count is configured the
+ * server keeps the loops Boot shares with {@code WebClient}; otherwise it gets loops of its own, disposed with the
+ * context once the server has stopped.
+ */
+@Component
+@Slf4j
+public class NettyTransportCustomizer implements NettyServerCustomizer, DisposableBean {
+
+    private static final String LOOP_PREFIX = "products-http";
+    private static final String IO_URING_GROUP = "io.netty.incubator.channel.uring.IOUringEventLoopGroup";
+
+    private final ProductProperties.Server server;
+    private final LoopResources loopResources;
+
+    public NettyTransportCustomizer(ProductProperties productProperties) {
+        this.server = productProperties.getServer();
+        if (server.getSelectThreads() < 0 || server.getWorkerThreads() < 0 || server.getBacklog() < 0) {
+            throw new IllegalArgumentException("Server select-threads, worker-threads and backlog must not be negative");
+        }
+        if (server.isReusePort() && server.getTransport() == ProductProperties.Server.Transport.NIO) {
+            throw new IllegalArgumentException("Server reuse-port needs the epoll or io_uring transport");
+        }
+        this.loopResources = loopResources(server);
+    }
+
+    @Override
+    public HttpServer apply(HttpServer httpServer) {
+        if (loopResources != null) {
+            boolean preferNative = server.getTransport() != ProductProperties.Server.Transport.NIO;
+            httpServer = httpServer.runOn(loopResources, preferNative);
+            log.info("HTTP server on {} with {} event loops", loopResources.onServer(preferNative).getClass().getSimpleName(),
+                    workerThreads(server));
+        }
+
+        if (server.getBacklog() > 0) {
+            httpServer = httpServer.option(ChannelOption.SO_BACKLOG, server.getBacklog());
+        }
+        if (server.isReusePort()) {
+            httpServer = httpServer.option(UnixChannelOption.SO_REUSEPORT, true);
+        }
+        // on the listening socket, so accepted connections start with it and can negotiate a matching window scale
+        if (server.getReceiveBuffer() != null) {
+            httpServer = httpServer.option(ChannelOption.SO_RCVBUF, Math.toIntExact(server.getReceiveBuffer().toBytes()));
+        }
+        if (server.getSendBuffer() != null) {
+            httpServer = httpServer.childOption(ChannelOption.SO_SNDBUF, Math.toIntExact(server.getSendBuffer().toBytes()));
+        }
+        return httpServer.childOption(ChannelOption.TCP_NODELAY, server.isTcpNoDelay())
+                         .childOption(ChannelOption.SO_KEEPALIVE, server.isKeepAlive());
+    }
+
+    @Override
+    public void destroy() {
+        if (loopResources != null) {
+            loopResources.dispose();
+        }
+    }
+
+    private static LoopResources loopResources(ProductProperties.Server server) {
+        switch (server.getTransport()) {
+            case EPOLL:
+                if (!Epoll.isAvailable()) {
+                    throw new IllegalStateException("Epoll transport is not available", Epoll.unavailabilityCause());
+                }
+                // explicitly, as Reactor Netty would pick io_uring whenever that is on the class path
+                return new EpollLoopResources(server.getSelectThreads(), workerThreads(server));
+            case IO_URING:
+                LoopResources ioUring = create(server);
+                if (!ioUring.onServer(true).getClass().getName().equals(IO_URING_GROUP)) {
+                    ioUring.dispose();
+                    throw new IllegalStateException("io_uring transport is not available: it needs "
+                            + "netty-incubator-transport-native-io_uring (mvn -Pio_uring) and Linux 5.9 or later");
+                }
+                return ioUring;
+            case NIO:
+                return create(server);
+            default:
+                return server.getSelectThreads() == 0 && server.getWorkerThreads() == 0 ? null : create(server);
+        }
+    }
+
+    private static LoopResources create(ProductProperties.Server server) {
+        return server.getSelectThreads() == 0
+                ? LoopResources.create(LOOP_PREFIX, workerThreads(server), true)
+                : LoopResources.create(LOOP_PREFIX, server.getSelectThreads(), workerThreads(server), true);
+    }
+
+    private static int workerThreads(ProductProperties.Server server) {
+        return server.getWorkerThreads() == 0 ? LoopResources.DEFAULT_IO_WORKER_COUNT : server.getWorkerThreads();
+    }
+
+    private static final class EpollLoopResources implements LoopResources {
+
+        private final EventLoopGroup select;
+        private final EventLoopGroup workers;
+
+        EpollLoopResources(int selectThreads, int workerThreads) {
+            this.workers = new EpollEventLoopGroup(workerThreads, new DefaultThreadFactory(LOOP_PREFIX + "-epoll", true));
+            this.select = selectThreads == 0
+                    ? workers
+                    : new EpollEventLoopGroup(selectThreads, new DefaultThreadFactory(LOOP_PREFIX + "-select-epoll", true));
+        }
+
+        @Override
+        public EventLoopGroup onServer(boolean useNative) {
+            return workers;
+        }
+
+        @Override
+        public EventLoopGroup onServerSelect(boolean useNative) {
+            return select;
+        }
+
+        @Override
+        public EventLoopGroup onClient(boolean useNative) {
+            return workers;
+        }
+
+        @Override
+        public <CHANNEL extends Channel> CHANNEL onChannel(Class<CHANNEL> channelType, EventLoopGroup group) {
+            try {
+                return channelType.cast(onChannelClass(channelType, group).getDeclaredConstructor().newInstance());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create an epoll " + channelType.getSimpleName(), e);
+            }
+        }
+
+        @Override
+        public <CHANNEL extends Channel> Class<? extends CHANNEL> onChannelClass(Class<CHANNEL> channelType, EventLoopGroup group) {
+            if (channelType == ServerSocketChannel.class) {
+                return EpollServerSocketChannel.class.asSubclass(channelType);
+            }
+            if (channelType == SocketChannel.class) {
+                return EpollSocketChannel.class.asSubclass(channelType);
+            }
+            throw new IllegalArgumentException("No epoll channel for " + channelType.getName());
+        }
+
+        @Override
+        public boolean daemon() {
+            return true;
+        }
+
+        @Override
+        public Mono<Void> disposeLater(Duration quietPeriod, Duration timeout) {
+            return select == workers
+                    ? shutdown(workers, quietPeriod, timeout)
+                    : Mono.when(shutdown(select, quietPeriod, timeout), shutdown(workers, quietPeriod, timeout));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Mono<Void> shutdown(EventLoopGroup group, Duration quietPeriod, Duration timeout) {
+            return FutureMono.from((Future<Void>) group.shutdownGracefully(quietPeriod.toMillis(), timeout.toMillis(),
+                    TimeUnit.MILLISECONDS));
+        }
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.jozsef.webflux.config;
+
+import com.jozsef.webflux.codec.ProductCodecs;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Adds the CBOR and Protobuf codecs of {@link ProductCodecs} to the server and to {@code WebClient.Builder}s.
+ */
+@Configuration(proxyBeanMethods = false)
+public class ProductCodecConfig {
+
+    @Bean
+    public CodecCustomizer productCodecCustomizer() {
+        return ProductCodecs::register;
+    }
+
+}
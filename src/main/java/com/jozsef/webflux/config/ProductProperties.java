@@ -0,0 +1,467 @@
+package com.jozsef.webflux.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.BufferOverflowStrategy;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+@Data
+@ConfigurationProperties("products")
+public class ProductProperties {
+
+    private final Export export = new Export();
+    private final Bulk bulk = new Bulk();
+    private final Cache cache = new Cache();
+    private final Events events = new Events();
+    private final Stats stats = new Stats();
+    private final Snapshot snapshot = new Snapshot();
+    private final Compression compression = new Compression();
+    private final RateLimit rateLimit = new RateLimit();
+    private final LoadShedding loadShedding = new LoadShedding();
+    private final Batching batching = new Batching();
+    private final Mget mget = new Mget();
+    private final Startup startup = new Startup();
+    private final Seed seed = new Seed();
+    private final Mongo mongo = new Mongo();
+    private final Server server = new Server();
+    private final Http2 http2 = new Http2();
+
+    @Data
+    public static class Export {
+
+        /**
+         * Documents fetched per Mongo cursor batch; also the demand requested downstream at a time.
+         */
+        private int batchSize = 500;
+
+    }
+
+    @Data
+    public static class Bulk {
+
+        /**
+         * Products written per unordered Mongo bulkWrite.
+         */
+        private int chunkSize = 1000;
+
+        /**
+         * Chunks allowed in flight at once; results are still emitted in request order.
+         */
+        private int concurrency = 2;
+
+    }
+
+    @Data
+    public static class Cache {
+
+        private boolean enabled = true;
+
+        private long maximumSize = 10_000;
+
+        /**
+         * How long a product stays cached after it was loaded; the product events of a write invalidate it earlier.
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+
+    }
+
+    @Data
+    public static class Events {
+
+        public enum Source {
+            IN_PROCESS, CHANGE_STREAM
+        }
+
+        /**
+         * Where product changes come from: the application's own write paths, or a Mongo change stream
+         * (requires a replica set, so not available with the embedded Mongo).
+         */
+        private Source source = Source.IN_PROCESS;
+
+        /**
+         * Events buffered per SSE subscriber before the overflow strategy applies.
+         */
+        private int bufferSize = 256;
+
+        private BufferOverflowStrategy overflow = BufferOverflowStrategy.DROP_OLDEST;
+
+        private final Replay replay = new Replay();
+
+        @Data
+        public static class Replay {
+
+            /**
+             * Most recent events kept for clients reconnecting with a Last-Event-ID header.
+             */
+            private int size = 10_000;
+
+            /**
+             * Optional file the replay buffer is saved to on shutdown and restored from on startup,
+             * so event ids and the replay window survive a restart.
+             */
+            private Path file;
+
+        }
+
+    }
+
+    @Data
+    public static class Stats {
+
+        /**
+         * Width of the price histogram buckets when a request does not ask for another one.
+         */
+        private double bucketWidth = 10;
+
+        /**
+         * Keep a running price summary in memory, updated on every product change, and answer stats requests
+         * for the default bucket width from it instead of running the aggregation.
+         */
+        private boolean inMemory = true;
+
+    }
+
+    @Data
+    public static class Snapshot {
+
+        /**
+         * Keep a full-catalog JSON file, plain and gzipped, for {@code GET /products/snapshot}.
+         */
+        private boolean enabled = true;
+
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "products-snapshot");
+
+        /**
+         * How often the snapshot is rewritten if products changed since the last one; also the max-age clients
+         * and CDNs may cache it for.
+         */
+        private Duration interval = Duration.ofMinutes(5);
+
+    }
+
+    @Data
+    public static class Compression {
+
+        /**
+         * Gzip or deflate responses for clients that accept it, unless they already carry a Content-Encoding.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Responses with a smaller Content-Length are sent as is; streamed responses have none and are compressed.
+         */
+        private DataSize minResponseSize = DataSize.ofKilobytes(2);
+
+        private List<String> mimeTypes = List.of("application/json", "application/x-ndjson",
+                "application/x-jackson-smile", "application/stream+x-jackson-smile", "application/cbor",
+                "application/cbor-seq", "application/x-protobuf");
+
+    }
+
+    @Data
+    public static class RateLimit {
+
+        private boolean enabled = true;
+
+        /**
+         * Sustained requests per second allowed per client.
+         */
+        private double requestsPerSecond = 100;
+
+        /**
+         * Requests a client may send at once after being idle.
+         */
+        private int burst = 200;
+
+        /**
+         * Tokens a POST, PUT or DELETE takes; writes, deletes and bulk uploads cost Mongo far more than reads.
+         */
+        private int writeCost = 5;
+
+        /**
+         * Header identifying a client; clients without it are limited by remote address.
+         */
+        private String clientHeader = "X-API-Key";
+
+        /**
+         * Clients tracked at once; the least recently seen are forgotten first.
+         */
+        private long maxClients = 100_000;
+
+    }
+
+    @Data
+    public static class LoadShedding {
+
+        private boolean enabled = true;
+
+        /**
+         * Product requests handled at once before new ones are rejected with 503.
+         */
+        private int maxConcurrentRequests = 512;
+
+        /**
+         * Event streams and exports open at once before new ones are rejected with 503; they are not counted
+         * against max-concurrent-requests.
+         */
+        private int maxConcurrentStreams = 1024;
+
+        /**
+         * Operations waiting for a Mongo connection before new requests are rejected with 503.
+         */
+        private int maxMongoPoolWaitQueue = 256;
+
+    }
+
+    @Data
+    public static class Batching {
+
+        /**
+         * Collect concurrent lookups by id and load them with one {@code $in} query.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Ids per query; a batch is sent as soon as it is full.
+         */
+        private int maxSize = 128;
+
+        /**
+         * How long the first lookup of a batch waits for others to join it.
+         */
+        private Duration window = Duration.ofMillis(1);
+
+    }
+
+    @Data
+    public static class Mget {
+
+        /**
+         * Ids accepted by one {@code POST /products/_mget}; all of them go into a single {@code $in} query.
+         */
+        private int maxIds = 1000;
+
+    }
+
+    @Data
+    public static class Startup {
+
+        /**
+         * Exit once the application is ready and has served {@link #trainingRequests}; used by the AppCDS training
+         * run in {@code mvn package -Pappcds}.
+         */
+        private boolean trainingRun = false;
+
+        /**
+         * Paths requested during a training run, so the classes behind the request path land in the archive too.
+         */
+        private List<String> trainingRequests = List.of("/products/search?q=latte", "/functional/products/search?q=latte",
+                "/actuator/health");
+
+        /**
+         * How long a training run waits for each of its requests.
+         */
+        private Duration trainingRequestTimeout = Duration.ofSeconds(5);
+
+    }
+
+    @Data
+    public static class Seed {
+
+        public enum NameDistribution {
+            UNIFORM, ZIPF
+        }
+
+        public enum PriceDistribution {
+            UNIFORM, LOG_NORMAL
+        }
+
+        /**
+         * Seed the catalog with generated products at startup. Products already present are left alone, so a
+         * restart with the same settings writes nothing.
+         */
+        private boolean enabled = true;
+
+        private long count = 3;
+
+        /**
+         * Random seed of the generator; the same seed and count always produce the same products, ids included.
+         */
+        private long randomSeed = 42;
+
+        /**
+         * How often each generated name occurs: all about equally, or a few popular names most of the time.
+         */
+        private NameDistribution nameDistribution = NameDistribution.ZIPF;
+
+        /**
+         * Zipf exponent; the higher, the more the most popular names dominate.
+         */
+        private double nameSkew = 1.0;
+
+        private PriceDistribution priceDistribution = PriceDistribution.LOG_NORMAL;
+
+        private double minPrice = 0.5;
+
+        private double maxPrice = 50;
+
+        /**
+         * Median and standard deviation of the log of the price, for {@code log-normal} prices.
+         */
+        private double medianPrice = 3.5;
+
+        private double priceSpread = 0.5;
+
+        /**
+         * Products generated, checked for existence and written per chunk.
+         */
+        private int chunkSize = 1000;
+
+        /**
+         * Chunks generated and written at once.
+         */
+        private int concurrency = 4;
+
+    }
+
+    @Data
+    public static class Mongo {
+
+        private final Pool pool = new Pool();
+
+        @Data
+        public static class Pool {
+
+            /**
+             * Connections per server kept open even when idle.
+             */
+            private int minSize = 0;
+
+            /**
+             * Connections per server; the ceiling adaptive sizing grows to.
+             */
+            private int maxSize = 100;
+
+            /**
+             * How long an operation waits for a connection before failing. The driver has no wait queue limit; the
+             * queue is bounded by {@code products.load-shedding.max-mongo-pool-wait-queue} instead.
+             */
+            private Duration maxWaitTime = Duration.ofMinutes(2);
+
+            /**
+             * Idle connections above {@link #minSize} are closed after this long, which is what returns connections
+             * after adaptive sizing shrinks; zero keeps them open.
+             */
+            private Duration maxConnectionIdleTime = Duration.ofMinutes(1);
+
+            /**
+             * Connections are replaced once this old; zero keeps them indefinitely.
+             */
+            private Duration maxConnectionLifeTime = Duration.ZERO;
+
+            /**
+             * How often the driver closes idle and expired connections and tops the pool up to {@link #minSize}.
+             */
+            private Duration maintenanceFrequency = Duration.ofSeconds(10);
+
+            private final Adaptive adaptive = new Adaptive();
+
+            @Data
+            public static class Adaptive {
+
+                /**
+                 * Limit the Mongo operations of {@code ProductRepository} in flight at once to a limit that grows
+                 * while operations wait longer than {@link #targetWait} and shrinks while most of it goes unused.
+                 */
+                private boolean enabled = false;
+
+                private int initialSize = 10;
+
+                private int minSize = 2;
+
+                /**
+                 * Average wait for a connection above which the limit grows.
+                 */
+                private Duration targetWait = Duration.ofMillis(5);
+
+                private Duration interval = Duration.ofSeconds(1);
+
+            }
+
+        }
+
+    }
+
+    @Data
+    public static class Server {
+
+        public enum Transport {
+            AUTO, NIO, EPOLL, IO_URING
+        }
+
+        /**
+         * Transport of the HTTP server. {@code auto} is Reactor Netty's choice: io_uring when it is on the class path
+         * ({@code mvn -Pio_uring}) and the kernel supports it, then epoll or kqueue, then nio.
+         */
+        private Transport transport = Transport.AUTO;
+
+        /**
+         * Event loops accepting connections; 0 lets the worker loops accept them as well.
+         */
+        private int selectThreads = 0;
+
+        /**
+         * Event loops serving connections; 0 for Reactor Netty's default of one per CPU, at least four. With
+         * {@code auto} transport and both thread counts 0 the server shares its loops with {@code WebClient}.
+         */
+        private int workerThreads = 0;
+
+        /**
+         * Connections the kernel queues until they are accepted; 0 keeps Netty's default, the system's somaxconn.
+         */
+        private int backlog = 0;
+
+        /**
+         * Let several servers bind the same port and the kernel spread connections over them; epoll and io_uring
+         * only.
+         */
+        private boolean reusePort = false;
+
+        private boolean tcpNoDelay = true;
+
+        private boolean keepAlive = false;
+
+        /**
+         * Socket buffer sizes; unset keeps the kernel's, which it tunes per connection.
+         */
+        private DataSize receiveBuffer;
+
+        private DataSize sendBuffer;
+
+    }
+
+    @Data
+    public static class Http2 {
+
+        /**
+         * Requests in flight per HTTP/2 connection, open event streams included; a client that needs more opens
+         * another connection.
+         */
+        private long maxConcurrentStreams = 100;
+
+        /**
+         * Flow-control window of each stream, how much a stream may send before the peer acknowledges it; unset
+         * keeps the protocol's 64KB.
+         */
+        private DataSize initialWindowSize;
+
+        private DataSize maxHeaderListSize = DataSize.ofKilobytes(8);
+
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.jozsef.webflux.config;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.util.InvalidMimeTypeException;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Response compression in Reactor Netty. Used instead of {@code server.compression} because that also compresses
+ * responses that are already encoded, such as the pre-compressed catalog snapshot, and adding the compression
+ * handler makes Reactor Netty copy files through the pipeline instead of sending them zero-copy.
+ */
+@Configuration(proxyBeanMethods = false)
+public class ResponseCompressionConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "products.compression", name = "enabled", matchIfMissing = true)
+    public NettyServerCustomizer responseCompressionCustomizer(ProductProperties productProperties) {
+        ProductProperties.Compression compression = productProperties.getCompression();
+        List<MediaType> mimeTypes = compression.getMimeTypes().stream()
+                                               .map(MediaType::parseMediaType)
+                                               .collect(Collectors.toList());
+        long minResponseSize = compression.getMinResponseSize().toBytes();
+
+        return server -> server.compress((request, response) -> shouldCompress(response.responseHeaders(), mimeTypes, minResponseSize));
+    }
+
+    static boolean shouldCompress(HttpHeaders headers, List<MediaType> mimeTypes, long minResponseSize) {
+        if (headers.contains(HttpHeaderNames.CONTENT_ENCODING)) {
+            return false;
+        }
+
+        String contentLength = headers.get(HttpHeaderNames.CONTENT_LENGTH);
+        if (contentLength != null && Long.parseLong(contentLength) < minResponseSize) {
+            return false;
+        }
+
+        String contentType = headers.get(HttpHeaderNames.CONTENT_TYPE);
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            return mimeTypes.stream().anyMatch(mimeType -> mimeType.isCompatibleWith(mediaType));
+        } catch (InvalidMimeTypeException e) {
+            return false;
+        }
+    }
+
+}
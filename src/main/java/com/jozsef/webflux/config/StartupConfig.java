@@ -0,0 +1,23 @@
+package com.jozsef.webflux.config;
+
+import com.jozsef.webflux.event.ProductChangeStreamListener;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Startup settings that matter with the {@code lazy} profile, which turns on {@code spring.main.lazy-initialization}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class StartupConfig {
+
+    /**
+     * Beans nothing injects and that do their work from {@code @PostConstruct}, so lazily they would never start.
+     * Components that load on {@code ApplicationReadyEvent} are created by their listener and need no entry here.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerProductBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(ProductChangeStreamListener.class);
+    }
+
+}
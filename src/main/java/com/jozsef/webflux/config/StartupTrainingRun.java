@@ -0,0 +1,53 @@
+package com.jozsef.webflux.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Training run for the AppCDS archive: once the application is ready, sends the configured requests to itself so
+ * the classes serving them are loaded as well, then exits. Requests that fail, e.g. without a Mongo, are logged and
+ * skipped; the classes on their path are loaded all the same.
+ */
+@Component
+@ConditionalOnProperty(prefix = "products.startup", name = "training-run", havingValue = "true")
+@Slf4j
+public class StartupTrainingRun {
+
+    private final ProductProperties.Startup startup;
+
+    public StartupTrainingRun(ProductProperties productProperties) {
+        this.startup = productProperties.getStartup();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void run(ApplicationReadyEvent event) {
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        int port = ((ReactiveWebServerApplicationContext) context).getWebServer().getPort();
+        WebClient client = WebClient.create("http://localhost:" + port);
+
+        Flux.fromIterable(startup.getTrainingRequests())
+            .concatMap(path -> client.get()
+                                     .uri(path)
+                                     .retrieve()
+                                     .toBodilessEntity()
+                                     .timeout(startup.getTrainingRequestTimeout())
+                                     .doOnNext(response -> log.info("Training request {}: {}", path, response.getStatusCode()))
+                                     .onErrorResume(e -> {
+                                         log.warn("Training request {} failed: {}", path, e.toString());
+                                         return Mono.empty();
+                                     }))
+            .blockLast();
+
+        System.exit(SpringApplication.exit(context));
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.jozsef.webflux.event;
+
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Feeds {@link ProductEventPublisher} from one change stream on the product collection, shared by all subscribers.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(prefix = "products.events", name = "source", havingValue = "change-stream")
+public class ProductChangeStreamListener {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ProductEventPublisher publisher;
+
+    private Disposable subscription;
+
+    public ProductChangeStreamListener(ReactiveMongoTemplate mongoTemplate, ProductEventPublisher publisher) {
+        this.mongoTemplate = mongoTemplate;
+        this.publisher = publisher;
+    }
+
+    @PostConstruct
+    public void start() {
+        subscription = mongoTemplate.changeStream(Product.class)
+                                    .withOptions(options -> options.fullDocumentLookup(FullDocument.UPDATE_LOOKUP))
+                                    .watchCollection(Product.class)
+                                    .listen()
+                                    .doOnError(e -> log.warn("Product change stream failed, reconnecting", e))
+                                    .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                                                    .maxBackoff(Duration.ofSeconds(30)))
+                                    .subscribe(this::onChange);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private void onChange(ChangeStreamEvent<Product> change) {
+        ProductEvent.Type type = toType(change.getOperationType());
+        if (type == null || change.getRaw() == null || change.getRaw().getDocumentKey() == null) {
+            return;
+        }
+
+        BsonValue id = change.getRaw().getDocumentKey().get("_id");
+        String productId = id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+        publisher.publish(type, productId, change.getBody());
+    }
+
+    private static ProductEvent.Type toType(OperationType operationType) {
+        if (operationType == null) {
+            return null;
+        }
+        switch (operationType) {
+            case INSERT:
+                return ProductEvent.Type.INSERT;
+            case UPDATE:
+            case REPLACE:
+                return ProductEvent.Type.UPDATE;
+            case DELETE:
+                return ProductEvent.Type.DELETE;
+            default:
+                return null;
+        }
+    }
+
+}
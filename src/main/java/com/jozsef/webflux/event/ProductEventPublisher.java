@@ -0,0 +1,203 @@
+package com.jozsef.webflux.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single hub for product change events, multicast to every subscriber. Each subscriber gets its own bounded
+ * buffer, so a slow client only ever loses its own events instead of holding memory for everyone.
+ * The most recent events are also kept in a replay buffer so a reconnecting client only receives the gap.
+ */
+@Component
+@Slf4j
+public class ProductEventPublisher {
+
+    private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+            (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+    private final Sinks.Many<ProductEvent> sink = Sinks.many().multicast().directBestEffort();
+    private final ProductProperties.Events properties;
+    private final ProductEventReplayBuffer replayBuffer;
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final Set<AtomicLong> subscriberBuffers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final Queue<ProductEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger draining = new AtomicInteger();
+
+    private long nextEventId;
+
+    public ProductEventPublisher(ProductProperties productProperties) {
+        this.properties = productProperties.getEvents();
+        this.replayBuffer = new ProductEventReplayBuffer(properties.getReplay().getSize());
+
+        Path file = properties.getReplay().getFile();
+        if (file != null && Files.exists(file)) {
+            load(file);
+        }
+    }
+
+    public Flux<ProductEvent> events() {
+        return Flux.defer(() -> {
+            // events that reached this subscriber's buffer but were not yet consumed or dropped
+            AtomicLong buffered = new AtomicLong();
+
+            return sink.asFlux()
+                       .doOnNext(event -> buffered.incrementAndGet())
+                       .onBackpressureBuffer(properties.getBufferSize(),
+                               event -> {
+                                   buffered.decrementAndGet();
+                                   droppedEvents.incrementAndGet();
+                                   log.debug("Dropped product event {} for a slow subscriber", event.getEventId());
+                               },
+                               properties.getOverflow())
+                       .doOnNext(event -> buffered.decrementAndGet())
+                       .doOnSubscribe(subscription -> subscriberBuffers.add(buffered))
+                       .doFinally(signal -> subscriberBuffers.remove(buffered));
+        });
+    }
+
+    public int subscriberCount() {
+        return subscriberBuffers.size();
+    }
+
+    public long bufferedEvents() {
+        return subscriberBuffers.stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    public long maxBufferedEvents() {
+        return subscriberBuffers.stream().mapToLong(AtomicLong::get).max().orElse(0);
+    }
+
+    public long droppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Events after {@code lastEventId} still held in the replay buffer, followed by live events. When the gap can
+     * no longer be replayed the stream starts with a {@link ProductEvent.Type#RESYNC} event instead.
+     */
+    public Flux<ProductEvent> events(Long lastEventId) {
+        if (lastEventId == null) {
+            return events();
+        }
+
+        return Flux.defer(() -> {
+            // start listening before reading the replay buffer; publish() holds live events until the replay is sent
+            ConnectableFlux<ProductEvent> live = events().publish();
+            Disposable connection = live.connect();
+
+            List<ProductEvent> missed;
+            long lastReplayedId;
+            synchronized (this) {
+                if (lastEventId >= nextEventId || !replayBuffer.covers(lastEventId)) {
+                    // without an id before the first event, so the client keeps the Last-Event-ID it sent
+                    Long resyncId = nextEventId == 0 ? null : nextEventId - 1;
+                    missed = List.of(ProductEvent.builder().eventId(resyncId).eventType(ProductEvent.Type.RESYNC).build());
+                } else {
+                    missed = replayBuffer.after(lastEventId);
+                }
+                lastReplayedId = nextEventId - 1;
+            }
+
+            return Flux.fromIterable(missed)
+                       .concatWith(live.filter(event -> event.getEventId() > lastReplayedId))
+                       .doFinally(signal -> connection.dispose());
+        });
+    }
+
+    /**
+     * Records a change made through this application. Ignored when events are sourced from the change stream,
+     * which already sees the same write.
+     */
+    public void publishLocal(ProductEvent.Type type, String productId, Product product) {
+        if (properties.getSource() == ProductProperties.Events.Source.IN_PROCESS) {
+            publish(type, productId, product);
+        }
+    }
+
+    /**
+     * Numbers the event and adds it to the replay buffer under the lock, then emits it outside of it, so subscribers
+     * running inline never hold up other publishers. Whichever thread finds the queue idle drains it, which keeps
+     * the sink serialized and the events in id order.
+     */
+    public void publish(ProductEvent.Type type, String productId, Product product) {
+        synchronized (this) {
+            ProductEvent event = new ProductEvent(nextEventId++, type, productId, product);
+            // buffered before it is emitted, so a replaying subscriber sees every event in one place or the other
+            replayBuffer.add(event);
+            pending.add(event);
+        }
+
+        if (draining.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            ProductEvent event;
+            while ((event = pending.poll()) != null) {
+                sink.emitNext(event, RETRY_NON_SERIALIZED);
+            }
+        } while (draining.decrementAndGet() != 0);
+    }
+
+    @PreDestroy
+    public synchronized void save() {
+        Path file = properties.getReplay().getFile();
+        if (file == null) {
+            return;
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (ProductEvent event : replayBuffer.all()) {
+                writer.write(objectMapper.writeValueAsString(event));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            log.warn("Could not save product event replay buffer to {}", file, e);
+        }
+    }
+
+    private void load(Path file) {
+        try (var lines = Files.lines(file)) {
+            lines.filter(line -> !line.isBlank())
+                 .map(this::readEvent)
+                 .forEach(event -> {
+                     replayBuffer.add(event);
+                     nextEventId = event.getEventId() + 1;
+                 });
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Could not load product event replay buffer from {}", file, e);
+        }
+    }
+
+    private ProductEvent readEvent(String line) {
+        try {
+            return objectMapper.readValue(line, ProductEvent.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.jozsef.webflux.event;
+
+import com.jozsef.webflux.model.ProductEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size ring of the most recent events. Event ids are consecutive, so the position of any id still in the
+ * ring is computed directly instead of searched for. Not thread-safe; {@link ProductEventPublisher} guards it.
+ */
+class ProductEventReplayBuffer {
+
+    private final ProductEvent[] ring;
+    private long firstId;
+    private int size;
+
+    ProductEventReplayBuffer(int capacity) {
+        this.ring = new ProductEvent[capacity];
+    }
+
+    void add(ProductEvent event) {
+        if (size == 0) {
+            firstId = event.getEventId();
+        }
+        ring[(int) (event.getEventId() % ring.length)] = event;
+        if (size < ring.length) {
+            size++;
+        } else {
+            firstId++;
+        }
+    }
+
+    /**
+     * Whether every event after {@code eventId} is still held, i.e. a client that saw it can catch up from here.
+     */
+    boolean covers(long eventId) {
+        return size == 0 || eventId >= firstId - 1;
+    }
+
+    List<ProductEvent> after(long eventId) {
+        long from = Math.max(eventId + 1, firstId);
+        long to = firstId + size;
+
+        List<ProductEvent> events = new ArrayList<>((int) Math.max(0, to - from));
+        for (long id = from; id < to; id++) {
+            events.add(ring[(int) (id % ring.length)]);
+        }
+        return events;
+    }
+
+    List<ProductEvent> all() {
+        return after(firstId - 1);
+    }
+
+}
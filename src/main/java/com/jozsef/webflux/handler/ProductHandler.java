@@ -1,81 +1,255 @@
 package com.jozsef.webflux.handler;
 
+import com.jozsef.webflux.api.ProductETags;
+import com.jozsef.webflux.codec.ProductCodecs;
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
 import com.jozsef.webflux.model.Product;
 import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductLookupResult;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.jozsef.webflux.repository.ProductCursor;
+import com.jozsef.webflux.repository.ProductBatchLoader;
+import com.jozsef.webflux.repository.ProductQuery;
 import com.jozsef.webflux.repository.ProductRepository;
+import com.jozsef.webflux.repository.ProductRepositoryCustom;
+import com.jozsef.webflux.search.ProductSearchIndex;
+import com.jozsef.webflux.snapshot.ProductCatalogSnapshot;
+import com.jozsef.webflux.stats.ProductPriceSummary;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
+import static org.springframework.web.reactive.function.BodyInserters.fromResource;
+import static org.springframework.web.reactive.function.BodyInserters.fromServerSentEvents;
 import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 
 @Component
 public class ProductHandler {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private static final List<MediaType> STATS_MEDIA_TYPES = List.of(MediaType.APPLICATION_JSON,
+            ProductCodecs.APPLICATION_SMILE, MediaType.APPLICATION_CBOR);
+    private static final List<MediaType> EVENT_MEDIA_TYPES = List.of(MediaType.TEXT_EVENT_STREAM,
+            ProductCodecs.APPLICATION_PROTOBUF);
+    private static final List<MediaType> MGET_MEDIA_TYPES = List.of(MediaType.APPLICATION_NDJSON,
+            MediaType.APPLICATION_JSON);
+    private static final ParameterizedTypeReference<List<String>> IDS = new ParameterizedTypeReference<>() {
+    };
+
     private final ProductRepository productRepository;
+    private final ProductProperties productProperties;
+    private final ProductEventPublisher productEventPublisher;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductPriceSummary productPriceSummary;
+    private final ProductCatalogSnapshot productCatalogSnapshot;
+    private final ProductBatchLoader productBatchLoader;
 
-    public ProductHandler(ProductRepository productRepository) {
+    public ProductHandler(ProductRepository productRepository, ProductProperties productProperties,
+                          ProductEventPublisher productEventPublisher, ProductSearchIndex productSearchIndex,
+                          ProductPriceSummary productPriceSummary, ProductCatalogSnapshot productCatalogSnapshot,
+                          ProductBatchLoader productBatchLoader) {
         this.productRepository = productRepository;
+        this.productProperties = productProperties;
+        this.productEventPublisher = productEventPublisher;
+        this.productSearchIndex = productSearchIndex;
+        this.productPriceSummary = productPriceSummary;
+        this.productCatalogSnapshot = productCatalogSnapshot;
+        this.productBatchLoader = productBatchLoader;
     }
 
     public Mono<ServerResponse> getAllProducts(ServerRequest request) {
-        Flux<Product> products = productRepository.findAll();
+        Optional<String> cursor = request.queryParam("cursor");
+        Optional<String> size = request.queryParam("size");
+
+        return Mono.fromCallable(() -> productQuery(request))
+                   .flatMap(query -> cursor.isPresent() || size.isPresent()
+                           ? getProductPage(request, query, cursor.orElse(null), size.orElse(null))
+                           : ServerResponse.ok()
+                                           .contentType(productMediaType(request))
+                                           .body(query.isAll() ? productRepository.findAll() : productRepository.findMatching(query),
+                                                 Product.class))
+                   .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().build());
+    }
+
+    private static ProductQuery productQuery(ServerRequest request) {
+        return ProductQuery.builder()
+                           .namePrefix(request.queryParam("namePrefix").orElse(null))
+                           .nameContains(request.queryParam("nameContains").orElse(null))
+                           .minPrice(request.queryParam("minPrice").map(Double::valueOf).orElse(null))
+                           .maxPrice(request.queryParam("maxPrice").map(Double::valueOf).orElse(null))
+                           .sort(request.queryParam("sort").orElse(ProductCursor.ID))
+                           .fields(ProductQuery.parseFields(request.queryParam("fields").orElse(null)))
+                           .build()
+                           .validate();
+    }
+
+    private Mono<ServerResponse> getProductPage(ServerRequest request, ProductQuery query, String cursor, String size) {
+        return Mono.fromCallable(() -> size == null ? ProductRepositoryCustom.DEFAULT_PAGE_SIZE : Integer.parseInt(size))
+                   .flatMap(pageSize -> productRepository.findPage(query, cursor, pageSize))
+                   .flatMap(page -> ServerResponse.ok()
+                                                  .contentType(productMediaType(request))
+                                                  .headers(headers -> {
+                                                      if (page.getNextCursor() != null) {
+                                                          headers.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+                                                      }
+                                                  })
+                                                  .body(Flux.fromIterable(page.getProducts()), Product.class));
+    }
+
+    public Mono<ServerResponse> exportProducts(ServerRequest request) {
+        Flux<Product> products = productRepository.streamAll(productProperties.getExport().getBatchSize());
+        MediaType contentType = ProductCodecs.select(request.headers().accept(), ProductCodecs.STREAM_MEDIA_TYPES);
 
         return ServerResponse.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(products, Product.class);
+                             .contentType(contentType)
+                             .body(products, Product.class);
+    }
+
+    public Mono<ServerResponse> searchProducts(ServerRequest request) {
+        return Mono.fromCallable(() -> productSearchIndex.search(request.queryParam("q")
+                                                                        .orElseThrow(() -> new IllegalArgumentException("Missing q")),
+                                                                 request.queryParam("limit")
+                                                                        .map(Integer::parseInt)
+                                                                        .orElse(ProductSearchIndex.DEFAULT_LIMIT)))
+                   .flatMap(products -> ServerResponse.ok()
+                                                      .contentType(productMediaType(request))
+                                                      .body(Flux.fromIterable(products), Product.class))
+                   .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().build());
+    }
+
+    public Mono<ServerResponse> getPriceStats(ServerRequest request) {
+        return Mono.fromCallable(() -> request.queryParam("bucketWidth").map(Double::valueOf))
+                   .flatMap(bucketWidth -> productPriceSummary.stats(bucketWidth.orElse(null))
+                                                              .switchIfEmpty(Mono.defer(() -> productRepository.priceStats(
+                                                                      bucketWidth.orElse(productProperties.getStats().getBucketWidth())))))
+                   .flatMap(stats -> ServerResponse.ok()
+                                                   .contentType(ProductCodecs.select(request.headers().accept(), STATS_MEDIA_TYPES))
+                                                   .body(fromValue(stats)))
+                   .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().build());
+    }
+
+    public Mono<ServerResponse> getCatalogSnapshot(ServerRequest request) {
+        boolean gzip = ProductCatalogSnapshot.acceptsGzip(request.headers().firstHeader(HttpHeaders.ACCEPT_ENCODING));
+
+        return productCatalogSnapshot.current()
+                                     .flatMap(snapshot -> request.checkNotModified(snapshot.getWrittenAt(), snapshot.eTag(gzip))
+                                                                 .switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                                                                                                               .contentType(MediaType.APPLICATION_JSON)
+                                                                                                               .eTag(snapshot.eTag(gzip))
+                                                                                                               .lastModified(snapshot.getWrittenAt())
+                                                                                                               .cacheControl(CacheControl.maxAge(snapshot.getMaxAge()).cachePublic())
+                                                                                                               .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                                                                                                               .headers(headers -> {
+                                                                                                                   if (gzip) {
+                                                                                                                       headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                                                                                                                   }
+                                                                                                               })
+                                                                                                               .body(fromResource(new FileSystemResource(
+                                                                                                                       gzip ? snapshot.getGzipFile() : snapshot.getFile()))))))
+                                     .switchIfEmpty(ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).build());
     }
 
     public Mono<ServerResponse> getProduct(ServerRequest request) {
         String id = request.pathVariable("id");
 
-        Mono<Product> productMono = productRepository.findById(id);
+        Mono<Product> productMono = productBatchLoader.findById(id);
         Mono<ServerResponse> notFound = ServerResponse.notFound().build();
 
-        return productMono.flatMap(product -> ServerResponse.ok()
-                                                            .contentType(MediaType.APPLICATION_JSON)
-                                                            .body(fromValue(product)))
+        return productMono.flatMap(product -> checkNotModified(request, product)
+                                                     .switchIfEmpty(Mono.defer(() -> withETag(ServerResponse.ok(), product)
+                                                                                             .contentType(productMediaType(request))
+                                                                                             .body(fromValue(product)))))
                           .switchIfEmpty(notFound);
     }
 
+    public Mono<ServerResponse> getProductsById(ServerRequest request) {
+        MediaType contentType = ProductCodecs.select(request.headers().accept(), MGET_MEDIA_TYPES);
+
+        return request.bodyToMono(IDS)
+                      .flatMap(ids -> Mono.fromCallable(() -> ProductLookupResult.distinctIds(ids, productProperties.getMget().getMaxIds()))
+                                          .flatMap(distinct -> productRepository.findAllById(distinct).collectMap(Product::getId))
+                                          .flatMap(found -> ServerResponse.ok()
+                                                                          .contentType(contentType)
+                                                                          .body(Flux.fromIterable(ProductLookupResult.inOrder(ids, found)),
+                                                                                ProductLookupResult.class)))
+                      .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest().build()))
+                      .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().build());
+    }
+
     public Mono<ServerResponse> saveProduct(ServerRequest request) {
         Mono<Product> productMono = request.bodyToMono(Product.class);
 
-        return productMono.flatMap(product -> ServerResponse.status(HttpStatus.CREATED)
-                                                            .contentType(MediaType.APPLICATION_JSON)
-                                                            .body(productRepository.save(product), Product.class));
+        return productMono.flatMap(productRepository::insert)
+                          .flatMap(saved -> ServerResponse.status(HttpStatus.CREATED)
+                                                          .contentType(productMediaType(request))
+                                                          .body(fromValue(saved)))
+                          .onErrorResume(DuplicateKeyException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build());
+    }
+
+    public Mono<ServerResponse> saveProducts(ServerRequest request) {
+        ProductProperties.Bulk bulk = productProperties.getBulk();
+        Flux<ProductWriteResult> results = productRepository.bulkUpsert(request.bodyToFlux(Product.class),
+                                                                        bulk.getChunkSize(), bulk.getConcurrency());
+
+        return ServerResponse.ok()
+                             .contentType(MediaType.APPLICATION_NDJSON)
+                             .body(results, ProductWriteResult.class);
     }
 
     public Mono<ServerResponse> updateProduct(ServerRequest request) {
         String id = request.pathVariable("id");
-        Mono<Product> existingProductMono = productRepository.findById(id);
         Mono<Product> productMono = request.bodyToMono(Product.class);
         Mono<ServerResponse> notFound = ServerResponse.notFound().build();
+        Set<Long> expectedVersions;
+        try {
+            expectedVersions = ProductETags.expectedVersions(ifMatch(request));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
 
-        return productMono.zipWith(existingProductMono, (product, existingProduct) ->
-                    new Product(existingProduct.getId(), product.getName(), product.getPrice())
-                ).flatMap(product -> ServerResponse.ok()
-                                                   .contentType(MediaType.APPLICATION_JSON)
-                                                   .body(productRepository.save(product), Product.class)
-
-                ).switchIfEmpty(notFound);
+        return productMono.flatMap(product -> productRepository.findAndUpdateById(id, product, expectedVersions))
+                          .flatMap(updatedProduct -> withETag(ServerResponse.ok(), updatedProduct)
+                                                             .contentType(productMediaType(request))
+                                                             .body(fromValue(updatedProduct)))
+                          .switchIfEmpty(notFound)
+                          .onErrorResume(OptimisticLockingFailureException.class,
+                                  e -> ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build());
     }
 
     public Mono<ServerResponse> deleteProduct(ServerRequest request) {
         String id = request.pathVariable("id");
-        Mono<Product> productMono = productRepository.findById(id);
         Mono<ServerResponse> notFound = ServerResponse.notFound().build();
+        Set<Long> expectedVersions;
+        try {
+            expectedVersions = ProductETags.expectedVersions(ifMatch(request));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
 
-        return productMono.flatMap(existingProduct ->
-                ServerResponse.ok()
-                              .build(productRepository.delete(existingProduct))
-            ).switchIfEmpty(notFound);
+        return productRepository.findAndRemoveById(id, expectedVersions)
+                                .flatMap(removedProduct -> ServerResponse.ok().build())
+                                .switchIfEmpty(notFound)
+                                .onErrorResume(OptimisticLockingFailureException.class,
+                                        e -> ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build());
     }
 
     public Mono<ServerResponse> deleteAllProducts(ServerRequest request) {
@@ -84,12 +258,46 @@ public class ProductHandler {
     }
 
     public Mono<ServerResponse> getProductEvents(ServerRequest request) {
-        Flux<ProductEvent> eventsFlux = Flux.interval(Duration.ofSeconds(1))
-                                            .map(val -> new ProductEvent(val, "Product Event"));
+        String lastEventId = request.headers().firstHeader(LAST_EVENT_ID_HEADER);
+        Flux<ProductEvent> eventsFlux;
+        try {
+            eventsFlux = productEventPublisher.events(lastEventId == null ? null : Long.valueOf(lastEventId));
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().build();
+        }
+
+        if (ProductCodecs.APPLICATION_PROTOBUF.equals(ProductCodecs.select(request.headers().accept(), EVENT_MEDIA_TYPES))) {
+            return ServerResponse.ok()
+                                 .contentType(ProductCodecs.APPLICATION_PROTOBUF)
+                                 .body(eventsFlux, ProductEvent.class);
+        }
 
         return ServerResponse.ok()
                              .contentType(MediaType.TEXT_EVENT_STREAM)
-                             .body(eventsFlux, ProductEvent.class);
+                             .body(fromServerSentEvents(eventsFlux.map(event ->
+                                     ServerSentEvent.builder(event).id(Objects.toString(event.getEventId(), null)).build())));
+    }
+
+    private static MediaType productMediaType(ServerRequest request) {
+        return ProductCodecs.select(request.headers().accept(), ProductCodecs.PRODUCT_MEDIA_TYPES);
+    }
+
+    private static Mono<ServerResponse> checkNotModified(ServerRequest request, Product product) {
+        String eTag = ProductETags.of(product);
+        return eTag == null ? Mono.empty() : request.checkNotModified(eTag);
+    }
+
+    private static ServerResponse.BodyBuilder withETag(ServerResponse.BodyBuilder response, Product product) {
+        String eTag = ProductETags.of(product);
+        return eTag == null ? response : response.eTag(eTag);
+    }
+
+    /**
+     * Every If-Match line of the request as one list, the way a single combined header would carry it.
+     */
+    private static String ifMatch(ServerRequest request) {
+        List<String> ifMatch = request.headers().header(HttpHeaders.IF_MATCH);
+        return ifMatch.isEmpty() ? null : String.join(",", ifMatch);
     }
 
 }
@@ -0,0 +1,55 @@
+package com.jozsef.webflux.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.server.HttpServer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TCP connections of the HTTP server, whatever the protocol: with HTTP/2 many requests and event streams share one
+ * connection, with HTTP/1.1 each in-flight request holds one.
+ */
+@Component
+public class HttpConnectionMetrics implements NettyServerCustomizer, MeterBinder {
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong opened = new AtomicLong();
+
+    @Override
+    public HttpServer apply(HttpServer httpServer) {
+        return httpServer.doOnChannelInit((observer, channel, remoteAddress) -> {
+            if (channel instanceof Http2StreamChannel) {
+                return;
+            }
+            open.incrementAndGet();
+            opened.incrementAndGet();
+            channel.closeFuture().addListener(future -> open.decrementAndGet());
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("http.server.connections", open, AtomicInteger::get)
+             .description("HTTP connections currently open")
+             .register(registry);
+        FunctionCounter.builder("http.server.connections.opened", opened, AtomicLong::get)
+                       .description("HTTP connections accepted")
+                       .register(registry);
+    }
+
+    public int open() {
+        return open.get();
+    }
+
+    public long opened() {
+        return opened.get();
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.jozsef.webflux.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests currently being handled, for both the annotated and the functional routes.
+ */
+@Component
+public class InFlightRequestsWebFilter implements WebFilter {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public InFlightRequestsWebFilter(MeterRegistry meterRegistry) {
+        Gauge.builder("http.server.requests.in.flight", inFlight, AtomicInteger::get)
+             .description("HTTP requests currently in flight")
+             .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return Mono.defer(() -> {
+            inFlight.incrementAndGet();
+            return chain.filter(exchange)
+                        .doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.jozsef.webflux.metrics;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How long operations wait to check a connection out of the Mongo pool, and which share of the pool is checked out.
+ * Boot's {@code mongodb.driver.pool.*} gauges give the pool and wait queue sizes, but not the wait itself.
+ * <p>
+ * The driver's events do not say which check-out a connection was handed to, so starts and check-outs are matched
+ * first in, first out per server, the order the pool serves waiters in. The recorded distribution is exact when the
+ * pool is fair; the total wait always is.
+ */
+@Component
+public class MongoPoolMetrics implements ConnectionPoolListener, MongoClientSettingsBuilderCustomizer, MeterBinder {
+
+    public static final String CHECKOUT_WAIT_METRIC = "products.mongo.pool.checkout.wait";
+
+    private final Map<ServerId, Queue<Long>> checkOutStarts = new ConcurrentHashMap<>();
+    private final Map<ServerId, Integer> maxSizes = new ConcurrentHashMap<>();
+    private final AtomicInteger checkedOut = new AtomicInteger();
+
+    private volatile Timer checkoutWait;
+
+    @Override
+    public void customize(MongoClientSettings.Builder builder) {
+        builder.applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(this));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        checkoutWait = checkoutWaitTimer(registry, "driver");
+        Gauge.builder("products.mongo.pool.utilization", this, MongoPoolMetrics::utilization)
+             .description("Share of the Mongo pool's maximum size that is checked out, over all servers")
+             .register(registry);
+    }
+
+    /**
+     * Wait for a connection in the given queue: {@code driver} for the pool itself, {@code limiter} in front of it.
+     */
+    public static Timer checkoutWaitTimer(MeterRegistry registry, String queue) {
+        return Timer.builder(CHECKOUT_WAIT_METRIC)
+                    .description("Time an operation waited for a Mongo connection")
+                    .tag("queue", queue)
+                    .register(registry);
+    }
+
+    public double utilization() {
+        int capacity = maxSizes.values().stream().mapToInt(Integer::intValue).sum();
+        return capacity == 0 ? 0 : (double) checkedOut.get() / capacity;
+    }
+
+    @Override
+    public void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        maxSizes.put(event.getServerId(), event.getSettings().getMaxSize());
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        maxSizes.remove(event.getServerId());
+        checkOutStarts.remove(event.getServerId());
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        checkOutStarts.computeIfAbsent(event.getServerId(), id -> new ConcurrentLinkedQueue<>()).add(System.nanoTime());
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        checkedOut.incrementAndGet();
+        checkOutEnded(event.getConnectionId().getServerId());
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        checkOutEnded(event.getServerId());
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        checkedOut.decrementAndGet();
+    }
+
+    private void checkOutEnded(ServerId serverId) {
+        Queue<Long> starts = checkOutStarts.get(serverId);
+        Long start = starts == null ? null : starts.poll();
+        Timer timer = checkoutWait;
+        if (start != null && timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.jozsef.webflux.metrics;
+
+import com.jozsef.webflux.event.ProductEventPublisher;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Subscriber count and per-subscriber buffer depth of the {@code /products/events} streams.
+ */
+@Component
+public class ProductEventMetrics implements MeterBinder {
+
+    private final ProductEventPublisher productEventPublisher;
+
+    public ProductEventMetrics(ProductEventPublisher productEventPublisher) {
+        this.productEventPublisher = productEventPublisher;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("products.events.subscribers", productEventPublisher, ProductEventPublisher::subscriberCount)
+             .description("Active product event stream subscribers")
+             .register(registry);
+        Gauge.builder("products.events.buffered", productEventPublisher, ProductEventPublisher::bufferedEvents)
+             .description("Events waiting in subscriber buffers, summed over all subscribers")
+             .register(registry);
+        Gauge.builder("products.events.buffered.max", productEventPublisher, ProductEventPublisher::maxBufferedEvents)
+             .description("Events waiting in the fullest subscriber buffer")
+             .register(registry);
+        FunctionCounter.builder("products.events.dropped", productEventPublisher, ProductEventPublisher::droppedEvents)
+                       .description("Events dropped because a subscriber buffer overflowed")
+                       .register(registry);
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.jozsef.webflux.metrics;
+
+import com.jozsef.webflux.repository.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps {@link ProductRepository} so every call is timed per method, from subscription until the Mongo
+ * operation completes, errors or is cancelled. Timing the method call alone would only measure assembly.
+ */
+@Component
+public class TimedProductRepositoryPostProcessor implements BeanPostProcessor {
+
+    static final String METRIC_NAME = "products.repository.invocations";
+
+    private static final String[] OUTCOMES = {"SUCCESS", "ERROR", "CANCELLED"};
+
+    // resolved lazily: post-processors are created before the meter registry is ready
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    // per method, indexed like OUTCOMES, so a call does not build and look up its meter id again
+    private final Map<Method, Timer[]> timers = new ConcurrentHashMap<>();
+
+    public TimedProductRepositoryPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof ProductRepository)) {
+            return bean;
+        }
+
+        return Proxy.newProxyInstance(ProductRepository.class.getClassLoader(), new Class<?>[]{ProductRepository.class},
+                (proxy, method, args) -> timed(method, invoke(bean, method, args)));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private Object timed(Method method, Object result) {
+        if (result instanceof Mono) {
+            Mono<?> mono = (Mono<?>) result;
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return mono.doFinally(signal -> record(method, signal, start));
+            });
+        }
+        if (result instanceof Flux) {
+            Flux<?> flux = (Flux<?>) result;
+            return Flux.defer(() -> {
+                long start = System.nanoTime();
+                return flux.doFinally(signal -> record(method, signal, start));
+            });
+        }
+        return result;
+    }
+
+    private void record(Method method, SignalType signal, long start) {
+        timer(method, signal == SignalType.ON_COMPLETE ? 0 : signal == SignalType.ON_ERROR ? 1 : 2)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(Method method, int outcome) {
+        Timer[] byOutcome = timers.computeIfAbsent(method, key -> new Timer[OUTCOMES.length]);
+        Timer timer = byOutcome[outcome];
+        if (timer == null) {
+            // a racing thread registers the same id and gets the same timer back
+            timer = Timer.builder(METRIC_NAME)
+                         .description("ProductRepository calls, from subscription to completion")
+                         .tag("method", method.getName())
+                         .tag("outcome", OUTCOMES[outcome])
+                         .register(meterRegistry.getObject());
+            byOutcome[outcome] = timer;
+        }
+        return timer;
+    }
+
+}
@@ -1,13 +1,19 @@
 package com.jozsef.webflux.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document
+@CompoundIndex(name = "name_id", def = "{'name': 1, '_id': 1}")
+@CompoundIndex(name = "price_id", def = "{'price': 1, '_id': 1}")
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Builder
 @Data
 @NoArgsConstructor
@@ -20,4 +26,7 @@ public class Product {
     private String name;
     private Double price;
 
+    @Version
+    private Long version;
+
 }
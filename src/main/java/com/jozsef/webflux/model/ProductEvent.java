@@ -11,7 +11,25 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class ProductEvent {
 
+    public enum Type {
+        INSERT, UPDATE, DELETE,
+        /**
+         * The changes since the client's last event can no longer be replayed; it has to reload the catalog.
+         */
+        RESYNC
+    }
+
     private Long eventId;
-    private String eventType;
+    private Type eventType;
+
+    /**
+     * Id of the changed product; null on a {@link Type#DELETE} means every product was deleted.
+     */
+    private String productId;
+
+    /**
+     * State after the change; null for deletes.
+     */
+    private Product product;
 
 }
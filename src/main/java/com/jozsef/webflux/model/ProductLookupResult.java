@@ -0,0 +1,63 @@
+package com.jozsef.webflux.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One entry of a multi-get response: the requested id and either the product or a {@link Status#NOT_FOUND} marker.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductLookupResult {
+
+    public enum Status {
+        FOUND, NOT_FOUND
+    }
+
+    private String id;
+    private Status status;
+    private Product product;
+
+    /**
+     * The distinct ids to query for; signals {@link IllegalArgumentException} for a null id or more than
+     * {@code maxIds} of them.
+     */
+    public static Set<String> distinctIds(List<String> ids, int maxIds) {
+        if (ids.size() > maxIds) {
+            throw new IllegalArgumentException("At most " + maxIds + " ids can be looked up at once");
+        }
+        Set<String> distinct = new LinkedHashSet<>(ids.size());
+        for (String id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("Ids must not be null");
+            }
+            distinct.add(id);
+        }
+        return distinct;
+    }
+
+    /**
+     * One result per requested id, in request order, repeated ids included.
+     */
+    public static List<ProductLookupResult> inOrder(List<String> ids, Map<String, Product> found) {
+        List<ProductLookupResult> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Product product = found.get(id);
+            results.add(new ProductLookupResult(id, product == null ? Status.NOT_FOUND : Status.FOUND, product));
+        }
+        return results;
+    }
+
+}
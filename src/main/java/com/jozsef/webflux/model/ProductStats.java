@@ -0,0 +1,40 @@
+package com.jozsef.webflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Catalog price statistics. {@code count} covers every product; the price figures and the histogram only
+ * products that have a price, so the min, max and average are null for a catalog without prices.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductStats {
+
+    private long count;
+    private Double minPrice;
+    private Double maxPrice;
+    private Double avgPrice;
+    private double bucketWidth;
+    private List<PriceBucket> histogram;
+
+    /**
+     * Products priced in {@code [lowerBound, lowerBound + bucketWidth)}; empty buckets are left out.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PriceBucket {
+
+        private double lowerBound;
+        private long count;
+
+    }
+
+}
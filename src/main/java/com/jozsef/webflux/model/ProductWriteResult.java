@@ -0,0 +1,23 @@
+package com.jozsef.webflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductWriteResult {
+
+    public enum Status {
+        CREATED, UPDATED, FAILED
+    }
+
+    private long index;
+    private String id;
+    private Status status;
+    private String error;
+
+}
@@ -0,0 +1,67 @@
+package com.jozsef.webflux.ratelimit;
+
+import com.jozsef.webflux.repository.InMemoryProductRepository;
+import com.jozsef.webflux.repository.ProductRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Runs every single-result Mongo operation of {@link ProductRepository} through the {@link MongoConnectionLimiter}.
+ * Ordered before the timing proxy, so repository timings include the wait for a connection. The in-memory repository
+ * is left out: it reaches Mongo through the repository wrapped here, and holding a connection around that call as
+ * well could starve it.
+ * <p>
+ * Streaming methods ({@code findAll}, {@code streamAll}, {@code findMatching}, chunked writes) are left out too. The
+ * driver checks a connection out per batch and returns it in between, so a permit held for the whole stream would
+ * keep a slot taken while the client is still reading, and a few exports would starve every lookup.
+ */
+@Component
+@ConditionalOnProperty(prefix = "products.mongo.pool.adaptive", name = "enabled")
+public class LimitedProductRepositoryPostProcessor implements BeanPostProcessor, Ordered {
+
+    // resolved lazily: post-processors are created before regular beans
+    private final ObjectProvider<MongoConnectionLimiter> limiter;
+
+    public LimitedProductRepositoryPostProcessor(ObjectProvider<MongoConnectionLimiter> limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof ProductRepository) || bean instanceof InMemoryProductRepository) {
+            return bean;
+        }
+
+        return Proxy.newProxyInstance(ProductRepository.class.getClassLoader(), new Class<?>[]{ProductRepository.class},
+                (proxy, method, args) -> limited(invoke(bean, method, args)));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private Object limited(Object result) {
+        if (result instanceof Mono) {
+            return limiter.getObject().withConnection((Mono<?>) result);
+        }
+        return result;
+    }
+
+}
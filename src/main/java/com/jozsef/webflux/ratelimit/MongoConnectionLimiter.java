@@ -0,0 +1,244 @@
+package com.jozsef.webflux.ratelimit;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.metrics.MongoPoolMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive size of the Mongo pool. The driver cannot resize a pool once created, so its {@code max-size} is the
+ * ceiling and this limiter decides how much of it is used: at most {@link #limit()} repository operations run at
+ * once and the rest queue here, first come, first served. Every interval the limit grows by a quarter while
+ * operations waited longer than the target on average, and shrinks by an eighth while less than half of it was in
+ * use; connections above the limit then go idle and the driver closes them after {@code max-connection-idle-time}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "products.mongo.pool.adaptive", name = "enabled")
+@Slf4j
+public class MongoConnectionLimiter {
+
+    private final MongoPoolWaitQueue mongoPoolWaitQueue;
+    private final ProductProperties.Mongo.Pool.Adaptive adaptive;
+    private final int maxSize;
+    private final Scheduler scheduler;
+    private final Timer waitTimer;
+
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private int limit;
+    private int inUse;
+
+    // since the last adjustment
+    private long acquired;
+    private long waitedNanos;
+    private int peakInUse;
+
+    private Disposable adjustments;
+
+    @Autowired
+    public MongoConnectionLimiter(ProductProperties productProperties, MongoPoolWaitQueue mongoPoolWaitQueue,
+                                  MeterRegistry meterRegistry) {
+        this(productProperties, mongoPoolWaitQueue, meterRegistry, Schedulers.parallel());
+    }
+
+    MongoConnectionLimiter(ProductProperties productProperties, MongoPoolWaitQueue mongoPoolWaitQueue,
+                           MeterRegistry meterRegistry, Scheduler scheduler) {
+        ProductProperties.Mongo.Pool pool = productProperties.getMongo().getPool();
+        this.adaptive = pool.getAdaptive();
+        this.maxSize = pool.getMaxSize();
+        if (adaptive.getMinSize() < 1 || adaptive.getMinSize() > adaptive.getInitialSize() || adaptive.getInitialSize() > maxSize) {
+            throw new IllegalArgumentException("Adaptive Mongo pool needs 1 <= min-size <= initial-size <= max-size");
+        }
+
+        this.mongoPoolWaitQueue = mongoPoolWaitQueue;
+        this.scheduler = scheduler;
+        this.limit = adaptive.getInitialSize();
+        this.waitTimer = MongoPoolMetrics.checkoutWaitTimer(meterRegistry, "limiter");
+        Gauge.builder("products.mongo.pool.limit", this, MongoConnectionLimiter::limit)
+             .description("Mongo operations the adaptive pool lets run at once")
+             .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        adjustments = Flux.interval(adaptive.getInterval(), scheduler)
+                          .subscribe(tick -> adjust());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (adjustments != null) {
+            adjustments.dispose();
+        }
+    }
+
+    public synchronized int limit() {
+        return limit;
+    }
+
+    public synchronized int inUse() {
+        return inUse;
+    }
+
+    /**
+     * Subscribes to {@code source} once a connection is free, and frees it again when the source terminates or is
+     * cancelled. Only for operations that hold one connection throughout; cursors return theirs between batches.
+     */
+    public <T> Mono<T> withConnection(Mono<T> source) {
+        return Mono.usingWhen(acquire(), permit -> source, Permit::releaseLater, (permit, e) -> permit.releaseLater(),
+                Permit::releaseLater);
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, System.nanoTime());
+            synchronized (this) {
+                if (waiters.isEmpty() && inUse < limit) {
+                    inUse++;
+                    peakInUse = Math.max(peakInUse, inUse);
+                    acquired++;
+                    waiter.state.set(Waiter.GRANTED);
+                } else {
+                    waiters.add(waiter);
+                }
+            }
+
+            if (waiter.state.get() == Waiter.GRANTED) {
+                waitTimer.record(0, TimeUnit.NANOSECONDS);
+                sink.success(waiter.permit);
+                return;
+            }
+            mongoPoolWaitQueue.waitStarted();
+            sink.onCancel(() -> {
+                if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+                    synchronized (this) {
+                        waiters.remove(waiter);
+                    }
+                    mongoPoolWaitQueue.waitEnded();
+                } else {
+                    // granted concurrently: the permit may never reach the cancelled subscriber
+                    waiter.permit.release();
+                }
+            });
+        });
+    }
+
+    private void release() {
+        synchronized (this) {
+            inUse--;
+        }
+        grant();
+    }
+
+    private void grant() {
+        List<Waiter> granted = new ArrayList<>();
+        long now = System.nanoTime();
+        synchronized (this) {
+            while (inUse < limit && !waiters.isEmpty()) {
+                Waiter waiter = waiters.poll();
+                if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+                    inUse++;
+                    acquired++;
+                    waitedNanos += now - waiter.start;
+                    granted.add(waiter);
+                }
+            }
+            peakInUse = Math.max(peakInUse, inUse);
+        }
+
+        for (Waiter waiter : granted) {
+            mongoPoolWaitQueue.waitEnded();
+            waitTimer.record(now - waiter.start, TimeUnit.NANOSECONDS);
+            waiter.sink.success(waiter.permit);
+        }
+    }
+
+    void adjust() {
+        int previous;
+        int next;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // operations still queued count too, or a limit held entirely by slow operations would never grow
+            long waited = waitedNanos;
+            long operations = acquired;
+            for (Waiter waiter : waiters) {
+                waited += now - waiter.start;
+                operations++;
+            }
+            long averageWait = operations == 0 ? 0 : waited / operations;
+
+            previous = limit;
+            if (averageWait > adaptive.getTargetWait().toNanos()) {
+                limit = Math.min(maxSize, limit + Math.max(1, limit / 4));
+            } else if (peakInUse < limit / 2) {
+                limit = Math.max(adaptive.getMinSize(), limit - Math.max(1, limit / 8));
+            }
+            next = limit;
+
+            acquired = 0;
+            waitedNanos = 0;
+            peakInUse = inUse;
+        }
+
+        if (next != previous) {
+            log.debug("Mongo pool limit {} -> {}", previous, next);
+        }
+        if (next > previous) {
+            grant();
+        }
+    }
+
+    private final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                MongoConnectionLimiter.this.release();
+            }
+        }
+
+        Mono<Void> releaseLater() {
+            return Mono.fromRunnable(this::release);
+        }
+
+    }
+
+    private final class Waiter {
+
+        static final int WAITING = 0;
+        static final int GRANTED = 1;
+        static final int CANCELLED = 2;
+
+        final MonoSink<Permit> sink;
+        final long start;
+        final Permit permit = new Permit();
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(MonoSink<Permit> sink, long start) {
+            this.sink = sink;
+            this.start = start;
+        }
+
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.jozsef.webflux.ratelimit;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Operations waiting for a Mongo connection right now. Registers itself as a pool listener on the client Boot
+ * builds, and also counts operations queued in the {@link MongoConnectionLimiter}; a growing queue means the pool is
+ * the bottleneck and more requests only wait longer.
+ */
+@Component
+public class MongoPoolWaitQueue implements ConnectionPoolListener, MongoClientSettingsBuilderCustomizer {
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    @Override
+    public void customize(MongoClientSettings.Builder builder) {
+        builder.applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(this));
+    }
+
+    public int size() {
+        return waiting.get();
+    }
+
+    void waitStarted() {
+        waiting.incrementAndGet();
+    }
+
+    void waitEnded() {
+        waiting.decrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        waitStarted();
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        waitEnded();
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        waitEnded();
+    }
+
+}
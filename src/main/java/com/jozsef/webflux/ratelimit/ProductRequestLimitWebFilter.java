@@ -0,0 +1,201 @@
+package com.jozsef.webflux.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jozsef.webflux.codec.ProductCodecs;
+import com.jozsef.webflux.config.ProductProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Guards the annotated and functional product routes before any work is done for a request: requests are shed with
+ * 503 while too many are in flight or too many operations already wait for a Mongo connection, so one client cannot
+ * exhaust the pool for all others, and a token bucket per client answers 429 to admitted clients over their rate.
+ * Event streams and exports stay open for minutes, so they are counted against a budget of their own rather than
+ * the requests in flight. Runs after Boot's metrics filter, so rejections still show up in
+ * {@code http.server.requests}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class ProductRequestLimitWebFilter implements WebFilter {
+
+    static final String REJECTED_METRIC = "products.requests.rejected";
+
+    private static final List<PathPattern> PRODUCT_PATHS = List.of(
+            PathPatternParser.defaultInstance.parse("/products/**"),
+            PathPatternParser.defaultInstance.parse("/functional/products/**"));
+
+    private static final List<PathPattern> STREAM_PATHS = List.of(
+            PathPatternParser.defaultInstance.parse("/products/events"),
+            PathPatternParser.defaultInstance.parse("/products/export"),
+            PathPatternParser.defaultInstance.parse("/functional/products/events"),
+            PathPatternParser.defaultInstance.parse("/functional/products/export"));
+
+    // not application/x-protobuf, which a single product is written as too
+    private static final List<MediaType> STREAM_MEDIA_TYPES = List.of(MediaType.TEXT_EVENT_STREAM,
+            MediaType.APPLICATION_NDJSON, MediaType.valueOf("application/stream+json"),
+            ProductCodecs.APPLICATION_STREAM_SMILE, ProductCodecs.APPLICATION_CBOR_SEQ);
+
+    private final ProductProperties.RateLimit rateLimit;
+    private final ProductProperties.LoadShedding loadShedding;
+    private final MongoPoolWaitQueue mongoPoolWaitQueue;
+
+    private final Cache<String, TokenBucket> buckets;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger openStreams = new AtomicInteger();
+
+    private final Counter rateLimited;
+    private final Counter concurrencyShed;
+    private final Counter streamsShed;
+    private final Counter mongoPoolShed;
+
+    public ProductRequestLimitWebFilter(ProductProperties productProperties, MongoPoolWaitQueue mongoPoolWaitQueue,
+                                        MeterRegistry meterRegistry) {
+        this.rateLimit = productProperties.getRateLimit();
+        this.loadShedding = productProperties.getLoadShedding();
+        this.mongoPoolWaitQueue = mongoPoolWaitQueue;
+        if (rateLimit.getWriteCost() > rateLimit.getBurst()) {
+            throw new IllegalArgumentException("products.rate-limit.write-cost must not exceed the burst");
+        }
+
+        // an idle client's bucket is full again after burst / rate, so forgetting it then loses nothing
+        long refillNanos = (long) Math.ceil(rateLimit.getBurst() / rateLimit.getRequestsPerSecond() * 1e9);
+        this.buckets = Caffeine.newBuilder()
+                               .maximumSize(rateLimit.getMaxClients())
+                               .expireAfterAccess(refillNanos, TimeUnit.NANOSECONDS)
+                               .build();
+
+        this.rateLimited = rejections(meterRegistry, "rate_limited");
+        this.concurrencyShed = rejections(meterRegistry, "concurrency");
+        this.streamsShed = rejections(meterRegistry, "streams");
+        this.mongoPoolShed = rejections(meterRegistry, "mongo_pool");
+        Gauge.builder("products.requests.limited.clients", buckets, Cache::estimatedSize)
+             .description("Clients with a rate limit bucket")
+             .register(meterRegistry);
+    }
+
+    private static Counter rejections(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder(REJECTED_METRIC)
+                      .description("Product requests rejected before being handled")
+                      .tag("reason", reason)
+                      .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (PRODUCT_PATHS.stream().noneMatch(pattern -> pattern.matches(request.getPath().pathWithinApplication()))) {
+            return chain.filter(exchange);
+        }
+
+        return Mono.defer(() -> {
+            AtomicInteger budget = null;
+            if (loadShedding.isEnabled()) {
+                if (mongoPoolWaitQueue.size() > loadShedding.getMaxMongoPoolWaitQueue()) {
+                    mongoPoolShed.increment();
+                    return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1));
+                }
+                boolean stream = isStream(request);
+                budget = stream ? openStreams : inFlight;
+                int limit = stream ? loadShedding.getMaxConcurrentStreams() : loadShedding.getMaxConcurrentRequests();
+                if (budget.incrementAndGet() > limit) {
+                    budget.decrementAndGet();
+                    (stream ? streamsShed : concurrencyShed).increment();
+                    return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+
+            // only now, so a request shed above does not also use up its client's tokens
+            long waitNanos = rateLimitWait(request);
+            if (waitNanos > 0) {
+                if (budget != null) {
+                    budget.decrementAndGet();
+                }
+                rateLimited.increment();
+                return reject(exchange, HttpStatus.TOO_MANY_REQUESTS, waitNanos);
+            }
+
+            AtomicInteger admitted = budget;
+            return admitted == null
+                    ? chain.filter(exchange)
+                    : chain.filter(exchange).doFinally(signal -> admitted.decrementAndGet());
+        });
+    }
+
+    private long rateLimitWait(ServerHttpRequest request) {
+        if (!rateLimit.isEnabled()) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return buckets.get(clientKey(request), key -> new TokenBucket(rateLimit.getRequestsPerSecond(), rateLimit.getBurst(), now))
+                      .tryAcquire(cost(request), now);
+    }
+
+    private static boolean isStream(ServerHttpRequest request) {
+        if (request.getMethod() != HttpMethod.GET) {
+            return false;
+        }
+        if (STREAM_PATHS.stream().anyMatch(pattern -> pattern.matches(request.getPath().pathWithinApplication()))) {
+            return true;
+        }
+        return request.getHeaders().getAccept().stream()
+                      .anyMatch(accepted -> STREAM_MEDIA_TYPES.stream().anyMatch(accepted::equalsTypeAndSubtype));
+    }
+
+    private String clientKey(ServerHttpRequest request) {
+        String apiKey = request.getHeaders().getFirst(rateLimit.getClientHeader());
+        if (apiKey != null && !apiKey.isEmpty()) {
+            return "key:" + apiKey;
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null || remoteAddress.getAddress() == null) {
+            return "ip:unknown";
+        }
+        return "ip:" + remoteAddress.getAddress().getHostAddress();
+    }
+
+    private int cost(ServerHttpRequest request) {
+        HttpMethod method = request.getMethod();
+        return method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.DELETE
+                ? rateLimit.getWriteCost()
+                : 1;
+    }
+
+    private static Mono<Void> reject(ServerWebExchange exchange, HttpStatus status, long retryAfterNanos) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1, (retryAfterNanos + 999_999_999) / 1_000_000_000)));
+        return response.setComplete();
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    int openStreams() {
+        return openStreams.get();
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.jozsef.webflux.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket kept as a single timestamp, the generic cell rate algorithm: the time at which the bucket would be
+ * full again. Taking tokens moves it forward by their refill time, so acquiring is one compare-and-set and no
+ * refill task is needed.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+
+    // the bucket is full at any time from here on
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double tokensPerSecond, int burst, long nanoTime) {
+        if (tokensPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.nanosPerToken = (long) Math.ceil(1_000_000_000 / tokensPerSecond);
+        this.burstNanos = nanosPerToken * burst;
+        this.fullAt = new AtomicLong(nanoTime);
+    }
+
+    /**
+     * Takes {@code tokens} if the bucket holds them; more than the burst are never available.
+     *
+     * @return 0 when they were taken, otherwise how many nanoseconds until they would be available
+     */
+    public long tryAcquire(int tokens, long nanoTime) {
+        long cost = nanosPerToken * tokens;
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nanoTime) + cost;
+            long wait = next - nanoTime - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.ProductEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.SignalType;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link ProductStore} behind {@link InMemoryProductRepository}: loaded from Mongo once the application is ready
+ * and then kept current from {@link ProductEventPublisher}, which also carries writes made by other instances with
+ * the change stream source. A separate bean, since the repository itself is wrapped in a timing proxy.
+ */
+@Component
+@Profile("in-memory")
+@Slf4j
+public class InMemoryProductCatalog {
+
+    private final ProductRepository mongoRepository;
+    private final ProductEventPublisher productEventPublisher;
+    private final ProductProperties productProperties;
+    private final ProductStore store = new ProductStore();
+
+    // a delete seen while loading must not be undone by the product the load read before it
+    private final Set<String> deletedWhileLoading = ConcurrentHashMap.newKeySet();
+    private volatile boolean clearedWhileLoading;
+    private volatile boolean loading;
+    private volatile boolean loaded;
+
+    private Disposable subscription;
+
+    public InMemoryProductCatalog(@Qualifier("productRepository") ProductRepository mongoRepository,
+                                  ProductEventPublisher productEventPublisher, ProductProperties productProperties) {
+        this.mongoRepository = mongoRepository;
+        this.productEventPublisher = productEventPublisher;
+        this.productProperties = productProperties;
+    }
+
+    @PostConstruct
+    public void start() {
+        // subscribed before loading, so no write made while the catalog is read is missed
+        subscription = productEventPublisher.events().subscribe(this::apply);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        loading = true;
+        // events applied meanwhile are stored unordered as well, the sort at the end covers them
+        store.deferIndexes();
+        mongoRepository.streamAll(productProperties.getExport().getBatchSize())
+                       .filter(product -> !clearedWhileLoading && !deletedWhileLoading.contains(product.getId()))
+                       .doOnNext(store::put)
+                       .count()
+                       .doFinally(signal -> {
+                           store.buildIndexes();
+                           loading = false;
+                           deletedWhileLoading.clear();
+                           clearedWhileLoading = false;
+                           loaded = signal == SignalType.ON_COMPLETE;
+                       })
+                       .subscribe(count -> log.info("Loaded {} products into memory", count),
+                               e -> log.warn("Could not load the products into memory, reads stay on Mongo", e));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public ProductStore getStore() {
+        return store;
+    }
+
+    private void apply(ProductEvent event) {
+        switch (event.getEventType()) {
+            case INSERT:
+            case UPDATE:
+                if (event.getProduct() != null && event.getProduct().getId() != null) {
+                    store.put(event.getProduct());
+                }
+                break;
+            case DELETE:
+                if (event.getProductId() == null) {
+                    clearedWhileLoading = loading;
+                    store.clear();
+                } else {
+                    if (loading) {
+                        deletedWhileLoading.add(event.getProductId());
+                    }
+                    store.remove(event.getProductId());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductPage;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.model.ProductWriteResult;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+/**
+ * {@link ProductRepository} for read-heavy deployments, active with the {@code in-memory} profile: lookups,
+ * listings, pages, exports and price stats are answered from the {@link InMemoryProductCatalog}, and every write goes
+ * to Mongo first and reaches the store once Mongo acknowledged it. Until the catalog is loaded, and for
+ * query-by-example and {@link Sort} lookups, reads go to Mongo too.
+ */
+@Repository
+@Primary
+@Profile("in-memory")
+public class InMemoryProductRepository implements ProductRepository {
+
+    private final ProductRepository mongoRepository;
+    private final InMemoryProductCatalog catalog;
+    private final ProductStore store;
+    private final int exportBatchSize;
+
+    public InMemoryProductRepository(@Qualifier("productRepository") ProductRepository mongoRepository,
+                                     InMemoryProductCatalog catalog, ProductProperties productProperties) {
+        this.mongoRepository = mongoRepository;
+        this.catalog = catalog;
+        this.store = catalog.getStore();
+        this.exportBatchSize = productProperties.getExport().getBatchSize();
+    }
+
+    @Override
+    public Mono<Product> findById(String id) {
+        return catalog.isLoaded() ? Mono.fromCallable(() -> store.get(id)) : mongoRepository.findById(id);
+    }
+
+    @Override
+    public Mono<Product> findById(Publisher<String> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String id) {
+        return findById(id).hasElement();
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<String> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Flux<Product> findAll() {
+        return catalog.isLoaded() ? streamAll(exportBatchSize) : mongoRepository.findAll();
+    }
+
+    @Override
+    public Flux<Product> findAllById(Iterable<String> ids) {
+        return catalog.isLoaded() ? Flux.defer(() -> Flux.fromIterable(store.getAll(ids))) : mongoRepository.findAllById(ids);
+    }
+
+    @Override
+    public Flux<Product> findAllById(Publisher<String> ids) {
+        return Flux.from(ids).collectList().flatMapMany(this::findAllById);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return catalog.isLoaded() ? Mono.fromCallable(() -> (long) store.size()) : mongoRepository.count();
+    }
+
+    @Override
+    public Flux<Product> findAll(Sort sort) {
+        return mongoRepository.findAll(sort);
+    }
+
+    @Override
+    public <S extends Product> Mono<S> findOne(Example<S> example) {
+        return mongoRepository.findOne(example);
+    }
+
+    @Override
+    public <S extends Product> Flux<S> findAll(Example<S> example) {
+        return mongoRepository.findAll(example);
+    }
+
+    @Override
+    public <S extends Product> Flux<S> findAll(Example<S> example, Sort sort) {
+        return mongoRepository.findAll(example, sort);
+    }
+
+    @Override
+    public <S extends Product> Mono<Long> count(Example<S> example) {
+        return mongoRepository.count(example);
+    }
+
+    @Override
+    public <S extends Product> Mono<Boolean> exists(Example<S> example) {
+        return mongoRepository.exists(example);
+    }
+
+    @Override
+    public Flux<Product> findMatching(ProductQuery query) {
+        if (!catalog.isLoaded()) {
+            return mongoRepository.findMatching(query);
+        }
+        return Flux.defer(() -> Flux.fromIterable(store.find(query.validate(), null, Integer.MAX_VALUE)));
+    }
+
+    @Override
+    public Mono<ProductPage> findPage(ProductQuery query, String cursor, int size) {
+        if (!catalog.isLoaded()) {
+            return mongoRepository.findPage(query, cursor, size);
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return Mono.error(new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE));
+        }
+
+        return Mono.fromCallable(() -> {
+            String sort = query.validate().getSort();
+            ProductCursor after = cursor == null ? null : ProductCursor.decode(cursor, sort);
+            // one extra product tells whether there is a next page, as in Mongo
+            return ProductRepositoryCustomImpl.toPage(store.find(query, after, size + 1), size, sort);
+        });
+    }
+
+    @Override
+    public Flux<Product> streamAll(int batchSize) {
+        if (!catalog.isLoaded()) {
+            return mongoRepository.streamAll(batchSize);
+        }
+
+        // batch by batch in id order, so an export never copies the whole catalog at once
+        ProductQuery all = ProductQuery.all();
+        return Mono.fromCallable(() -> store.find(all, null, batchSize))
+                   .expand(batch -> batch.size() < batchSize
+                           ? Mono.empty()
+                           : Mono.fromCallable(() -> store.find(all, ProductCursor.after(ProductCursor.ID, batch.get(batch.size() - 1)), batchSize)))
+                   .concatMapIterable(batch -> batch);
+    }
+
+    @Override
+    public Mono<ProductStats> priceStats(double bucketWidth) {
+        return catalog.isLoaded() ? Mono.fromCallable(() -> store.priceStats(bucketWidth)) : mongoRepository.priceStats(bucketWidth);
+    }
+
+    @Override
+    public <S extends Product> Mono<S> save(S entity) {
+        return mongoRepository.save(entity).doOnNext(store::put);
+    }
+
+    @Override
+    public <S extends Product> Flux<S> saveAll(Iterable<S> entities) {
+        return mongoRepository.saveAll(entities).doOnNext(store::put);
+    }
+
+    @Override
+    public <S extends Product> Flux<S> saveAll(Publisher<S> entityStream) {
+        return mongoRepository.saveAll(entityStream).doOnNext(store::put);
+    }
+
+    @Override
+    public <S extends Product> Mono<S> insert(S entity) {
+        return mongoRepository.insert(entity).doOnNext(store::put);
+    }
+
+    @Override
+    public <S extends Product> Flux<S> insert(Iterable<S> entities) {
+        return mongoRepository.insert(entities).doOnNext(store::put);
+    }
+
+    @Override
+    public <S extends Product> Flux<S> insert(Publisher<S> entities) {
+        return mongoRepository.insert(entities).doOnNext(store::put);
+    }
+
+    @Override
+    public Flux<ProductWriteResult> bulkUpsert(Flux<Product> products, int chunkSize, int concurrency) {
+        // the stored products reach the catalog through the events published for them, with their new versions
+        return mongoRepository.bulkUpsert(products, chunkSize, concurrency);
+    }
+
+    @Override
+    public Mono<Product> findAndUpdateById(String id, Product changes, Set<Long> expectedVersions) {
+        return mongoRepository.findAndUpdateById(id, changes, expectedVersions).doOnNext(store::put);
+    }
+
+    @Override
+    public Mono<Product> findAndRemoveById(String id, Set<Long> expectedVersions) {
+        return mongoRepository.findAndRemoveById(id, expectedVersions).doOnNext(removed -> store.remove(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(String id) {
+        return mongoRepository.deleteById(id).doOnSuccess(v -> store.remove(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<String> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(Product entity) {
+        return mongoRepository.delete(entity).doOnSuccess(v -> store.remove(entity.getId()));
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends String> ids) {
+        return mongoRepository.deleteAllById(ids).doOnSuccess(v -> ids.forEach(store::remove));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends Product> entities) {
+        return mongoRepository.deleteAll(entities).doOnSuccess(v -> entities.forEach(entity -> store.remove(entity.getId())));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends Product> entityStream) {
+        return Flux.from(entityStream).collectList().flatMap(this::deleteAll);
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return mongoRepository.deleteAll().doOnSuccess(v -> store.clear());
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads products by id in batches: lookups arriving within {@code products.batching.window} of each other, up to
+ * {@code max-size} of them, are answered by a single {@code findAllById} query, and lookups of the same id share
+ * its result. Under burst load this turns hundreds of queries into a few; a lone lookup waits at most the window.
+ */
+@Component
+public class ProductBatchLoader {
+
+    private final ProductRepository productRepository;
+    private final ProductProperties.Batching properties;
+    private final Scheduler scheduler;
+    private final DistributionSummary batchSizes;
+
+    private final Queue<Lookup> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    @Autowired
+    public ProductBatchLoader(ProductRepository productRepository, ProductProperties productProperties,
+                              MeterRegistry meterRegistry) {
+        this(productRepository, productProperties, meterRegistry, Schedulers.parallel());
+    }
+
+    ProductBatchLoader(ProductRepository productRepository, ProductProperties productProperties,
+                       MeterRegistry meterRegistry, Scheduler scheduler) {
+        this.productRepository = productRepository;
+        this.properties = productProperties.getBatching();
+        this.scheduler = scheduler;
+        this.batchSizes = DistributionSummary.builder("products.repository.batch.size")
+                                             .description("Ids looked up per findAllById batch")
+                                             .register(meterRegistry);
+    }
+
+    public Mono<Product> findById(String id) {
+        if (!properties.isEnabled()) {
+            return productRepository.findById(id);
+        }
+
+        return Mono.create(sink -> {
+            pending.add(new Lookup(id, sink));
+            if (pendingCount.incrementAndGet() >= properties.getMaxSize()) {
+                flush();
+            } else if (flushScheduled.compareAndSet(false, true)) {
+                scheduler.schedule(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                }, properties.getWindow().toNanos(), TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    private void flush() {
+        List<Lookup> batch;
+        while (!(batch = drain()).isEmpty()) {
+            load(batch);
+        }
+    }
+
+    private List<Lookup> drain() {
+        List<Lookup> batch = new ArrayList<>();
+        Lookup lookup;
+        while (batch.size() < properties.getMaxSize() && (lookup = pending.poll()) != null) {
+            batch.add(lookup);
+        }
+        pendingCount.addAndGet(-batch.size());
+        return batch;
+    }
+
+    private void load(List<Lookup> batch) {
+        Map<String, List<MonoSink<Product>>> waiting = new HashMap<>();
+        for (Lookup lookup : batch) {
+            waiting.computeIfAbsent(lookup.id, id -> new ArrayList<>(1)).add(lookup.sink);
+        }
+        batchSizes.record(waiting.size());
+
+        productRepository.findAllById(waiting.keySet())
+                         .collectMap(Product::getId)
+                         .subscribe(found -> waiting.forEach((id, sinks) -> {
+                                     Product product = found.get(id);
+                                     for (MonoSink<Product> sink : sinks) {
+                                         if (product == null) {
+                                             sink.success();
+                                         } else {
+                                             sink.success(product);
+                                         }
+                                     }
+                                 }),
+                                 error -> waiting.values().forEach(sinks -> sinks.forEach(sink -> sink.error(error))));
+    }
+
+    private static class Lookup {
+
+        final String id;
+        final MonoSink<Product> sink;
+
+        Lookup(String id, MonoSink<Product> sink) {
+            this.id = id;
+            this.sink = sink;
+        }
+
+    }
+
+}
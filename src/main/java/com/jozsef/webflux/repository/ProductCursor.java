@@ -0,0 +1,80 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.model.Product;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Set;
+
+/**
+ * Opaque keyset position: the sort field, the sort value of the last product returned and its id. The id is length
+ * prefixed and the value comes last, so neither needs escaping.
+ */
+@Value
+public class ProductCursor {
+
+    public static final String ID = "id";
+    public static final String NAME = "name";
+    public static final String PRICE = "price";
+
+    public static final Set<String> SORT_FIELDS = Set.of(ID, NAME, PRICE);
+
+    private static final String SEPARATOR = "|";
+
+    String sort;
+    String id;
+    Object value;
+
+    public static ProductCursor after(String sort, Product product) {
+        Object value = NAME.equals(sort) ? product.getName() : PRICE.equals(sort) ? product.getPrice() : null;
+        return new ProductCursor(sort, product.getId(), value);
+    }
+
+    public String encode() {
+        String encodedValue = value == null ? "0" : "1" + value;
+        String raw = sort + SEPARATOR + id.length() + SEPARATOR + id + encodedValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ProductCursor decode(String token, String expectedSort) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        String[] parts = raw.split("\\|", 3);
+        if (parts.length != 3 || !parts[0].equals(expectedSort)) {
+            throw new IllegalArgumentException("Cursor does not match sort '" + expectedSort + "'");
+        }
+
+        int idLength;
+        try {
+            idLength = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        if (idLength < 0 || idLength >= parts[2].length()) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+
+        return new ProductCursor(parts[0], parts[2].substring(0, idLength), parseValue(parts[0], parts[2].substring(idLength)));
+    }
+
+    private static Object parseValue(String sort, String encodedValue) {
+        if (encodedValue.charAt(0) == '0') {
+            return null;
+        }
+        String value = encodedValue.substring(1);
+        if (PRICE.equals(sort)) {
+            try {
+                return Double.valueOf(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed cursor");
+            }
+        }
+        return value;
+    }
+
+}
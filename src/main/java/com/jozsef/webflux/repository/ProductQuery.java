@@ -0,0 +1,70 @@
+package com.jozsef.webflux.repository;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Filter, sort field and projection of a product listing. Null members do not restrict anything; null
+ * {@code fields} returns whole products.
+ */
+@Value
+@Builder
+public class ProductQuery {
+
+    public static final String VERSION = "version";
+
+    public static final Set<String> FIELDS = Set.of(ProductCursor.ID, ProductCursor.NAME, ProductCursor.PRICE, VERSION);
+
+    String namePrefix;
+    String nameContains;
+    Double minPrice;
+    Double maxPrice;
+    @Builder.Default
+    String sort = ProductCursor.ID;
+    Set<String> fields;
+
+    public static ProductQuery all() {
+        return ProductQuery.builder().build();
+    }
+
+    public boolean isAll() {
+        return equals(all());
+    }
+
+    /**
+     * Returns this query, or throws {@link IllegalArgumentException} for an unknown sort field or projected field,
+     * or a price range that cannot match anything.
+     */
+    public ProductQuery validate() {
+        if (!ProductCursor.SORT_FIELDS.contains(sort)) {
+            throw new IllegalArgumentException("Unsupported sort field '" + sort + "'");
+        }
+        if (fields != null && !FIELDS.containsAll(fields)) {
+            throw new IllegalArgumentException("Fields must be among " + FIELDS);
+        }
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            throw new IllegalArgumentException("minPrice must not be greater than maxPrice");
+        }
+        return this;
+    }
+
+    /**
+     * Comma separated field list as sent by clients, e.g. {@code "id,price"}; null for a missing parameter.
+     */
+    public static Set<String> parseFields(String fields) {
+        if (fields == null) {
+            return null;
+        }
+
+        return Arrays.stream(fields.split(","))
+                     .map(String::trim)
+                     .filter(field -> !field.isEmpty())
+                     .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+}
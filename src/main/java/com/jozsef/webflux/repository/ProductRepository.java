@@ -3,7 +3,13 @@ package com.jozsef.webflux.repository;
 import com.jozsef.webflux.model.Product;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
 
 @Repository
-public interface ProductRepository extends ReactiveMongoRepository<Product, String> {
+public interface ProductRepository extends ReactiveMongoRepository<Product, String>, ProductRepositoryCustom {
+
+    // declared in both parents with differently bounded type variables; resolves to the fragment
+    @Override
+    <S extends Product> Mono<S> insert(S product);
+
 }
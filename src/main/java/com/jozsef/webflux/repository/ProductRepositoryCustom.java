@@ -0,0 +1,79 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductPage;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.model.ProductWriteResult;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+/**
+ * Queries and writes the generated repository cannot express. Every write of the API goes through here, so this is
+ * where product events are published: {@link #insert}, {@link #deleteAll} (replacing the inherited ones),
+ * {@link #bulkUpsert}, {@link #findAndUpdateById} and {@link #findAndRemoveById}. The inherited {@code save} and
+ * {@code delete} methods publish nothing.
+ */
+public interface ProductRepositoryCustom {
+
+    int DEFAULT_PAGE_SIZE = 20;
+    int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Inserts the product; signals {@link org.springframework.dao.DuplicateKeyException} when its id is taken.
+     */
+    <S extends Product> Mono<S> insert(S product);
+
+    /**
+     * Removes every product, published as a single DELETE without an id.
+     */
+    Mono<Void> deleteAll();
+
+    /**
+     * Products matching the query, ordered on {@code (sort, _id)}. Signals {@link IllegalArgumentException} for an
+     * invalid query.
+     */
+    Flux<Product> findMatching(ProductQuery query);
+
+    /**
+     * Keyset page of the products matching the query, ordered on {@code (sort, _id)}, starting after the given
+     * cursor or at the beginning when it is null. Signals {@link IllegalArgumentException} for an invalid query,
+     * a bad size or a malformed cursor.
+     */
+    Mono<ProductPage> findPage(ProductQuery query, String cursor, int size);
+
+    /**
+     * Whole collection in {@code _id} order, read from a single cursor in batches of {@code batchSize}.
+     */
+    Flux<Product> streamAll(int batchSize);
+
+    /**
+     * Writes products in chunks of {@code chunkSize}, each chunk as one unordered bulkWrite: products without an id
+     * are inserted, the others upserted by id. Emits one result per product, in input order; a failed item or chunk
+     * is reported as {@link ProductWriteResult.Status#FAILED} without cancelling the remaining chunks.
+     */
+    Flux<ProductWriteResult> bulkUpsert(Flux<Product> products, int chunkSize, int concurrency);
+
+    /**
+     * Count, min, max and average price and a histogram of price buckets {@code bucketWidth} wide, computed by a
+     * single aggregation in Mongo. Signals {@link IllegalArgumentException} for a width that is not positive.
+     */
+    Mono<ProductStats> priceStats(double bucketWidth);
+
+    /**
+     * Sets the name and price of the product with the given id and increments its version in one findAndModify,
+     * then returns the updated product, or completes empty when there is no such product. Non-null
+     * {@code expectedVersions} the product is no longer at signal {@link OptimisticLockingFailureException}.
+     */
+    Mono<Product> findAndUpdateById(String id, Product changes, Set<Long> expectedVersions);
+
+    /**
+     * Removes the product with the given id in one findAndRemove and returns it, or completes empty when there is
+     * no such product. Non-null {@code expectedVersions} the product is no longer at signal
+     * {@link OptimisticLockingFailureException}.
+     */
+    Mono<Product> findAndRemoveById(String id, Set<Long> expectedVersions);
+
+}
@@ -0,0 +1,386 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductPage;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@Slf4j
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    private static final String VERSION = ProductQuery.VERSION;
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final ProductEventPublisher productEventPublisher;
+
+    public ProductRepositoryCustomImpl(ReactiveMongoOperations mongoOperations,
+                                       ProductEventPublisher productEventPublisher) {
+        this.mongoOperations = mongoOperations;
+        this.productEventPublisher = productEventPublisher;
+    }
+
+    @Override
+    public Flux<Product> findMatching(ProductQuery query) {
+        return Mono.fromCallable(() -> toQuery(filter(query)))
+                   .flatMapMany(criteria -> mongoOperations.find(select(criteria, query), Product.class));
+    }
+
+    @Override
+    public Mono<ProductPage> findPage(ProductQuery query, String cursor, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return Mono.error(new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE));
+        }
+
+        String sort = query.getSort();
+        return Mono.fromCallable(() -> {
+                       List<Criteria> criteria = filter(query);
+                       if (cursor != null) {
+                           criteria.add(after(sort, ProductCursor.decode(cursor, sort)));
+                       }
+                       return toQuery(criteria);
+                   })
+                   .flatMap(criteria -> {
+                       // one extra document tells us whether there is a next page without a second query
+                       Query page = select(criteria, query).limit(size + 1);
+                       return mongoOperations.find(page, Product.class).collectList();
+                   })
+                   .map(products -> toPage(products, size, sort));
+    }
+
+    @Override
+    public Flux<Product> streamAll(int batchSize) {
+        Query query = new Query().with(Sort.by(ProductCursor.ID)).cursorBatchSize(batchSize);
+
+        return mongoOperations.find(query, Product.class)
+                              .limitRate(batchSize);
+    }
+
+    @Override
+    public Flux<ProductWriteResult> bulkUpsert(Flux<Product> products, int chunkSize, int concurrency) {
+        return products.buffer(chunkSize)
+                       .index()
+                       .flatMapSequential(chunk -> writeChunk(chunk.getT2(), chunk.getT1() * chunkSize), concurrency);
+    }
+
+    @Override
+    public Mono<ProductStats> priceStats(double bucketWidth) {
+        if (!(bucketWidth > 0)) {
+            return Mono.error(new IllegalArgumentException("Bucket width must be positive"));
+        }
+
+        // one pass over the collection: both facets share the same input documents
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.facet(Aggregation.group()
+                                             .count().as("count")
+                                             .min(ProductCursor.PRICE).as("minPrice")
+                                             .max(ProductCursor.PRICE).as("maxPrice")
+                                             .avg(ProductCursor.PRICE).as("avgPrice")).as("summary")
+                           .and(Aggregation.match(where(ProductCursor.PRICE).ne(null)),
+                                Aggregation.project()
+                                           .and(ArithmeticOperators.Floor.floorValueOf(
+                                                   ArithmeticOperators.Divide.valueOf(ProductCursor.PRICE).divideBy(bucketWidth)))
+                                           .as("bucket"),
+                                Aggregation.group("bucket").count().as("count"),
+                                Aggregation.sort(Sort.by("_id"))).as("histogram"));
+
+        return mongoOperations.aggregate(aggregation, Product.class, Document.class)
+                              .next()
+                              .map(result -> toStats(result, bucketWidth));
+    }
+
+    @Override
+    public <S extends Product> Mono<S> insert(S product) {
+        return mongoOperations.insert(product)
+                              .doOnNext(inserted -> productEventPublisher.publishLocal(ProductEvent.Type.INSERT, inserted.getId(), inserted));
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return mongoOperations.remove(new Query(), Product.class)
+                              .doOnSuccess(result -> productEventPublisher.publishLocal(ProductEvent.Type.DELETE, null, null))
+                              .then();
+    }
+
+    @Override
+    public Mono<Product> findAndUpdateById(String id, Product changes, Set<Long> expectedVersions) {
+        Update update = new Update().set("name", changes.getName())
+                                    .set("price", changes.getPrice())
+                                    .inc(VERSION, 1);
+
+        return mongoOperations.findAndModify(byIdAndVersion(id, expectedVersions), update,
+                                      FindAndModifyOptions.options().returnNew(true), Product.class)
+                              .doOnNext(updated -> productEventPublisher.publishLocal(ProductEvent.Type.UPDATE, id, updated))
+                              .switchIfEmpty(versionConflict(id, expectedVersions));
+    }
+
+    @Override
+    public Mono<Product> findAndRemoveById(String id, Set<Long> expectedVersions) {
+        return mongoOperations.findAndRemove(byIdAndVersion(id, expectedVersions), Product.class)
+                              .doOnNext(removed -> productEventPublisher.publishLocal(ProductEvent.Type.DELETE, id, null))
+                              .switchIfEmpty(versionConflict(id, expectedVersions));
+    }
+
+    private static Query byIdAndVersion(String id, Set<Long> expectedVersions) {
+        Criteria criteria = where(ProductCursor.ID).is(id);
+        return new Query(expectedVersions == null ? criteria : criteria.and(VERSION).in(expectedVersions));
+    }
+
+    /**
+     * Tells a missing product apart from a stale version; only costs a second query when the conditional write missed.
+     */
+    private Mono<Product> versionConflict(String id, Set<Long> expectedVersions) {
+        if (expectedVersions == null) {
+            return Mono.empty();
+        }
+
+        return mongoOperations.exists(new Query(where(ProductCursor.ID).is(id)), Product.class)
+                              .flatMap(exists -> exists
+                                      ? Mono.error(new OptimisticLockingFailureException(
+                                              "Product " + id + " is at none of the versions " + expectedVersions))
+                                      : Mono.empty());
+    }
+
+    private Flux<ProductWriteResult> writeChunk(List<Product> chunk, long offset) {
+        List<WriteModel<Document>> writes = new ArrayList<>(chunk.size());
+        BitSet inserts = new BitSet(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Product product = chunk.get(i);
+            if (product.getId() == null) {
+                // assign the id up front so it can be reported back in the item result
+                product.setId(new ObjectId().toHexString());
+                product.setVersion(0L);
+                inserts.set(i);
+            }
+            writes.add(toWriteModel(product, inserts.get(i)));
+        }
+
+        return mongoOperations.getCollection(mongoOperations.getCollectionName(Product.class))
+                              .flatMap(collection -> Mono.from(collection.bulkWrite(writes, new BulkWriteOptions().ordered(false))))
+                              .map(result -> toResults(chunk, offset, inserts, result, Map.of()))
+                              .onErrorResume(MongoBulkWriteException.class, e -> Mono.just(toResults(chunk, offset, inserts,
+                                      e.getWriteResult(),
+                                      e.getWriteErrors().stream().collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage)))))
+                              .onErrorResume(e -> Mono.just(failAll(chunk, offset, e)))
+                              .flatMapMany(results -> publishWritten(results).thenMany(Flux.fromIterable(results)));
+    }
+
+    /**
+     * Publishes the written products as Mongo stored them, read back with one query per chunk: an update increments
+     * the version on the server, so the request objects do not carry it.
+     */
+    private Mono<Void> publishWritten(List<ProductWriteResult> results) {
+        Map<String, ProductWriteResult.Status> written = results.stream()
+                                                                .filter(result -> result.getStatus() != ProductWriteResult.Status.FAILED)
+                                                                .collect(Collectors.toMap(ProductWriteResult::getId,
+                                                                        ProductWriteResult::getStatus, (first, second) -> first));
+        if (written.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return mongoOperations.find(new Query(where(ProductCursor.ID).in(written.keySet())), Product.class)
+                              .doOnNext(stored -> productEventPublisher.publishLocal(
+                                      written.get(stored.getId()) == ProductWriteResult.Status.CREATED
+                                              ? ProductEvent.Type.INSERT
+                                              : ProductEvent.Type.UPDATE,
+                                      stored.getId(), stored))
+                              .then()
+                              // the chunk is written either way; its results must not turn into an error
+                              .onErrorResume(e -> {
+                                  log.warn("Could not read back {} written products for their events", written.size(), e);
+                                  return Mono.empty();
+                              });
+    }
+
+    private WriteModel<Document> toWriteModel(Product product, boolean insert) {
+        Document document = new Document();
+        mongoOperations.getConverter().write(product, document);
+
+        if (insert) {
+            return new InsertOneModel<>(document);
+        }
+
+        // an update rather than a replace, so the stored version is incremented instead of taken from the request
+        Bson update = Updates.combine(Updates.set("name", document.get("name")),
+                                      Updates.set("price", document.get("price")),
+                                      Updates.inc(VERSION, 1L));
+        return new UpdateOneModel<>(Filters.eq("_id", document.get("_id")), update, new UpdateOptions().upsert(true));
+    }
+
+    private List<ProductWriteResult> toResults(List<Product> chunk, long offset, BitSet inserts,
+                                                      BulkWriteResult result, Map<Integer, String> errors) {
+        Set<Integer> upserts = result.getUpserts().stream()
+                                     .map(BulkWriteUpsert::getIndex)
+                                     .collect(Collectors.toSet());
+
+        List<ProductWriteResult> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            ProductWriteResult.ProductWriteResultBuilder item = ProductWriteResult.builder()
+                                                                                  .index(offset + i)
+                                                                                  .id(chunk.get(i).getId());
+            if (errors.containsKey(i)) {
+                item.status(ProductWriteResult.Status.FAILED).error(errors.get(i));
+            } else if (inserts.get(i) || upserts.contains(i)) {
+                item.status(ProductWriteResult.Status.CREATED);
+            } else {
+                item.status(ProductWriteResult.Status.UPDATED);
+            }
+            results.add(item.build());
+        }
+        return results;
+    }
+
+    private static List<ProductWriteResult> failAll(List<Product> chunk, long offset, Throwable error) {
+        List<ProductWriteResult> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            results.add(new ProductWriteResult(offset + i, chunk.get(i).getId(), ProductWriteResult.Status.FAILED,
+                    error.getMessage()));
+        }
+        return results;
+    }
+
+    /**
+     * Name prefixes become anchored, escaped regexes so they stay range scans on the name_id index; price bounds
+     * use price_id. A contains filter cannot use an index range and is evaluated per document.
+     */
+    private static List<Criteria> filter(ProductQuery query) {
+        query.validate();
+
+        List<Criteria> criteria = new ArrayList<>();
+        if (query.getNamePrefix() != null) {
+            criteria.add(where(ProductCursor.NAME).regex("^" + escape(query.getNamePrefix())));
+        }
+        if (query.getNameContains() != null) {
+            criteria.add(where(ProductCursor.NAME).regex(escape(query.getNameContains())));
+        }
+        if (query.getMinPrice() != null || query.getMaxPrice() != null) {
+            Criteria price = where(ProductCursor.PRICE);
+            if (query.getMinPrice() != null) {
+                price.gte(query.getMinPrice());
+            }
+            if (query.getMaxPrice() != null) {
+                price.lte(query.getMaxPrice());
+            }
+            criteria.add(price);
+        }
+
+        return criteria;
+    }
+
+    private static Query toQuery(List<Criteria> criteria) {
+        if (criteria.isEmpty()) {
+            return new Query();
+        }
+        return new Query(criteria.size() == 1 ? criteria.get(0) : new Criteria().andOperator(criteria.toArray(new Criteria[0])));
+    }
+
+    private static String escape(String literal) {
+        StringBuilder escaped = new StringBuilder(literal.length());
+        for (char c : literal.toCharArray()) {
+            if (!Character.isLetterOrDigit(c) && c != ' ') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Applies the sort and, when fields are requested, a projection. The sort field is always fetched too, since
+     * the next page cursor is built from it.
+     */
+    private static Query select(Query query, ProductQuery productQuery) {
+        query.with(sortOf(productQuery.getSort()));
+        if (productQuery.getFields() != null) {
+            productQuery.getFields().forEach(field -> query.fields().include(field));
+            query.fields().include(productQuery.getSort());
+        }
+        return query;
+    }
+
+    private static Criteria after(String sort, ProductCursor after) {
+        if (ProductCursor.ID.equals(sort)) {
+            return where(ProductCursor.ID).gt(after.getId());
+        }
+
+        Criteria sameValueLaterId = where(sort).is(after.getValue()).and(ProductCursor.ID).gt(after.getId());
+        Criteria laterValue = after.getValue() == null ? where(sort).ne(null) : where(sort).gt(after.getValue());
+
+        return new Criteria().orOperator(laterValue, sameValueLaterId);
+    }
+
+    private static Sort sortOf(String sort) {
+        return ProductCursor.ID.equals(sort)
+                ? Sort.by(ProductCursor.ID)
+                : Sort.by(sort, ProductCursor.ID);
+    }
+
+    private static ProductStats toStats(Document result, double bucketWidth) {
+        List<Document> summary = result.getList("summary", Document.class);
+        Document totals = summary.isEmpty() ? new Document() : summary.get(0);
+
+        List<ProductStats.PriceBucket> histogram = result.getList("histogram", Document.class).stream()
+                .map(bucket -> new ProductStats.PriceBucket(((Number) bucket.get("_id")).doubleValue() * bucketWidth,
+                                                            ((Number) bucket.get("count")).longValue()))
+                .collect(Collectors.toList());
+
+        return ProductStats.builder()
+                           .count(totals.containsKey("count") ? ((Number) totals.get("count")).longValue() : 0)
+                           .minPrice(toDouble(totals.get("minPrice")))
+                           .maxPrice(toDouble(totals.get("maxPrice")))
+                           .avgPrice(toDouble(totals.get("avgPrice")))
+                           .bucketWidth(bucketWidth)
+                           .histogram(histogram)
+                           .build();
+    }
+
+    private static Double toDouble(Object value) {
+        return value == null ? null : ((Number) value).doubleValue();
+    }
+
+    static ProductPage toPage(List<Product> products, int size, String sort) {
+        if (products.size() <= size) {
+            return new ProductPage(products, null);
+        }
+
+        List<Product> page = products.subList(0, size);
+        return new ProductPage(page, ProductCursor.after(sort, page.get(size - 1)).encode());
+    }
+
+}
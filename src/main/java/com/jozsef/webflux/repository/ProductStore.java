@@ -0,0 +1,753 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductStats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Products held column-wise in primitive arrays, one slot per product: ids as strings, names as codes into a
+ * reference-counted dictionary so equal names are stored once, prices and versions unboxed with {@code NaN} and
+ * {@link Long#MIN_VALUE} standing in for null. Slots are found by id through an open-addressing hash table and
+ * ordered by id, name and price through sorted, chunked slot arrays, so range scans and keyset pages never sort.
+ * A bulk load can {@link #deferIndexes() defer} the ordering and have each index sorted once at the end.
+ * <p>
+ * Readers share a lock and writers take it exclusively; {@link #get(String)} first tries an optimistic read.
+ * Products handed out are copies, ordered and filtered like {@link ProductRepositoryCustomImpl} orders and filters
+ * in Mongo: nulls first, ties broken by id.
+ */
+public class ProductStore {
+
+    private static final int NO_NAME = -1;
+    private static final long NO_VERSION = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private int[] names = new int[INITIAL_CAPACITY];
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private int slots;
+    private int size;
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeSlotCount;
+
+    // linear probing; an entry is slot + 1 so that 0 marks an empty bucket
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    private final Map<String, Integer> nameCodes = new HashMap<>();
+    private String[] nameValues = new String[INITIAL_CAPACITY];
+    private int[] nameRefs = new int[INITIAL_CAPACITY];
+    private int nameCount;
+    private int[] freeNames = new int[INITIAL_CAPACITY];
+    private int freeNameCount;
+
+    private boolean indexed = true;
+
+    private final SlotIndex byId = new SlotIndex((a, b) -> ids[a].compareTo(ids[b]));
+    private final SlotIndex byName = new SlotIndex((a, b) -> {
+        int order = compareNames(nameOf(a), nameOf(b));
+        return order != 0 ? order : ids[a].compareTo(ids[b]);
+    });
+    private final SlotIndex byPrice = new SlotIndex((a, b) -> {
+        int order = comparePrices(prices[a], prices[b]);
+        return order != 0 ? order : ids[a].compareTo(ids[b]);
+    });
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Product get(String id) {
+        // an optimistic read may see arrays mid-update; anything it throws or returns then is discarded by validate()
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Product product = read(id);
+                if (lock.validate(stamp)) {
+                    return product;
+                }
+            } catch (RuntimeException e) {
+                // torn read, retried under the read lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return read(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public List<Product> getAll(Iterable<String> ids) {
+        List<Product> products = new ArrayList<>();
+        long stamp = lock.readLock();
+        try {
+            for (String id : ids) {
+                int slot = find(id);
+                if (slot >= 0) {
+                    products.add(toProduct(slot, null, null));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return products;
+    }
+
+    /**
+     * Stores the product unless the stored one has a higher version; returns whether it was stored.
+     */
+    public boolean put(Product product) {
+        String id = product.getId();
+        if (id == null) {
+            throw new IllegalArgumentException("Only products with an id can be stored");
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(id);
+            if (slot < 0) {
+                insert(product);
+                return true;
+            }
+            if (versions[slot] != NO_VERSION && product.getVersion() != null && versions[slot] > product.getVersion()) {
+                return false;
+            }
+            update(slot, product);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(String id) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(id);
+            if (slot < 0) {
+                return false;
+            }
+            if (indexed) {
+                byId.remove(slot);
+                byName.remove(slot);
+                byPrice.remove(slot);
+            }
+            unhash(slot);
+            releaseName(names[slot]);
+            ids[slot] = null;
+            freeSlots = push(freeSlots, freeSlotCount++, slot);
+            size--;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            Arrays.fill(ids, 0, slots, null);
+            Arrays.fill(table, 0);
+            Arrays.fill(nameValues, 0, nameCount, null);
+            nameCodes.clear();
+            byId.clear();
+            byName.clear();
+            byPrice.clear();
+            slots = size = freeSlotCount = nameCount = freeNameCount = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Stops keeping the id, name and price order until {@link #buildIndexes()}: a bulk load is cheaper sorted once
+     * than inserted in order product by product. Lookups by id keep working; listings and stats fail meanwhile.
+     */
+    public void deferIndexes() {
+        long stamp = lock.writeLock();
+        try {
+            indexed = false;
+            byId.clear();
+            byName.clear();
+            byPrice.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sorts each index once over the products stored since {@link #deferIndexes()}; does nothing if not deferred.
+     */
+    public void buildIndexes() {
+        long stamp = lock.writeLock();
+        try {
+            if (indexed) {
+                return;
+            }
+            int[] live = new int[size];
+            int count = 0;
+            for (int slot = 0; slot < slots; slot++) {
+                if (ids[slot] != null) {
+                    live[count++] = slot;
+                }
+            }
+            byId.build(live, count);
+            byName.build(live, count);
+            byPrice.build(live, count);
+            indexed = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Up to {@code limit} products matching the query in its sort order, starting after {@code after} when it is
+     * not null. The query must be valid. Price bounds on a price sort, and a name prefix on a name sort, narrow the
+     * scan to the matching range of the index; any other filter is tested product by product.
+     */
+    public List<Product> find(ProductQuery query, ProductCursor after, int limit) {
+        String sort = query.getSort();
+        List<Product> products = new ArrayList<>(Math.min(limit, 256));
+
+        long stamp = lock.readLock();
+        try {
+            checkIndexed();
+            SlotIndex index = ProductCursor.PRICE.equals(sort) ? byPrice : ProductCursor.NAME.equals(sort) ? byName : byId;
+            // every bound is monotonic over the index, and so is their conjunction
+            IntUnaryOperator from = after == null ? slot -> 1 : slot -> compareToCursor(slot, sort, after);
+            Double maxPrice = ProductCursor.PRICE.equals(sort) ? query.getMaxPrice() : null;
+
+            if (ProductCursor.PRICE.equals(sort) && query.getMinPrice() != null) {
+                double minPrice = query.getMinPrice();
+                from = both(from, slot -> comparePrices(prices[slot], minPrice) < 0 ? 0 : 1);
+            }
+            if (ProductCursor.NAME.equals(sort) && query.getNamePrefix() != null) {
+                String prefix = query.getNamePrefix();
+                from = both(from, slot -> compareNames(nameOf(slot), prefix) < 0 ? 0 : 1);
+            }
+
+            for (PrimitiveIterator.OfInt ordered = index.from(from); ordered.hasNext() && products.size() < limit; ) {
+                int slot = ordered.nextInt();
+                if (maxPrice != null && comparePrices(prices[slot], maxPrice) > 0) {
+                    break;
+                }
+                if (ProductCursor.NAME.equals(sort) && query.getNamePrefix() != null
+                        && (nameOf(slot) == null || !nameOf(slot).startsWith(query.getNamePrefix()))) {
+                    break;
+                }
+                if (matches(slot, query)) {
+                    products.add(toProduct(slot, query.getFields(), sort));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return products;
+    }
+
+    /**
+     * The same figures {@link ProductRepositoryCustomImpl#priceStats(double)} aggregates, from one pass over the
+     * price index.
+     */
+    public ProductStats priceStats(double bucketWidth) {
+        if (!(bucketWidth > 0)) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+
+        long stamp = lock.readLock();
+        try {
+            checkIndexed();
+            List<ProductStats.PriceBucket> histogram = new ArrayList<>();
+            long priced = 0;
+            double sum = 0;
+            Double minPrice = null;
+            Double maxPrice = null;
+            for (PrimitiveIterator.OfInt ordered = byPrice.from(slot -> 1); ordered.hasNext(); ) {
+                double price = prices[ordered.nextInt()];
+                if (Double.isNaN(price)) {
+                    continue;
+                }
+                if (minPrice == null) {
+                    minPrice = price;
+                }
+                maxPrice = price;
+                priced++;
+                sum += price;
+
+                double lowerBound = Math.floor(price / bucketWidth) * bucketWidth;
+                ProductStats.PriceBucket last = histogram.isEmpty() ? null : histogram.get(histogram.size() - 1);
+                if (last != null && last.getLowerBound() == lowerBound) {
+                    last.setCount(last.getCount() + 1);
+                } else {
+                    histogram.add(new ProductStats.PriceBucket(lowerBound, 1));
+                }
+            }
+
+            return ProductStats.builder()
+                               .count(size)
+                               .minPrice(minPrice)
+                               .maxPrice(maxPrice)
+                               .avgPrice(priced == 0 ? null : sum / priced)
+                               .bucketWidth(bucketWidth)
+                               .histogram(histogram)
+                               .build();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void checkIndexed() {
+        if (!indexed) {
+            throw new IllegalStateException("Indexes are deferred until the bulk load ends");
+        }
+    }
+
+    private static IntUnaryOperator both(IntUnaryOperator first, IntUnaryOperator second) {
+        return slot -> first.applyAsInt(slot) > 0 && second.applyAsInt(slot) > 0 ? 1 : 0;
+    }
+
+    private Product read(String id) {
+        int slot = find(id);
+        return slot < 0 ? null : toProduct(slot, null, null);
+    }
+
+    private void insert(Product product) {
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            if (slots == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                names = Arrays.copyOf(names, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                versions = Arrays.copyOf(versions, capacity);
+            }
+            slot = slots++;
+        }
+
+        ids[slot] = product.getId();
+        names[slot] = acquireName(product.getName());
+        prices[slot] = product.getPrice() == null ? Double.NaN : product.getPrice();
+        versions[slot] = product.getVersion() == null ? NO_VERSION : product.getVersion();
+        size++;
+
+        hash(slot);
+        if (indexed) {
+            byId.insert(slot);
+            byName.insert(slot);
+            byPrice.insert(slot);
+        }
+    }
+
+    private void update(int slot, Product product) {
+        double price = product.getPrice() == null ? Double.NaN : product.getPrice();
+        if (comparePrices(prices[slot], price) != 0) {
+            if (indexed) {
+                byPrice.remove(slot);
+            }
+            prices[slot] = price;
+            if (indexed) {
+                byPrice.insert(slot);
+            }
+        }
+        if (!Objects.equals(nameOf(slot), product.getName())) {
+            if (indexed) {
+                byName.remove(slot);
+            }
+            releaseName(names[slot]);
+            names[slot] = acquireName(product.getName());
+            if (indexed) {
+                byName.insert(slot);
+            }
+        }
+        versions[slot] = product.getVersion() == null ? NO_VERSION : product.getVersion();
+    }
+
+    private boolean matches(int slot, ProductQuery query) {
+        String name = nameOf(slot);
+        if (query.getNamePrefix() != null && (name == null || !name.startsWith(query.getNamePrefix()))) {
+            return false;
+        }
+        if (query.getNameContains() != null && (name == null || !name.contains(query.getNameContains()))) {
+            return false;
+        }
+        if (query.getMinPrice() != null || query.getMaxPrice() != null) {
+            double price = prices[slot];
+            return !Double.isNaN(price)
+                    && (query.getMinPrice() == null || price >= query.getMinPrice())
+                    && (query.getMaxPrice() == null || price <= query.getMaxPrice());
+        }
+        return true;
+    }
+
+    /**
+     * Like a Mongo projection: the id is always included, and so is the sort field the cursor is built from.
+     */
+    private Product toProduct(int slot, Set<String> fields, String sort) {
+        Product product = new Product();
+        product.setId(ids[slot]);
+        if (includes(fields, sort, ProductCursor.NAME)) {
+            product.setName(nameOf(slot));
+        }
+        if (includes(fields, sort, ProductCursor.PRICE) && !Double.isNaN(prices[slot])) {
+            product.setPrice(prices[slot]);
+        }
+        if (includes(fields, sort, ProductQuery.VERSION) && versions[slot] != NO_VERSION) {
+            product.setVersion(versions[slot]);
+        }
+        return product;
+    }
+
+    private static boolean includes(Set<String> fields, String sort, String field) {
+        return fields == null || fields.contains(field) || field.equals(sort);
+    }
+
+    private int compareToCursor(int slot, String sort, ProductCursor after) {
+        int order = 0;
+        if (ProductCursor.NAME.equals(sort)) {
+            order = compareNames(nameOf(slot), (String) after.getValue());
+        } else if (ProductCursor.PRICE.equals(sort)) {
+            order = comparePrices(prices[slot], after.getValue() == null ? Double.NaN : (Double) after.getValue());
+        }
+        return order != 0 ? order : ids[slot].compareTo(after.getId());
+    }
+
+    private static int compareNames(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static int comparePrices(double a, double b) {
+        if (Double.isNaN(a) || Double.isNaN(b)) {
+            return Double.isNaN(a) ? (Double.isNaN(b) ? 0 : -1) : 1;
+        }
+        return a < b ? -1 : a > b ? 1 : 0;
+    }
+
+    private String nameOf(int slot) {
+        return names[slot] == NO_NAME ? null : nameValues[names[slot]];
+    }
+
+    private int acquireName(String name) {
+        if (name == null) {
+            return NO_NAME;
+        }
+
+        Integer code = nameCodes.get(name);
+        if (code == null) {
+            if (freeNameCount > 0) {
+                code = freeNames[--freeNameCount];
+            } else {
+                if (nameCount == nameValues.length) {
+                    nameValues = Arrays.copyOf(nameValues, nameCount * 2);
+                    nameRefs = Arrays.copyOf(nameRefs, nameCount * 2);
+                }
+                code = nameCount++;
+            }
+            nameValues[code] = name;
+            nameRefs[code] = 0;
+            nameCodes.put(name, code);
+        }
+        nameRefs[code]++;
+        return code;
+    }
+
+    private void releaseName(int code) {
+        if (code != NO_NAME && --nameRefs[code] == 0) {
+            nameCodes.remove(nameValues[code]);
+            nameValues[code] = null;
+            freeNames = push(freeNames, freeNameCount++, code);
+        }
+    }
+
+    private int find(String id) {
+        int mask = table.length - 1;
+        for (int bucket = home(id, mask); table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int slot = table[bucket] - 1;
+            if (ids[slot].equals(id)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void hash(int slot) {
+        int mask = table.length - 1;
+        int bucket = home(ids[slot], mask);
+        while (table[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        table[bucket] = slot + 1;
+    }
+
+    /**
+     * Backward-shift deletion: later entries of the probe run move into the hole, so lookups need no tombstones.
+     */
+    private void unhash(int slot) {
+        int mask = table.length - 1;
+        int hole = home(ids[slot], mask);
+        while (table[hole] != slot + 1) {
+            hole = (hole + 1) & mask;
+        }
+
+        for (int bucket = (hole + 1) & mask; table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int home = home(ids[table[bucket] - 1], mask);
+            boolean stays = hole < bucket ? home > hole && home <= bucket : home > hole || home <= bucket;
+            if (!stays) {
+                table[hole] = table[bucket];
+                hole = bucket;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int slot = 0; slot < slots; slot++) {
+            if (ids[slot] != null) {
+                hash(slot);
+            }
+        }
+    }
+
+    private static int home(String id, int mask) {
+        int h = id.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int[] push(int[] stack, int position, int value) {
+        int[] grown = position == stack.length ? Arrays.copyOf(stack, stack.length * 2) : stack;
+        grown[position] = value;
+        return grown;
+    }
+
+    @FunctionalInterface
+    private interface SlotComparator {
+
+        int compare(int a, int b);
+
+    }
+
+    /**
+     * Slots kept sorted by a comparator over their columns, in chunks of at most {@link #CHUNK_SIZE}: inserts and
+     * removals binary-search the chunks by their last slot and shift within one chunk, splitting a full chunk and
+     * dropping an empty one, so a write costs a few hundred moves however large the store. A slot must be removed
+     * before the columns it is ordered by change.
+     */
+    private static class SlotIndex {
+
+        private static final int CHUNK_SIZE = 512;
+        // chunks built by a bulk sort keep room for later inserts before they split
+        private static final int BUILD_FILL = CHUNK_SIZE * 3 / 4;
+
+        private final SlotComparator comparator;
+        private int[][] chunks = new int[INITIAL_CAPACITY][];
+        private int[] chunkSizes = new int[INITIAL_CAPACITY];
+        private int chunkCount;
+
+        SlotIndex(SlotComparator comparator) {
+            this.comparator = comparator;
+        }
+
+        void insert(int slot) {
+            IntUnaryOperator after = entry -> comparator.compare(entry, slot) <= 0 ? 0 : 1;
+            if (chunkCount == 0) {
+                int[] entries = new int[CHUNK_SIZE];
+                entries[0] = slot;
+                addChunk(0, entries, 1);
+                return;
+            }
+
+            int chunk = Math.min(firstChunk(after), chunkCount - 1);
+            if (chunkSizes[chunk] == CHUNK_SIZE) {
+                split(chunk);
+                if (after.applyAsInt(last(chunk)) <= 0) {
+                    chunk++;
+                }
+            }
+            int position = firstIn(chunk, after);
+            int[] entries = chunks[chunk];
+            System.arraycopy(entries, position, entries, position + 1, chunkSizes[chunk] - position);
+            entries[position] = slot;
+            chunkSizes[chunk]++;
+        }
+
+        void remove(int slot) {
+            IntUnaryOperator notBefore = entry -> comparator.compare(entry, slot) < 0 ? 0 : 1;
+            int chunk = firstChunk(notBefore);
+            int position = firstIn(chunk, notBefore);
+            int[] entries = chunks[chunk];
+            System.arraycopy(entries, position + 1, entries, position, chunkSizes[chunk] - position - 1);
+            if (--chunkSizes[chunk] == 0) {
+                removeChunk(chunk);
+            }
+        }
+
+        void clear() {
+            Arrays.fill(chunks, 0, chunkCount, null);
+            chunkCount = 0;
+        }
+
+        /**
+         * Replaces the index with the given slots, sorted once.
+         */
+        void build(int[] slots, int count) {
+            int[] sorted = sort(slots, count);
+            clear();
+            for (int from = 0; from < count; from += BUILD_FILL) {
+                int length = Math.min(BUILD_FILL, count - from);
+                int[] entries = new int[CHUNK_SIZE];
+                System.arraycopy(sorted, from, entries, 0, length);
+                addChunk(chunkCount, entries, length);
+            }
+        }
+
+        /**
+         * Slots in order, starting at the first one the test maps to a positive value; the test must be monotonic
+         * over the index.
+         */
+        PrimitiveIterator.OfInt from(IntUnaryOperator test) {
+            int chunk = firstChunk(test);
+            int position = chunk == chunkCount ? 0 : firstIn(chunk, test);
+
+            return new PrimitiveIterator.OfInt() {
+
+                private int nextChunk = chunk;
+                private int nextPosition = position;
+
+                @Override
+                public boolean hasNext() {
+                    return nextChunk < chunkCount;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int slot = chunks[nextChunk][nextPosition++];
+                    if (nextPosition == chunkSizes[nextChunk]) {
+                        nextChunk++;
+                        nextPosition = 0;
+                    }
+                    return slot;
+                }
+
+            };
+        }
+
+        /**
+         * First chunk whose last slot passes the test, or {@code chunkCount} when none does.
+         */
+        private int firstChunk(IntUnaryOperator test) {
+            int low = 0;
+            int high = chunkCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (test.applyAsInt(last(middle)) > 0) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+
+        private int firstIn(int chunk, IntUnaryOperator test) {
+            int[] entries = chunks[chunk];
+            int low = 0;
+            int high = chunkSizes[chunk];
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (test.applyAsInt(entries[middle]) > 0) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+
+        private int last(int chunk) {
+            return chunks[chunk][chunkSizes[chunk] - 1];
+        }
+
+        private void split(int chunk) {
+            int half = CHUNK_SIZE / 2;
+            int[] upper = new int[CHUNK_SIZE];
+            System.arraycopy(chunks[chunk], half, upper, 0, CHUNK_SIZE - half);
+            chunkSizes[chunk] = half;
+            addChunk(chunk + 1, upper, CHUNK_SIZE - half);
+        }
+
+        private void addChunk(int chunk, int[] entries, int size) {
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                chunkSizes = Arrays.copyOf(chunkSizes, chunkCount * 2);
+            }
+            System.arraycopy(chunks, chunk, chunks, chunk + 1, chunkCount - chunk);
+            System.arraycopy(chunkSizes, chunk, chunkSizes, chunk + 1, chunkCount - chunk);
+            chunks[chunk] = entries;
+            chunkSizes[chunk] = size;
+            chunkCount++;
+        }
+
+        private void removeChunk(int chunk) {
+            System.arraycopy(chunks, chunk + 1, chunks, chunk, chunkCount - chunk - 1);
+            System.arraycopy(chunkSizes, chunk + 1, chunkSizes, chunk, chunkCount - chunk - 1);
+            chunks[--chunkCount] = null;
+        }
+
+        /**
+         * Bottom-up merge sort, as there is no primitive sort taking a comparator.
+         */
+        private int[] sort(int[] slots, int count) {
+            int[] from = Arrays.copyOf(slots, count);
+            int[] to = new int[count];
+            for (int width = 1; width < count; width *= 2) {
+                for (int low = 0; low < count; low += 2 * width) {
+                    int middle = Math.min(low + width, count);
+                    int high = Math.min(low + 2 * width, count);
+                    int left = low;
+                    int right = middle;
+                    for (int i = low; i < high; i++) {
+                        to[i] = right == high || left < middle && comparator.compare(from[left], from[right]) <= 0
+                                ? from[left++]
+                                : from[right++];
+                    }
+                }
+                int[] swap = from;
+                from = to;
+                to = swap;
+            }
+            return from;
+        }
+
+    }
+
+}
@@ -0,0 +1,382 @@
+package com.jozsef.webflux.search;
+
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over product names for typeahead search. Loaded from the repository once the application
+ * is ready and then kept current from {@link ProductEventPublisher}, which sees every write whichever route, bulk
+ * endpoint or, with the change stream source, other instance made it.
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex {
+
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int MAX_LIMIT = 100;
+
+    private static final int EXACT_MATCH = 2;
+    private static final int PREFIX_MATCH = 1;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ProductRepository productRepository;
+    private final ProductEventPublisher productEventPublisher;
+
+    private final Map<String, Indexed> products = new ConcurrentHashMap<>();
+    // sorted by token, so all tokens starting with a prefix are one contiguous sub map, and each posting list in
+    // rank order, so the best matches of a token are always at its head
+    private final NavigableMap<String, NavigableSet<Indexed>> postings = new ConcurrentSkipListMap<>();
+
+    // guarded by this: a delete seen while loading must not be undone by the product the load read before it
+    private final Set<String> deletedWhileLoading = new HashSet<>();
+    private boolean clearedWhileLoading;
+    private boolean loading;
+
+    private Disposable subscription;
+
+    public ProductSearchIndex(ProductRepository productRepository, ProductEventPublisher productEventPublisher) {
+        this.productRepository = productRepository;
+        this.productEventPublisher = productEventPublisher;
+    }
+
+    @PostConstruct
+    public void start() {
+        // subscribed before loading, so no write made while findAll runs is missed
+        subscription = productEventPublisher.events().subscribe(this::apply);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        synchronized (this) {
+            loading = true;
+        }
+        productRepository.findAll()
+                         .filter(this::indexLoaded)
+                         .count()
+                         .doFinally(signal -> loaded())
+                         .subscribe(count -> log.info("Indexed {} products for search", count),
+                                 e -> log.warn("Could not load the product search index", e));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Up to {@code limit} products whose names contain a token starting with every term of the query, best first:
+     * whole-word matches outrank prefix matches, then shorter names win.
+     */
+    public List<Product> search(String query, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        return terms.size() == 1 ? searchTerm(terms.get(0), limit) : searchTerms(terms, limit);
+    }
+
+    public void index(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+
+        synchronized (this) {
+            Indexed previous = products.get(product.getId());
+            if (previous != null && isNewer(previous.product, product)) {
+                return;
+            }
+            if (previous != null) {
+                unlink(previous);
+            }
+            Indexed indexed = new Indexed(product);
+            products.put(product.getId(), indexed);
+            indexed.tokens.forEach(token -> postings.computeIfAbsent(token, key -> new ConcurrentSkipListSet<>())
+                                                    .add(indexed));
+        }
+    }
+
+    public synchronized void remove(String id) {
+        if (loading) {
+            deletedWhileLoading.add(id);
+        }
+        Indexed previous = products.remove(id);
+        if (previous != null) {
+            unlink(previous);
+        }
+    }
+
+    public synchronized void clear() {
+        clearedWhileLoading = loading;
+        products.clear();
+        postings.clear();
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    /**
+     * The common typeahead case: the whole-word list first, then the prefix lists merged in rank order, stopping as
+     * soon as {@code limit} products are found instead of scoring every match.
+     */
+    private List<Product> searchTerm(String term, int limit) {
+        List<Product> results = new ArrayList<>(limit);
+        Set<Indexed> seen = new HashSet<>();
+
+        NavigableSet<Indexed> exact = postings.get(term);
+        if (exact != null) {
+            for (Indexed indexed : exact) {
+                if (collect(indexed, seen, results) == limit) {
+                    return results;
+                }
+            }
+        }
+
+        Iterator<Indexed> prefixed = new RankOrder(postings.subMap(term, false, term + Character.MAX_VALUE, true).values());
+        while (prefixed.hasNext()) {
+            if (collect(prefixed.next(), seen, results) == limit) {
+                return results;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Several terms: candidates come from the longest, usually most selective, term in rank order and are scored
+     * against the others from their stored tokens. A bounded heap keeps the best {@code limit}, and the scan stops
+     * once they all have the best score the query can reach, since any later candidate ranks below them.
+     */
+    private List<Product> searchTerms(List<String> terms, int limit) {
+        String driver = terms.stream().max(Comparator.comparingInt(String::length)).orElseThrow();
+
+        Comparator<Scored> ranking = Comparator.comparingInt((Scored scored) -> scored.score).reversed()
+                                               .thenComparing(scored -> scored.indexed);
+        // worst kept result on top, so it is the one evicted
+        PriorityQueue<Scored> best = new PriorityQueue<>(limit + 1, ranking.reversed());
+        int maxScore = terms.stream().mapToInt(term -> postings.containsKey(term) ? EXACT_MATCH : PREFIX_MATCH).sum();
+
+        Collection<NavigableSet<Indexed>> lists = postings.subMap(driver, true, driver + Character.MAX_VALUE, true).values();
+        // a product can only be met twice when the driver term prefixes several of its tokens
+        Set<Indexed> seen = lists.size() > 1 ? new HashSet<>() : null;
+        Iterator<Indexed> candidates = new RankOrder(lists);
+        while (candidates.hasNext() && !(best.size() == limit && best.peek().score == maxScore)) {
+            Indexed indexed = candidates.next();
+            int score = seen == null || seen.add(indexed) ? score(indexed, terms) : 0;
+            if (score > 0) {
+                best.add(new Scored(indexed, score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+
+        List<Scored> ranked = new ArrayList<>(best);
+        ranked.sort(ranking);
+        List<Product> results = new ArrayList<>(ranked.size());
+        ranked.forEach(scored -> results.add(scored.indexed.product));
+        return results;
+    }
+
+    private static int collect(Indexed indexed, Set<Indexed> seen, List<Product> results) {
+        if (seen.add(indexed)) {
+            results.add(indexed.product);
+        }
+        return results.size();
+    }
+
+    /**
+     * Sum over the terms of the best match among the product's tokens, or 0 when some term matches none.
+     */
+    private static int score(Indexed indexed, List<String> terms) {
+        int total = 0;
+        for (String term : terms) {
+            int best = 0;
+            for (String token : indexed.tokens) {
+                if (token.equals(term)) {
+                    best = EXACT_MATCH;
+                    break;
+                }
+                if (token.startsWith(term)) {
+                    best = PREFIX_MATCH;
+                }
+            }
+            if (best == 0) {
+                return 0;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    private synchronized boolean indexLoaded(Product product) {
+        if (clearedWhileLoading || deletedWhileLoading.contains(product.getId())) {
+            return false;
+        }
+        index(product);
+        return true;
+    }
+
+    private synchronized void loaded() {
+        loading = false;
+        deletedWhileLoading.clear();
+        clearedWhileLoading = false;
+    }
+
+    private void apply(ProductEvent event) {
+        switch (event.getEventType()) {
+            case INSERT:
+            case UPDATE:
+                index(event.getProduct());
+                break;
+            case DELETE:
+                if (event.getProductId() == null) {
+                    clear();
+                } else {
+                    remove(event.getProductId());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void unlink(Indexed indexed) {
+        for (String token : indexed.tokens) {
+            NavigableSet<Indexed> list = postings.get(token);
+            if (list != null) {
+                list.remove(indexed);
+                if (list.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the startup load from overwriting a product that an event has already brought up to date.
+     */
+    private static boolean isNewer(Product indexed, Product candidate) {
+        return indexed.getVersion() != null && candidate.getVersion() != null && indexed.getVersion() > candidate.getVersion();
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return Collections.emptyList();
+        }
+
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                                      .toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(normalized)) {
+            if (!token.isEmpty() && !tokens.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A product as it sits on its posting lists, ranked shorter names first, then by id. Identity equality on
+     * purpose: a renamed product is a new entry.
+     */
+    private static final class Indexed implements Comparable<Indexed> {
+
+        private final Product product;
+        private final List<String> tokens;
+        private final int nameLength;
+
+        private Indexed(Product product) {
+            this.product = product;
+            this.tokens = tokenize(product.getName());
+            this.nameLength = product.getName() == null ? 0 : product.getName().length();
+        }
+
+        @Override
+        public int compareTo(Indexed other) {
+            int byLength = Integer.compare(nameLength, other.nameLength);
+            return byLength != 0 ? byLength : product.getId().compareTo(other.product.getId());
+        }
+
+    }
+
+    private static final class Scored {
+
+        private final Indexed indexed;
+        private final int score;
+
+        private Scored(Indexed indexed, int score) {
+            this.indexed = indexed;
+            this.score = score;
+        }
+
+    }
+
+    /**
+     * Merges posting lists, each already in rank order, into one rank ordered iteration.
+     */
+    private static final class RankOrder implements Iterator<Indexed> {
+
+        private final PriorityQueue<Map.Entry<Indexed, Iterator<Indexed>>> heads =
+                new PriorityQueue<>(Map.Entry.comparingByKey());
+
+        private RankOrder(Collection<NavigableSet<Indexed>> lists) {
+            lists.forEach(list -> advance(list.iterator()));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Indexed next() {
+            Map.Entry<Indexed, Iterator<Indexed>> head = heads.remove();
+            advance(head.getValue());
+            return head.getKey();
+        }
+
+        private void advance(Iterator<Indexed> list) {
+            if (list.hasNext()) {
+                heads.add(Map.entry(list.next(), list));
+            }
+        }
+
+    }
+
+}
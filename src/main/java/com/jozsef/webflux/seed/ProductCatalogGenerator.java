@@ -0,0 +1,154 @@
+package com.jozsef.webflux.seed;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic catalog: product {@code i} depends only on the seed settings and {@code i}, so chunks can
+ * be generated in parallel and in any order, and the same settings always give the same products. Names combine a
+ * size, a flavour and a drink; ids are valid ObjectIds made of a tag derived from the random seed and the index.
+ */
+public class ProductCatalogGenerator {
+
+    private static final String[] SIZES = {"", "Small", "Big", "Double", "Iced", "Tall"};
+    private static final String[] FLAVOURS = {"", "Vanilla", "Caramel", "Hazelnut", "Oat", "Honey", "Mint", "Cinnamon"};
+    private static final String[] DRINKS = {"Latte", "Decaf", "Espresso", "Cortado", "Flat White", "Cappuccino",
+            "Mocha", "Americano", "Macchiato", "Green Tea", "Jasmine Tea", "Earl Grey", "Chai Latte", "Matcha Latte",
+            "Hot Chocolate"};
+
+    private final ProductProperties.Seed seed;
+    private final List<String> names;
+    private final double[] cumulativeNameWeights;
+    private final int idTag;
+
+    public ProductCatalogGenerator(ProductProperties.Seed seed) {
+        if (seed.getCount() < 0) {
+            throw new IllegalArgumentException("Seed count must not be negative");
+        }
+        if (!(seed.getMinPrice() >= 0) || !(seed.getMaxPrice() >= seed.getMinPrice())) {
+            throw new IllegalArgumentException("Seed prices need 0 <= min-price <= max-price");
+        }
+        if (seed.getChunkSize() < 1 || seed.getConcurrency() < 1) {
+            throw new IllegalArgumentException("Seed chunk size and concurrency must be positive");
+        }
+        this.seed = seed;
+        this.names = names(seed.getRandomSeed());
+        this.cumulativeNameWeights = cumulativeWeights(names.size(), seed.getNameDistribution(), seed.getNameSkew());
+        this.idTag = (int) mix(seed.getRandomSeed());
+    }
+
+    /**
+     * All {@code count} products in index order, in chunks of {@code chunkSize}; up to {@code concurrency} chunks
+     * are generated at once on the parallel scheduler.
+     */
+    public Flux<List<Product>> chunks() {
+        long count = seed.getCount();
+        int chunkSize = seed.getChunkSize();
+        long chunks = (count + chunkSize - 1) / chunkSize;
+
+        return Flux.range(0, Math.toIntExact(chunks))
+                   .flatMapSequential(chunk -> Mono.fromCallable(() -> chunk(chunk * (long) chunkSize,
+                                                          Math.min(count, (chunk + 1) * (long) chunkSize)))
+                                                   .subscribeOn(Schedulers.parallel()),
+                           seed.getConcurrency());
+    }
+
+    /**
+     * The product at {@code index}, without a version: that is assigned when it is written.
+     */
+    public Product product(long index) {
+        SplittableRandom random = new SplittableRandom(mix(seed.getRandomSeed() ^ mix(index)));
+        return new Product(id(index), name(random), price(random), null);
+    }
+
+    public String id(long index) {
+        char[] id = new char[24];
+        hex(idTag, id, 0, 8);
+        hex(index, id, 8, 16);
+        return new String(id);
+    }
+
+    private List<Product> chunk(long from, long to) {
+        List<Product> products = new ArrayList<>((int) (to - from));
+        for (long i = from; i < to; i++) {
+            products.add(product(i));
+        }
+        return products;
+    }
+
+    private String name(SplittableRandom random) {
+        int rank = Arrays.binarySearch(cumulativeNameWeights, random.nextDouble());
+        return names.get(rank >= 0 ? rank : Math.min(-rank - 1, names.size() - 1));
+    }
+
+    private double price(SplittableRandom random) {
+        double price;
+        if (seed.getPriceDistribution() == ProductProperties.Seed.PriceDistribution.UNIFORM) {
+            price = seed.getMinPrice() + random.nextDouble() * (seed.getMaxPrice() - seed.getMinPrice());
+        } else {
+            price = seed.getMedianPrice() * Math.exp(seed.getPriceSpread() * gaussian(random));
+        }
+        price = Math.max(seed.getMinPrice(), Math.min(seed.getMaxPrice(), price));
+        return Math.round(price * 100) / 100.0;
+    }
+
+    // Box-Muller; SplittableRandom has no nextGaussian before Java 17
+    private static double gaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    /**
+     * Every size, flavour and drink combination, in an order shuffled by the random seed, so the popular names of a
+     * Zipf distribution differ between seeds.
+     */
+    private static List<String> names(long randomSeed) {
+        List<String> names = new ArrayList<>(SIZES.length * FLAVOURS.length * DRINKS.length);
+        for (String size : SIZES) {
+            for (String flavour : FLAVOURS) {
+                for (String drink : DRINKS) {
+                    names.add((size + " " + flavour + " " + drink).trim().replaceAll(" +", " "));
+                }
+            }
+        }
+        Collections.shuffle(names, new Random(randomSeed));
+        return names;
+    }
+
+    private static double[] cumulativeWeights(int size, ProductProperties.Seed.NameDistribution distribution, double skew) {
+        double[] weights = new double[size];
+        double total = 0;
+        for (int rank = 0; rank < size; rank++) {
+            total += distribution == ProductProperties.Seed.NameDistribution.ZIPF ? 1 / Math.pow(rank + 1, skew) : 1;
+            weights[rank] = total;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            weights[rank] /= total;
+        }
+        return weights;
+    }
+
+    private static void hex(long value, char[] into, int offset, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            into[i] = Character.forDigit((int) (value & 0xf), 16);
+            value >>>= 4;
+        }
+    }
+
+    // SplitMix64 finalizer, so neighbouring indexes get unrelated random streams
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.jozsef.webflux.seed;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.jozsef.webflux.repository.ProductRepository;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Seeds the catalog with the products of a {@link ProductCatalogGenerator}. Each chunk is first looked up by id and
+ * only its missing products are written, with one bulk write, so seeding is idempotent: a complete data set costs
+ * one {@code $in} query per chunk and no writes, and an interrupted run picks up where it stopped.
+ */
+@Component
+@ConditionalOnProperty(prefix = "products.seed", name = "enabled", matchIfMissing = true)
+@Slf4j
+public class ProductCatalogSeeder implements CommandLineRunner {
+
+    private final ProductRepository productRepository;
+    private final ProductProperties.Seed seed;
+
+    public ProductCatalogSeeder(ProductRepository productRepository, ProductProperties productProperties) {
+        this.productRepository = productRepository;
+        this.seed = productProperties.getSeed();
+    }
+
+    @Override
+    public void run(String... args) {
+        // in the background, as the three products inserted here before were: startup does not wait for millions
+        seed(seed).subscribe(report -> log.info("Seeded the catalog: {}", report),
+                e -> log.warn("Seeding the catalog failed", e));
+    }
+
+    public Mono<Report> seed(ProductProperties.Seed seed) {
+        return Mono.defer(() -> {
+            ProductCatalogGenerator generator = new ProductCatalogGenerator(seed);
+            long start = System.nanoTime();
+            AtomicLong existing = new AtomicLong();
+            AtomicLong inserted = new AtomicLong();
+            AtomicLong failed = new AtomicLong();
+
+            return generator.chunks()
+                            .flatMap(chunk -> seedChunk(chunk, existing, inserted, failed), seed.getConcurrency())
+                            .then(Mono.fromCallable(() -> new Report(seed.getCount(), existing.get(), inserted.get(),
+                                    failed.get(), Duration.ofNanos(System.nanoTime() - start))));
+        });
+    }
+
+    private Mono<Void> seedChunk(List<Product> chunk, AtomicLong existing, AtomicLong inserted, AtomicLong failed) {
+        List<String> ids = chunk.stream().map(Product::getId).collect(Collectors.toList());
+
+        return productRepository.findAllById(ids)
+                                .map(Product::getId)
+                                .collect(Collectors.toSet())
+                                .flatMapMany(present -> {
+                                    existing.addAndGet(present.size());
+                                    List<Product> missing = missing(chunk, present);
+                                    return missing.isEmpty()
+                                            ? Flux.empty()
+                                            : productRepository.bulkUpsert(Flux.fromIterable(missing), missing.size(), 1);
+                                })
+                                .doOnNext(result -> (result.getStatus() == ProductWriteResult.Status.FAILED ? failed : inserted)
+                                        .incrementAndGet())
+                                .then();
+    }
+
+    private static List<Product> missing(List<Product> chunk, Set<String> present) {
+        return chunk.stream()
+                    .filter(product -> !present.contains(product.getId()))
+                    .collect(Collectors.toList());
+    }
+
+    @Value
+    public static class Report {
+
+        long requested;
+        long existing;
+        long inserted;
+        long failed;
+        Duration elapsed;
+
+        /**
+         * Products written per second, over the whole run including the existence checks.
+         */
+        public double getInsertsPerSecond() {
+            return elapsed.isZero() ? 0 : inserted * 1e9 / elapsed.toNanos();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d products requested, %,d already present, %,d inserted, %,d failed in %d ms (%,.0f inserts/s)",
+                    requested, existing, inserted, failed, elapsed.toMillis(), getInsertsPerSecond());
+        }
+
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.jozsef.webflux.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductLookupResult;
+import com.jozsef.webflux.model.ProductPage;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.jozsef.webflux.repository.ProductQuery;
+import com.jozsef.webflux.snapshot.ProductCatalogSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read-through cache in front of {@link ProductServiceImpl#getProductById(String)}.
+ * Concurrent misses for the same id share one in-flight lookup. Entries are invalidated from the product events
+ * rather than from this class's write methods, so writes through the functional routes, the seeder and, with the
+ * change stream source, other instances are seen as well.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "products.cache", name = "enabled", matchIfMissing = true)
+public class CachingProductService implements ProductService {
+
+    static final String CACHE_NAME = "products";
+
+    private final ProductService delegate;
+    private final ProductEventPublisher productEventPublisher;
+    private final AsyncCache<String, Product> cache;
+    private final int maxMgetIds;
+
+    private Disposable subscription;
+
+    public CachingProductService(ProductServiceImpl delegate, ProductEventPublisher productEventPublisher,
+                                 ProductProperties productProperties, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.productEventPublisher = productEventPublisher;
+        this.maxMgetIds = productProperties.getMget().getMaxIds();
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(productProperties.getCache().getMaximumSize())
+                             .expireAfterWrite(productProperties.getCache().getTtl())
+                             .recordStats()
+                             .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), CACHE_NAME);
+    }
+
+    @PostConstruct
+    public void start() {
+        subscription = productEventPublisher.events().subscribe(this::apply);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    @Override
+    public Flux<Product> getAllProducts() {
+        return delegate.getAllProducts();
+    }
+
+    @Override
+    public Flux<Product> getProducts(ProductQuery query) {
+        return delegate.getProducts(query);
+    }
+
+    @Override
+    public Mono<ProductPage> getProductPage(ProductQuery query, String cursor, int size) {
+        return delegate.getProductPage(query, cursor, size);
+    }
+
+    @Override
+    public Flux<Product> exportProducts() {
+        return delegate.exportProducts();
+    }
+
+    @Override
+    public Flux<Product> searchProducts(String query, int limit) {
+        return delegate.searchProducts(query, limit);
+    }
+
+    @Override
+    public Mono<ProductStats> getPriceStats(Double bucketWidth) {
+        return delegate.getPriceStats(bucketWidth);
+    }
+
+    @Override
+    public Mono<ProductCatalogSnapshot.Generation> getCatalogSnapshot() {
+        return delegate.getCatalogSnapshot();
+    }
+
+    @Override
+    public Mono<Product> getProductById(String id) {
+        // a missing product completes the shared future with null, which Caffeine does not keep;
+        // copy() so that one cancelled subscriber cannot cancel the lookup the others are waiting on
+        return Mono.defer(() -> Mono.fromFuture(cache.get(id, (key, executor) -> delegate.getProductById(key).toFuture())
+                                                    .copy()));
+    }
+
+    @Override
+    public Flux<ProductLookupResult> getProductsById(List<String> ids) {
+        if (ids.size() > maxMgetIds) {
+            return delegate.getProductsById(ids);
+        }
+
+        // only lookups that already completed are used; the misses are not cached from here, so a multi-get
+        // racing with a write cannot put the old product back
+        return Flux.defer(() -> {
+            Map<String, Product> found = new HashMap<>();
+            List<String> misses = new ArrayList<>();
+            for (String id : ids) {
+                Product product = id == null ? null : cached(id);
+                if (product != null) {
+                    found.put(id, product);
+                } else {
+                    misses.add(id);
+                }
+            }
+            if (misses.isEmpty()) {
+                return Flux.fromIterable(ProductLookupResult.inOrder(ids, found));
+            }
+            return delegate.getProductsById(misses)
+                           .filter(result -> result.getProduct() != null)
+                           .collectMap(ProductLookupResult::getId, ProductLookupResult::getProduct, () -> found)
+                           .flatMapIterable(all -> ProductLookupResult.inOrder(ids, all));
+        });
+    }
+
+    @Override
+    public Mono<Product> saveProduct(Product product) {
+        return delegate.saveProduct(product);
+    }
+
+    @Override
+    public Flux<ProductWriteResult> saveProducts(Flux<Product> products) {
+        return delegate.saveProducts(products);
+    }
+
+    @Override
+    public Mono<Product> updateProduct(String id, Product product, Set<Long> expectedVersions) {
+        return delegate.updateProduct(id, product, expectedVersions);
+    }
+
+    @Override
+    public Mono<Product> deleteProduct(String id, Set<Long> expectedVersions) {
+        return delegate.deleteProduct(id, expectedVersions);
+    }
+
+    @Override
+    public Mono<Void> deleteAllProducts() {
+        return delegate.deleteAllProducts();
+    }
+
+    @Override
+    public Flux<ProductEvent> getProductEvents(Long lastEventId) {
+        return delegate.getProductEvents(lastEventId);
+    }
+
+    private Product cached(String id) {
+        CompletableFuture<Product> lookup = cache.getIfPresent(id);
+        return lookup != null && lookup.isDone() && !lookup.isCompletedExceptionally() ? lookup.join() : null;
+    }
+
+    private void apply(ProductEvent event) {
+        // an in-flight lookup is dropped too, so one that read the product before the write is not kept
+        if (event.getEventType() == ProductEvent.Type.RESYNC || event.getProductId() == null) {
+            cache.synchronous().invalidateAll();
+        } else {
+            cache.synchronous().invalidate(event.getProductId());
+        }
+    }
+
+}
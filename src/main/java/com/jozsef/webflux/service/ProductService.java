@@ -1,21 +1,49 @@
 package com.jozsef.webflux.service;
 
 import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductLookupResult;
+import com.jozsef.webflux.model.ProductPage;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.jozsef.webflux.repository.ProductQuery;
+import com.jozsef.webflux.snapshot.ProductCatalogSnapshot;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Set;
+
 public interface ProductService {
 
     Flux<Product> getAllProducts();
 
+    Flux<Product> getProducts(ProductQuery query);
+
+    Mono<ProductPage> getProductPage(ProductQuery query, String cursor, int size);
+
+    Flux<Product> exportProducts();
+
     Mono<Product> getProductById(String id);
 
+    Flux<ProductLookupResult> getProductsById(List<String> ids);
+
+    Flux<Product> searchProducts(String query, int limit);
+
+    Mono<ProductStats> getPriceStats(Double bucketWidth);
+
+    Mono<ProductCatalogSnapshot.Generation> getCatalogSnapshot();
+
     Mono<Product> saveProduct(Product product);
 
-    Mono<Product> updateProduct(String id, Product product);
+    Flux<ProductWriteResult> saveProducts(Flux<Product> products);
 
-    Mono<Void> deleteProduct(String id);
+    Mono<Product> updateProduct(String id, Product product, Set<Long> expectedVersions);
+
+    Mono<Product> deleteProduct(String id, Set<Long> expectedVersions);
 
     Mono<Void> deleteAllProducts();
 
+    Flux<ProductEvent> getProductEvents(Long lastEventId);
+
 }
@@ -1,18 +1,48 @@
 package com.jozsef.webflux.service;
 
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
 import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductLookupResult;
+import com.jozsef.webflux.model.ProductPage;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.jozsef.webflux.repository.ProductBatchLoader;
+import com.jozsef.webflux.repository.ProductQuery;
 import com.jozsef.webflux.repository.ProductRepository;
+import com.jozsef.webflux.search.ProductSearchIndex;
+import com.jozsef.webflux.snapshot.ProductCatalogSnapshot;
+import com.jozsef.webflux.stats.ProductPriceSummary;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Set;
+
 @Service
 public class ProductServiceImpl implements ProductService {
 
     private final ProductRepository productRepository;
+    private final ProductProperties productProperties;
+    private final ProductEventPublisher productEventPublisher;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductPriceSummary productPriceSummary;
+    private final ProductCatalogSnapshot productCatalogSnapshot;
+    private final ProductBatchLoader productBatchLoader;
 
-    public ProductServiceImpl(ProductRepository productRepository) {
+    public ProductServiceImpl(ProductRepository productRepository, ProductProperties productProperties,
+                              ProductEventPublisher productEventPublisher, ProductSearchIndex productSearchIndex,
+                              ProductPriceSummary productPriceSummary, ProductCatalogSnapshot productCatalogSnapshot,
+                              ProductBatchLoader productBatchLoader) {
         this.productRepository = productRepository;
+        this.productProperties = productProperties;
+        this.productEventPublisher = productEventPublisher;
+        this.productSearchIndex = productSearchIndex;
+        this.productPriceSummary = productPriceSummary;
+        this.productCatalogSnapshot = productCatalogSnapshot;
+        this.productBatchLoader = productBatchLoader;
     }
 
     @Override
@@ -20,9 +50,48 @@ public class ProductServiceImpl implements ProductService {
         return productRepository.findAll();
     }
 
+    @Override
+    public Flux<Product> getProducts(ProductQuery query) {
+        return productRepository.findMatching(query);
+    }
+
+    @Override
+    public Mono<ProductPage> getProductPage(ProductQuery query, String cursor, int size) {
+        return productRepository.findPage(query, cursor, size);
+    }
+
+    @Override
+    public Flux<Product> exportProducts() {
+        return productRepository.streamAll(productProperties.getExport().getBatchSize());
+    }
+
     @Override
     public Mono<Product> getProductById(String id) {
-        return productRepository.findById(id);
+        return productBatchLoader.findById(id);
+    }
+
+    @Override
+    public Flux<ProductLookupResult> getProductsById(List<String> ids) {
+        return Mono.fromCallable(() -> ProductLookupResult.distinctIds(ids, productProperties.getMget().getMaxIds()))
+                   .flatMap(distinct -> productRepository.findAllById(distinct).collectMap(Product::getId))
+                   .flatMapIterable(found -> ProductLookupResult.inOrder(ids, found));
+    }
+
+    @Override
+    public Flux<Product> searchProducts(String query, int limit) {
+        return Flux.defer(() -> Flux.fromIterable(productSearchIndex.search(query, limit)));
+    }
+
+    @Override
+    public Mono<ProductStats> getPriceStats(Double bucketWidth) {
+        double width = bucketWidth == null ? productProperties.getStats().getBucketWidth() : bucketWidth;
+        return productPriceSummary.stats(bucketWidth)
+                                  .switchIfEmpty(Mono.defer(() -> productRepository.priceStats(width)));
+    }
+
+    @Override
+    public Mono<ProductCatalogSnapshot.Generation> getCatalogSnapshot() {
+        return productCatalogSnapshot.current();
     }
 
     @Override
@@ -31,20 +100,19 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
-    public Mono<Product> updateProduct(String id, Product product) {
-        return productRepository.findById(id)
-                .flatMap(existingProduct -> {
-                    existingProduct.setName(product.getName());
-                    existingProduct.setPrice(product.getPrice());
+    public Flux<ProductWriteResult> saveProducts(Flux<Product> products) {
+        ProductProperties.Bulk bulk = productProperties.getBulk();
+        return productRepository.bulkUpsert(products, bulk.getChunkSize(), bulk.getConcurrency());
+    }
 
-                    return productRepository.save(product);
-                });
+    @Override
+    public Mono<Product> updateProduct(String id, Product product, Set<Long> expectedVersions) {
+        return productRepository.findAndUpdateById(id, product, expectedVersions);
     }
 
     @Override
-    public Mono<Void> deleteProduct(String id) {
-        return productRepository.findById(id)
-                .flatMap(productRepository::delete);
+    public Mono<Product> deleteProduct(String id, Set<Long> expectedVersions) {
+        return productRepository.findAndRemoveById(id, expectedVersions);
     }
 
     @Override
@@ -52,4 +120,9 @@ public class ProductServiceImpl implements ProductService {
         return productRepository.deleteAll();
     }
 
+    @Override
+    public Flux<ProductEvent> getProductEvents(Long lastEventId) {
+        return productEventPublisher.events(lastEventId);
+    }
+
 }
@@ -0,0 +1,332 @@
+package com.jozsef.webflux.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductRepository;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The whole catalog as a JSON array on disk, next to a gzipped copy, for clients that fetch everything: they are
+ * served the file, zero-copy where the connection allows it, instead of a collection scan and serialization per
+ * request. Rewritten every {@code products.snapshot.interval}, but only if a product changed since the last one.
+ * <p>
+ * Every generation gets new files and the previous generation is kept until the next one replaces it, so a
+ * response that started from a generation can always finish reading it. Entity tags come from a digest of the
+ * content, so they agree across restarts and instances behind shared caches.
+ */
+@Component
+@Slf4j
+public class ProductCatalogSnapshot {
+
+    private static final String FILE_PREFIX = "products-";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] OPEN = {'['};
+    private static final byte[] SEPARATOR = {','};
+    private static final byte[] CLOSE = {']'};
+
+    private final ProductRepository productRepository;
+    private final ProductEventPublisher productEventPublisher;
+    private final ObjectWriter productWriter;
+    private final ProductProperties.Snapshot properties;
+    private final int batchSize;
+
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private long lastGeneration;
+    private volatile Generation current;
+    private Generation previous;
+
+    private Disposable changes;
+    private Disposable schedule;
+
+    public ProductCatalogSnapshot(ProductRepository productRepository, ProductEventPublisher productEventPublisher,
+                                  ObjectMapper objectMapper, ProductProperties productProperties) {
+        this.productRepository = productRepository;
+        this.productEventPublisher = productEventPublisher;
+        this.productWriter = objectMapper.writerFor(Product.class);
+        this.properties = productProperties.getSnapshot();
+        this.batchSize = productProperties.getExport().getBatchSize();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (properties.isEnabled()) {
+            changes = productEventPublisher.events().subscribe(event -> dirty.set(true));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void schedule() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        schedule = Flux.interval(Duration.ZERO, properties.getInterval())
+                       .onBackpressureDrop()
+                       .concatMap(tick -> refresh().onErrorResume(e -> {
+                           log.warn("Could not write the catalog snapshot", e);
+                           return Mono.empty();
+                       }), 1)
+                       .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (changes != null) {
+            changes.dispose();
+        }
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+
+    /**
+     * The latest generation, or empty until the first one is written.
+     */
+    public Mono<Generation> current() {
+        return Mono.justOrEmpty(current);
+    }
+
+    /**
+     * Writes a new generation if products changed since the last one; completes empty otherwise.
+     */
+    public Mono<Generation> refresh() {
+        return Mono.defer(() -> dirty.getAndSet(false) || current == null ? generate() : Mono.empty());
+    }
+
+    private Mono<Generation> generate() {
+        return Mono.fromCallable(this::open)
+                   .subscribeOn(Schedulers.boundedElastic())
+                   .flatMap(files -> productRepository.streamAll(batchSize)
+                                                      .publishOn(Schedulers.boundedElastic(), batchSize)
+                                                      .<Void>handle((product, sink) -> {
+                                                          try {
+                                                              files.write(productWriter.writeValueAsBytes(product));
+                                                          } catch (IOException e) {
+                                                              sink.error(e);
+                                                          }
+                                                      })
+                                                      .then(Mono.fromCallable(files::finish))
+                                                      .doOnError(e -> {
+                                                          // changes would otherwise wait for the next write to be picked up
+                                                          dirty.set(true);
+                                                          files.delete();
+                                                      })
+                                                      .doOnCancel(files::delete))
+                   .doOnNext(this::publish);
+    }
+
+    private synchronized SnapshotFiles open() throws IOException {
+        Path directory = properties.getDirectory();
+        Files.createDirectories(directory);
+        if (lastGeneration == 0) {
+            deleteLeftovers(directory);
+        }
+
+        long generation = ++lastGeneration;
+        return new SnapshotFiles(generation, directory.resolve(FILE_PREFIX + generation + ".json"),
+                directory.resolve(FILE_PREFIX + generation + ".json.gz"));
+    }
+
+    private synchronized void publish(Generation generation) {
+        Generation stale = previous;
+        previous = current;
+        current = generation;
+        if (stale != null) {
+            delete(stale.getFile());
+            delete(stale.getGzipFile());
+        }
+        log.info("Wrote catalog snapshot {} of {} products, {} bytes, {} gzipped", generation.getNumber(),
+                generation.getCount(), generation.getSize(), generation.getGzipSize());
+    }
+
+    private static void deleteLeftovers(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*.json*")) {
+            files.forEach(ProductCatalogSnapshot::delete);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete {}", file, e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} header value admits gzip.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(parameter.substring(2)) == 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (!refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Value
+    public static class Generation {
+
+        long number;
+        Path file;
+        Path gzipFile;
+        long count;
+        long size;
+        long gzipSize;
+
+        /**
+         * SHA-256 of the plain file, URL-safe Base64.
+         */
+        String digest;
+
+        /**
+         * How long clients may cache it: at most this long until the next generation can be written.
+         */
+        Duration maxAge;
+
+        /**
+         * Whole seconds, as Last-Modified carries no more.
+         */
+        Instant writtenAt;
+
+        /**
+         * Entity tag of the plain or the gzipped file; they are different representations.
+         */
+        public String eTag(boolean gzip) {
+            return "\"" + digest + (gzip ? "-gzip" : "") + "\"";
+        }
+
+    }
+
+    /**
+     * Writes the plain and the gzipped file in one pass, each product serialized once.
+     */
+    private class SnapshotFiles implements Closeable {
+
+        private final long generation;
+        private final Path file;
+        private final Path gzipFile;
+        private final OutputStream out;
+        private final OutputStream gzipOut;
+        private final MessageDigest digest = newDigest();
+        private long count;
+        private boolean closed;
+
+        SnapshotFiles(long generation, Path file, Path gzipFile) throws IOException {
+            this.generation = generation;
+            this.file = file;
+            this.gzipFile = gzipFile;
+            this.out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+            // buffered in front as well, the deflater is slow on many small writes
+            this.gzipOut = new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(gzipFile), BUFFER_SIZE),
+                    BUFFER_SIZE);
+        }
+
+        void write(byte[] json) throws IOException {
+            byte[] prefix = count++ == 0 ? OPEN : SEPARATOR;
+            out.write(prefix);
+            out.write(json);
+            digest.update(prefix);
+            digest.update(json);
+            gzipOut.write(prefix);
+            gzipOut.write(json);
+        }
+
+        Generation finish() throws IOException {
+            if (count == 0) {
+                out.write(OPEN);
+                digest.update(OPEN);
+                gzipOut.write(OPEN);
+            }
+            out.write(CLOSE);
+            digest.update(CLOSE);
+            gzipOut.write(CLOSE);
+            close();
+            return new Generation(generation, file, gzipFile, count, Files.size(file), Files.size(gzipFile),
+                    Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()), properties.getInterval(),
+                    Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        }
+
+        void delete() {
+            try {
+                close();
+            } catch (IOException e) {
+                log.debug("Could not close snapshot files", e);
+            }
+            ProductCatalogSnapshot.delete(file);
+            ProductCatalogSnapshot.delete(gzipFile);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (OutputStream plain = out; OutputStream gzip = gzipOut) {
+                plain.flush();
+                gzip.flush();
+            }
+        }
+
+    }
+
+}
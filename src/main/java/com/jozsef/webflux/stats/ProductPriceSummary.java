@@ -0,0 +1,230 @@
+package com.jozsef.webflux.stats;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Running price statistics for the default bucket width, so dashboards do not aggregate the whole collection on
+ * every refresh. Loaded once the application is ready and then updated from {@link ProductEventPublisher}; the
+ * last price of every product is kept so updates and deletes can take the old price back out. Until the load has
+ * completed callers aggregate in Mongo instead.
+ */
+@Component
+@Slf4j
+public class ProductPriceSummary {
+
+    private final ProductRepository productRepository;
+    private final ProductEventPublisher productEventPublisher;
+    private final ProductProperties.Stats properties;
+
+    private final Map<String, Double> prices = new HashMap<>();
+    // price -> number of products at that price, for min and max under removals
+    private final NavigableMap<Double, Integer> priceCounts = new TreeMap<>();
+    // floor(price / bucketWidth) -> number of products in the bucket
+    private final NavigableMap<Long, Long> buckets = new TreeMap<>();
+    private long pricedCount;
+    private double priceSum;
+
+    // guarded by this: a delete seen while loading must not be undone by the product the load read before it
+    private final Set<String> deletedWhileLoading = new HashSet<>();
+    private boolean clearedWhileLoading;
+    private boolean loading;
+    private volatile boolean loaded;
+
+    // rebuilt lazily after a change, so repeated reads between writes cost nothing
+    private volatile ProductStats snapshot;
+
+    private Disposable subscription;
+
+    public ProductPriceSummary(ProductRepository productRepository, ProductEventPublisher productEventPublisher,
+                               ProductProperties productProperties) {
+        this.productRepository = productRepository;
+        this.productEventPublisher = productEventPublisher;
+        this.properties = productProperties.getStats();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (properties.isInMemory()) {
+            subscription = productEventPublisher.events().subscribe(this::apply);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!properties.isInMemory()) {
+            return;
+        }
+
+        synchronized (this) {
+            loading = true;
+        }
+        productRepository.findAll()
+                         .filter(this::putLoaded)
+                         .count()
+                         .doFinally(signal -> finishLoading())
+                         .subscribe(count -> {
+                                     loaded = true;
+                                     log.info("Loaded price summary of {} products", count);
+                                 },
+                                 e -> log.warn("Could not load the product price summary, stats stay on Mongo", e));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * The running summary, or empty when it is disabled, not loaded (yet) or a different bucket width is asked for,
+     * in which case the caller has to aggregate.
+     */
+    public Mono<ProductStats> stats(Double bucketWidth) {
+        if (!properties.isInMemory() || !loaded || (bucketWidth != null && bucketWidth != properties.getBucketWidth())) {
+            return Mono.empty();
+        }
+        return Mono.fromSupplier(this::snapshot);
+    }
+
+    public synchronized void put(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+
+        String id = product.getId();
+        if (prices.containsKey(id)) {
+            subtract(prices.get(id));
+        }
+        prices.put(id, product.getPrice());
+        add(product.getPrice());
+        snapshot = null;
+    }
+
+    public synchronized void remove(String id) {
+        if (loading) {
+            deletedWhileLoading.add(id);
+        }
+        if (prices.containsKey(id)) {
+            subtract(prices.remove(id));
+            snapshot = null;
+        }
+    }
+
+    public synchronized void clear() {
+        clearedWhileLoading = loading;
+        prices.clear();
+        priceCounts.clear();
+        buckets.clear();
+        pricedCount = 0;
+        priceSum = 0;
+        snapshot = null;
+    }
+
+    /**
+     * Adds a product the load read, unless it was deleted since or an event already put a state at least as new.
+     */
+    private synchronized boolean putLoaded(Product product) {
+        if (clearedWhileLoading || deletedWhileLoading.contains(product.getId()) || prices.containsKey(product.getId())) {
+            return false;
+        }
+        put(product);
+        return true;
+    }
+
+    private synchronized void finishLoading() {
+        loading = false;
+        deletedWhileLoading.clear();
+        clearedWhileLoading = false;
+    }
+
+    private ProductStats snapshot() {
+        ProductStats current = snapshot;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (snapshot == null) {
+                List<ProductStats.PriceBucket> histogram = new ArrayList<>(buckets.size());
+                buckets.forEach((bucket, count) ->
+                        histogram.add(new ProductStats.PriceBucket(bucket * properties.getBucketWidth(), count)));
+
+                snapshot = ProductStats.builder()
+                                       .count(prices.size())
+                                       .minPrice(priceCounts.isEmpty() ? null : priceCounts.firstKey())
+                                       .maxPrice(priceCounts.isEmpty() ? null : priceCounts.lastKey())
+                                       .avgPrice(pricedCount == 0 ? null : priceSum / pricedCount)
+                                       .bucketWidth(properties.getBucketWidth())
+                                       .histogram(List.copyOf(histogram))
+                                       .build();
+            }
+            return snapshot;
+        }
+    }
+
+    private void apply(ProductEvent event) {
+        switch (event.getEventType()) {
+            case INSERT:
+            case UPDATE:
+                put(event.getProduct());
+                break;
+            case DELETE:
+                if (event.getProductId() == null) {
+                    clear();
+                } else {
+                    remove(event.getProductId());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void add(Double price) {
+        if (price == null) {
+            return;
+        }
+        pricedCount++;
+        priceSum += price;
+        priceCounts.merge(price, 1, Integer::sum);
+        buckets.merge(bucketOf(price), 1L, Long::sum);
+    }
+
+    private void subtract(Double price) {
+        if (price == null) {
+            return;
+        }
+        pricedCount--;
+        priceSum -= price;
+        priceCounts.computeIfPresent(price, (key, count) -> count == 1 ? null : count - 1);
+        buckets.computeIfPresent(bucketOf(price), (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    private long bucketOf(double price) {
+        return (long) Math.floor(price / properties.getBucketWidth());
+    }
+
+}
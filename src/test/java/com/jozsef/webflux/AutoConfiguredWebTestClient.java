@@ -1,8 +1,8 @@
 package com.jozsef.webflux;
 
 import com.jozsef.webflux.api.controller.ProductController;
+import com.jozsef.webflux.event.ProductEventPublisher;
 import com.jozsef.webflux.model.Product;
-import com.jozsef.webflux.model.ProductEvent;
 import com.jozsef.webflux.repository.ProductRepository;
 import com.jozsef.webflux.service.ProductService;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,14 +11,12 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.http.MediaType;
-import org.springframework.test.web.reactive.server.FluxExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
-import reactor.test.StepVerifier;
 
 import java.util.List;
 
+import static com.jozsef.webflux.ProductEventsTestSupport.verifyProductEvents;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -37,6 +35,9 @@ public class AutoConfiguredWebTestClient {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductEventPublisher productEventPublisher;
+
     @BeforeEach
     void setUp() {
         testClient = testClient.mutate().baseUrl("/products").build();
@@ -156,21 +157,7 @@ public class AutoConfiguredWebTestClient {
 
     @Test
     void testProductEvents() {
-        ProductEvent expectedEvent = ProductEvent.builder().eventId(0L).eventType("Product Event").build();
-
-        FluxExchangeResult<ProductEvent> result = testClient.get()
-                                                            .uri("/events")
-                                                            .accept(MediaType.TEXT_EVENT_STREAM)
-                                                            .exchange()
-                                                            .expectStatus().isOk()
-                                                            .returnResult(ProductEvent.class);
-
-        StepVerifier.create(result.getResponseBody())
-                    .expectNext(expectedEvent)
-                    .expectNextCount(2)
-                    .consumeNextWith(productEvent -> assertEquals(Long.valueOf(3), productEvent.getEventId()))
-                    .thenCancel()
-                    .verify();
+        verifyProductEvents(testClient, productEventPublisher);
     }
 
 }
@@ -1,7 +1,7 @@
 package com.jozsef.webflux;
 
+import com.jozsef.webflux.event.ProductEventPublisher;
 import com.jozsef.webflux.model.Product;
-import com.jozsef.webflux.model.ProductEvent;
 import com.jozsef.webflux.repository.ProductRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -9,14 +9,12 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.server.LocalServerPort;
-import org.springframework.http.MediaType;
-import org.springframework.test.web.reactive.server.FluxExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
-import reactor.test.StepVerifier;
 
 import java.util.List;
 
+import static com.jozsef.webflux.ProductEventsTestSupport.verifyProductEvents;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -30,6 +28,9 @@ public class BindToServerTest {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductEventPublisher productEventPublisher;
+
     @LocalServerPort
     private int port;
 
@@ -154,21 +155,7 @@ public class BindToServerTest {
 
     @Test
     void testProductEvents() {
-        ProductEvent expectedEvent = ProductEvent.builder().eventId(0L).eventType("Product Event").build();
-
-        FluxExchangeResult<ProductEvent> result = testClient.get()
-                                                            .uri("/events")
-                                                            .accept(MediaType.TEXT_EVENT_STREAM)
-                                                            .exchange()
-                                                            .expectStatus().isOk()
-                                                            .returnResult(ProductEvent.class);
-
-        StepVerifier.create(result.getResponseBody())
-                    .expectNext(expectedEvent)
-                    .expectNextCount(2)
-                    .consumeNextWith(productEvent -> assertEquals(Long.valueOf(3), productEvent.getEventId()))
-                    .thenCancel()
-                    .verify();
+        verifyProductEvents(testClient, productEventPublisher);
     }
 
 }
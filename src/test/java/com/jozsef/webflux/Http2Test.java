@@ -0,0 +1,169 @@
+package com.jozsef.webflux;
+
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.metrics.HttpConnectionMetrics;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import reactor.core.Disposable;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.jozsef.webflux.ProductEventsTestSupport.keepPublishing;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * HTTP/2 over cleartext. The JDK client is used because it reports the protocol a response came with; it reaches
+ * h2c by upgrading its first request, and the prior-knowledge case is checked with a raw connection preface.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class Http2Test {
+
+    private Product product;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductEventPublisher productEventPublisher;
+
+    @Autowired
+    private HttpConnectionMetrics httpConnectionMetrics;
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeEach
+    void setUp() {
+        product = productRepository.findAll().blockFirst();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/products", "/functional/products"})
+    void testGetProductOverH2c(String basePath) throws Exception {
+        HttpResponse<String> response = send(client(HttpClient.Version.HTTP_2), basePath + "/" + product.getId());
+
+        assertEquals(HttpClient.Version.HTTP_2, response.version());
+        assertEquals(200, response.statusCode());
+        assertThat(response.body()).contains(product.getId());
+    }
+
+    @Test
+    void testHttp11ClientsAreStillServed() throws Exception {
+        HttpResponse<String> response = send(client(HttpClient.Version.HTTP_1_1), "/functional/products/" + product.getId());
+
+        assertEquals(HttpClient.Version.HTTP_1_1, response.version());
+        assertEquals(200, response.statusCode());
+    }
+
+    @Test
+    void testPriorKnowledgeConnectionPreface() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(10_000);
+            OutputStream out = socket.getOutputStream();
+            out.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            // an empty SETTINGS frame: length 0, type 4, no flags, stream 0
+            out.write(new byte[]{0, 0, 0, 4, 0, 0, 0, 0, 0});
+            out.flush();
+
+            byte[] frameHeader = new byte[9];
+            new DataInputStream(socket.getInputStream()).readFully(frameHeader);
+            assertEquals(4, frameHeader[3], "the server's first frame should be its SETTINGS");
+        }
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneConnection() throws Exception {
+        HttpClient client = client(HttpClient.Version.HTTP_2);
+        long openedBefore = httpConnectionMetrics.opened();
+        // upgrades the connection, which the concurrent requests then share
+        send(client, "/products/" + product.getId());
+
+        List<HttpResponse<String>> responses = IntStream.range(0, 20)
+                                                        .mapToObj(i -> client.sendAsync(request("/products/" + product.getId()),
+                                                                HttpResponse.BodyHandlers.ofString()))
+                                                        .collect(Collectors.toList())
+                                                        .stream()
+                                                        .map(CompletableFuture::join)
+                                                        .collect(Collectors.toList());
+
+        assertThat(responses).allSatisfy(response -> {
+            assertEquals(HttpClient.Version.HTTP_2, response.version());
+            assertEquals(200, response.statusCode());
+        });
+        assertEquals(1, httpConnectionMetrics.opened() - openedBefore);
+    }
+
+    @Test
+    void testEventStreamsShareOneConnection() throws Exception {
+        HttpClient client = client(HttpClient.Version.HTTP_2);
+        long openedBefore = httpConnectionMetrics.opened();
+        send(client, "/products/" + product.getId());
+        Disposable changes = keepPublishing(productEventPublisher, product);
+
+        try {
+            List<CompletableFuture<Optional<String>>> firstEvents =
+                    IntStream.range(0, 10)
+                             .mapToObj(i -> client.sendAsync(HttpRequest.newBuilder(uri(i % 2 == 0 ? "/products/events" : "/functional/products/events"))
+                                                                        .header("Accept", "text/event-stream")
+                                                                        .build(),
+                                                     HttpResponse.BodyHandlers.ofLines())
+                                                  .thenApply(response -> {
+                                                      assertEquals(HttpClient.Version.HTTP_2, response.version());
+                                                      try (Stream<String> lines = response.body()) {
+                                                          return lines.filter(line -> line.startsWith("data:")).findFirst();
+                                                      }
+                                                  }))
+                             .collect(Collectors.toList());
+
+            for (CompletableFuture<Optional<String>> firstEvent : firstEvents) {
+                assertThat(firstEvent.get(30, TimeUnit.SECONDS)).hasValueSatisfying(data -> assertThat(data).contains(product.getId()));
+            }
+            assertEquals(1, httpConnectionMetrics.opened() - openedBefore);
+        } finally {
+            changes.dispose();
+        }
+    }
+
+    private HttpClient client(HttpClient.Version version) {
+        return HttpClient.newBuilder()
+                         .version(version)
+                         .build();
+    }
+
+    private HttpResponse<String> send(HttpClient client, String path) throws IOException, InterruptedException {
+        return client.send(request(path), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.newBuilder(uri(path)).timeout(Duration.ofSeconds(30)).build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.jozsef.webflux;
+
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.KeyStore;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * HTTP/2 over TLS: h2 for clients that offer it by ALPN, HTTP/1.1 for the rest, on the same port.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.ssl.key-store=classpath:test-keystore.p12",
+        "server.ssl.key-store-type=PKCS12",
+        "server.ssl.key-store-password=changeit",
+        "server.ssl.key-alias=products"
+})
+public class Http2TlsTest {
+
+    private Product product;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeEach
+    void setUp() {
+        product = productRepository.findAll().blockFirst();
+    }
+
+    @ParameterizedTest
+    @EnumSource(HttpClient.Version.class)
+    void testGetProductNegotiatesTheClientsVersion(HttpClient.Version version) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                                      .version(version)
+                                      .sslContext(trustingTestKeyStore())
+                                      .build();
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("https://localhost:" + port + "/products/" + product.getId()))
+                                                                .timeout(Duration.ofSeconds(30))
+                                                                .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(version, response.version());
+        assertEquals(200, response.statusCode());
+        assertThat(response.body()).contains(product.getId());
+    }
+
+    private static SSLContext trustingTestKeyStore() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Http2TlsTest.class.getResourceAsStream("/test-keystore.p12")) {
+            keyStore.load(in, "changeit".toCharArray());
+        }
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, trustManagers.getTrustManagers(), null);
+        return sslContext;
+    }
+
+}
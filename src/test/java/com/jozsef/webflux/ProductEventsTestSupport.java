@@ -0,0 +1,62 @@
+package com.jozsef.webflux;
+
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.FluxExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Event stream checks shared by the tests of both route families and every way of binding the client.
+ */
+public final class ProductEventsTestSupport {
+
+    private ProductEventsTestSupport() {
+    }
+
+    /**
+     * Publishes an update of {@code product} every 100ms until disposed. Event streams only open once the first
+     * event is written, so this keeps publishing until every client is listening.
+     */
+    public static Disposable keepPublishing(ProductEventPublisher productEventPublisher, Product product) {
+        return Flux.interval(Duration.ofMillis(100))
+                   .subscribe(i -> productEventPublisher.publish(ProductEvent.Type.UPDATE, product.getId(), product));
+    }
+
+    /**
+     * Subscribes to {@code /events} below the client's base URL and expects the published updates.
+     */
+    public static void verifyProductEvents(WebTestClient testClient, ProductEventPublisher productEventPublisher) {
+        Product product = Product.builder().id("1").name("Big Latte").price(2.99).build();
+        Disposable changes = keepPublishing(productEventPublisher, product);
+
+        try {
+            FluxExchangeResult<ProductEvent> result = testClient.get()
+                                                                .uri("/events")
+                                                                .accept(MediaType.TEXT_EVENT_STREAM)
+                                                                .exchange()
+                                                                .expectStatus().isOk()
+                                                                .returnResult(ProductEvent.class);
+
+            StepVerifier.create(result.getResponseBody())
+                        .consumeNextWith(productEvent -> {
+                            assertEquals(ProductEvent.Type.UPDATE, productEvent.getEventType());
+                            assertEquals(product, productEvent.getProduct());
+                        })
+                        .expectNextCount(2)
+                        .thenCancel()
+                        .verify();
+        } finally {
+            changes.dispose();
+        }
+    }
+
+}
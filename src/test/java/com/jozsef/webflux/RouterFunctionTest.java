@@ -1,22 +1,32 @@
 package com.jozsef.webflux;
 
+import com.jozsef.webflux.codec.ProductCodecs;
+import com.jozsef.webflux.event.ProductEventPublisher;
 import com.jozsef.webflux.model.Product;
-import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.handler.ProductHandler;
+import com.jozsef.webflux.model.ProductLookupResult;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.model.ProductWriteResult;
 import com.jozsef.webflux.repository.ProductRepository;
+import com.jozsef.webflux.snapshot.ProductCatalogSnapshot;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.FluxExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.util.List;
 
+import static com.jozsef.webflux.ProductEventsTestSupport.verifyProductEvents;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -30,13 +40,21 @@ public class RouterFunctionTest {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductEventPublisher productEventPublisher;
+
+    @Autowired
+    private ProductCatalogSnapshot productCatalogSnapshot;
+
     @Autowired
     private RouterFunction routes;
 
     @BeforeEach
     void setUp() {
         testClient = WebTestClient.bindToRouterFunction(routes)
+                                  .handlerStrategies(HandlerStrategies.builder().codecs(ProductCodecs::register).build())
                                   .configureClient()
+                                  .codecs(ProductCodecs::register)
                                   .baseUrl("/functional/products")
                                   .build();
 
@@ -52,6 +70,125 @@ public class RouterFunctionTest {
                   .expectBodyList(Product.class).isEqualTo(expectedList);
     }
 
+    @Test
+    void testGetAllProductsAsCbor() {
+        testClient.get()
+                  .uri("/")
+                  .accept(MediaType.APPLICATION_CBOR)
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR)
+                  .expectBodyList(Product.class).isEqualTo(expectedList);
+    }
+
+    @Test
+    void testGetProductPages() {
+        String cursor = testClient.get()
+                                  .uri("/?size=2&sort=name")
+                                  .exchange()
+                                  .expectStatus().isOk()
+                                  .expectBodyList(Product.class).hasSize(2)
+                                  .returnResult()
+                                  .getResponseHeaders()
+                                  .getFirst(ProductHandler.NEXT_CURSOR_HEADER);
+
+        testClient.get()
+                  .uri("/?size=2&sort=name&cursor={cursor}", cursor)
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().doesNotExist(ProductHandler.NEXT_CURSOR_HEADER)
+                  .expectBodyList(Product.class).hasSize(expectedList.size() - 2);
+    }
+
+    @Test
+    void testGetProductsFiltered() {
+        long expectedCount = expectedList.stream()
+                                         .filter(product -> product.getPrice() != null && product.getPrice() >= 10 && product.getPrice() <= 1000)
+                                         .count();
+
+        testClient.get()
+                  .uri("/?minPrice=10&maxPrice=1000&sort=price&fields=id,price")
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectBodyList(Product.class)
+                  .hasSize((int) expectedCount)
+                  .value(products -> assertThat(products).allMatch(product -> product.getName() == null
+                          && product.getPrice() >= 10 && product.getPrice() <= 1000));
+    }
+
+    @Test
+    void testGetProductsBadPriceRange() {
+        testClient.get()
+                  .uri("/?minPrice=10&maxPrice=1")
+                  .exchange()
+                  .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testGetPriceStatsAggregated() {
+        double minPrice = expectedList.stream().mapToDouble(Product::getPrice).min().orElseThrow();
+
+        testClient.get()
+                  .uri("/stats?bucketWidth=1")
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectBody(ProductStats.class)
+                  .value(stats -> {
+                      assertEquals(expectedList.size(), stats.getCount());
+                      assertEquals(minPrice, stats.getMinPrice());
+                      assertEquals(expectedList.size(), stats.getHistogram().stream().mapToLong(ProductStats.PriceBucket::getCount).sum());
+                  });
+    }
+
+    @Test
+    void testExportProducts() {
+        FluxExchangeResult<Product> result = testClient.get()
+                                                       .uri("/export")
+                                                       .accept(MediaType.APPLICATION_NDJSON)
+                                                       .exchange()
+                                                       .expectStatus().isOk()
+                                                       .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                                                       .returnResult(Product.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .expectNextCount(expectedList.size())
+                    .verifyComplete();
+    }
+
+    @Test
+    void testExportProductsAsProtobuf() {
+        FluxExchangeResult<Product> result = testClient.get()
+                                                       .uri("/export")
+                                                       .accept(ProductCodecs.APPLICATION_PROTOBUF)
+                                                       .exchange()
+                                                       .expectStatus().isOk()
+                                                       .expectHeader().contentTypeCompatibleWith(ProductCodecs.APPLICATION_PROTOBUF)
+                                                       .returnResult(Product.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .expectNextCount(expectedList.size())
+                    .verifyComplete();
+    }
+
+    @Test
+    void testGetCatalogSnapshot() {
+        productCatalogSnapshot.refresh().block();
+        String eTag = productCatalogSnapshot.current().block().eTag(false);
+
+        testClient.get()
+                  .uri("/snapshot")
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().valueEquals(HttpHeaders.ETAG, eTag)
+                  .expectBodyList(Product.class).hasSize(expectedList.size());
+
+        testClient.get()
+                  .uri("/snapshot")
+                  .ifNoneMatch(eTag)
+                  .exchange()
+                  .expectStatus().isNotModified();
+    }
+
     @Test
     void testProductNotFound() {
         testClient.get()
@@ -70,6 +207,69 @@ public class RouterFunctionTest {
                   .expectBody(Product.class).isEqualTo(expectedProduct);
     }
 
+    @Test
+    void testGetProductsById() {
+        Product expectedProduct = expectedList.get(0);
+
+        FluxExchangeResult<ProductLookupResult> result = testClient.post()
+                                                                   .uri("/_mget")
+                                                                   .contentType(MediaType.APPLICATION_JSON)
+                                                                   .accept(MediaType.APPLICATION_NDJSON)
+                                                                   .bodyValue(List.of("aaa", expectedProduct.getId()))
+                                                                   .exchange()
+                                                                   .expectStatus().isOk()
+                                                                   .returnResult(ProductLookupResult.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .expectNext(new ProductLookupResult("aaa", ProductLookupResult.Status.NOT_FOUND, null))
+                    .expectNext(new ProductLookupResult(expectedProduct.getId(), ProductLookupResult.Status.FOUND, expectedProduct))
+                    .verifyComplete();
+    }
+
+    @Test
+    void testGetProductAsSmile() {
+        Product expectedProduct = expectedList.get(0);
+
+        testClient.get()
+                  .uri("/{id}", expectedProduct.getId())
+                  .accept(ProductCodecs.APPLICATION_SMILE)
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().contentTypeCompatibleWith(ProductCodecs.APPLICATION_SMILE)
+                  .expectBody(Product.class).isEqualTo(expectedProduct);
+    }
+
+    @Test
+    void testGetProductNotModified() {
+        Product expectedProduct = expectedList.get(0);
+        String eTag = testClient.get()
+                                .uri("/{id}", expectedProduct.getId())
+                                .exchange()
+                                .expectStatus().isOk()
+                                .returnResult(Product.class)
+                                .getResponseHeaders()
+                                .getETag();
+
+        testClient.get()
+                  .uri("/{id}", expectedProduct.getId())
+                  .ifNoneMatch(eTag)
+                  .exchange()
+                  .expectStatus().isNotModified()
+                  .expectBody().isEmpty();
+    }
+
+    @Test
+    void testUpdateProductStaleVersion() {
+        Product expectedProduct = expectedList.get(0);
+
+        testClient.put()
+                  .uri("/{id}", expectedProduct.getId())
+                  .header(HttpHeaders.IF_MATCH, "\"" + (expectedProduct.getVersion() + 1) + "\"")
+                  .body(Mono.just(expectedProduct), Product.class)
+                  .exchange()
+                  .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
     @Test
     void testCreateProduct() {
         Product expectedProduct = Product.builder()
@@ -94,6 +294,31 @@ public class RouterFunctionTest {
                   );
     }
 
+    @Test
+    void testSaveProducts() {
+        Product existingProduct = expectedList.get(0);
+        existingProduct.setPrice(3.49);
+        List<Product> products = List.of(existingProduct, Product.builder().name("Jasmine Tea").price(0.99).build());
+
+        FluxExchangeResult<ProductWriteResult> result = testClient.post()
+                                                                  .uri("/_bulk")
+                                                                  .contentType(MediaType.APPLICATION_JSON)
+                                                                  .accept(MediaType.APPLICATION_NDJSON)
+                                                                  .bodyValue(products)
+                                                                  .exchange()
+                                                                  .expectStatus().isOk()
+                                                                  .returnResult(ProductWriteResult.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .consumeNextWith(r -> assertEquals(ProductWriteResult.Status.UPDATED, r.getStatus()))
+                    .consumeNextWith(r -> {
+                        assertEquals(ProductWriteResult.Status.CREATED, r.getStatus());
+                        assertEquals(expectedList.size() + 1, productRepository.findAll().collectList().block().size());
+                        productRepository.deleteById(r.getId()).block();
+                    })
+                    .verifyComplete();
+    }
+
     @Test
     void testUpdateProduct() {
         Product expectedProduct = expectedList.get(0);
@@ -155,21 +380,7 @@ public class RouterFunctionTest {
 
     @Test
     void testProductEvents() {
-        ProductEvent expectedEvent = ProductEvent.builder().eventId(0L).eventType("Product Event").build();
-
-        FluxExchangeResult<ProductEvent> result = testClient.get()
-                                                            .uri("/events")
-                                                            .accept(MediaType.TEXT_EVENT_STREAM)
-                                                            .exchange()
-                                                            .expectStatus().isOk()
-                                                            .returnResult(ProductEvent.class);
-
-        StepVerifier.create(result.getResponseBody())
-                    .expectNext(expectedEvent)
-                    .expectNextCount(2)
-                    .consumeNextWith(productEvent -> assertEquals(Long.valueOf(3), productEvent.getEventId()))
-                    .thenCancel()
-                    .verify();
+        verifyProductEvents(testClient, productEventPublisher);
     }
 
 }
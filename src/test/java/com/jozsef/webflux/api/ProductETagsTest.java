@@ -0,0 +1,41 @@
+package com.jozsef.webflux.api;
+
+import com.jozsef.webflux.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ProductETagsTest {
+
+    @Test
+    void testUnversionedProductHasNoTag() {
+        assertEquals("\"3\"", ProductETags.of(Product.builder().id("1").version(3L).build()));
+        assertNull(ProductETags.of(Product.builder().id("1").build()));
+    }
+
+    @Test
+    void testAbsentOrWildcardMatchesAnyVersion() {
+        assertNull(ProductETags.expectedVersions(null));
+        assertNull(ProductETags.expectedVersions(" * "));
+    }
+
+    @Test
+    void testEveryListedStrongTagIsExpected() {
+        assertEquals(Set.of(4L), ProductETags.expectedVersions("\"4\""));
+        assertEquals(Set.of(1L, 2L), ProductETags.expectedVersions("\"1\", \"2\""));
+        assertEquals(Set.of(2L), ProductETags.expectedVersions("W/\"1\",\"2\",\"other\""));
+    }
+
+    @Test
+    void testTagsThatCanNeverMatchAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ProductETags.expectedVersions("W/\"1\""));
+        assertThrows(IllegalArgumentException.class, () -> ProductETags.expectedVersions("\"latest\""));
+        assertThrows(IllegalArgumentException.class, () -> ProductETags.expectedVersions("1"));
+        assertThrows(IllegalArgumentException.class, () -> ProductETags.expectedVersions("\"1\", \"2"));
+    }
+
+}
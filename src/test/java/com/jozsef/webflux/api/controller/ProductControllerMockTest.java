@@ -1,14 +1,34 @@
 package com.jozsef.webflux.api.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jozsef.webflux.codec.ProductCodecs;
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
 import com.jozsef.webflux.model.Product;
 import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductLookupResult;
+import com.jozsef.webflux.model.ProductPage;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.jozsef.webflux.repository.ProductBatchLoader;
+import com.jozsef.webflux.repository.ProductQuery;
 import com.jozsef.webflux.repository.ProductRepository;
+import com.jozsef.webflux.search.ProductSearchIndex;
 import com.jozsef.webflux.service.ProductService;
+import com.jozsef.webflux.stats.ProductPriceSummary;
 import com.jozsef.webflux.service.ProductServiceImpl;
+import com.jozsef.webflux.snapshot.ProductCatalogSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.FluxExchangeResult;
@@ -17,10 +37,19 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
+import static com.jozsef.webflux.ProductEventsTestSupport.verifyProductEvents;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(SpringExtension.class)
@@ -32,22 +61,44 @@ public class ProductControllerMockTest {
 
     private ProductService productService;
 
+    private ProductEventPublisher productEventPublisher;
+
+    private ProductSearchIndex productSearchIndex;
+
+    private ProductPriceSummary productPriceSummary;
+
+    private ProductCatalogSnapshot productCatalogSnapshot;
+
+    @TempDir
+    Path snapshotDirectory;
+
     @Mock
     private ProductRepository productRepository;
 
     @BeforeEach
     void setUp() {
-        productService = new ProductServiceImpl(productRepository);
+        productEventPublisher = new ProductEventPublisher(new ProductProperties());
+        productSearchIndex = new ProductSearchIndex(productRepository, productEventPublisher);
+        productPriceSummary = new ProductPriceSummary(productRepository, productEventPublisher, new ProductProperties());
+        ProductProperties snapshotProperties = new ProductProperties();
+        snapshotProperties.getSnapshot().setDirectory(snapshotDirectory);
+        productCatalogSnapshot = new ProductCatalogSnapshot(productRepository, productEventPublisher, new ObjectMapper(),
+                snapshotProperties);
+        productService = new ProductServiceImpl(productRepository, new ProductProperties(), productEventPublisher,
+                productSearchIndex, productPriceSummary, productCatalogSnapshot,
+                new ProductBatchLoader(productRepository, new ProductProperties(), new SimpleMeterRegistry()));
 
         testClient = WebTestClient.bindToController(new ProductController(productService))
+                                  .httpMessageCodecs(ProductCodecs::register)
                                   .configureClient()
+                                  .codecs(ProductCodecs::register)
                                   .baseUrl("/products")
                                   .build();
 
         expectedList = List.of(
-                Product.builder().id("1").name("Big Latte").price(2.99).build(),
-                Product.builder().id("2").name("Big Decaf").price(2.49).build(),
-                Product.builder().id("3").name("Green Tea").price(1.99).build()
+                Product.builder().id("1").name("Big Latte").price(2.99).version(0L).build(),
+                Product.builder().id("2").name("Big Decaf").price(2.49).version(0L).build(),
+                Product.builder().id("3").name("Green Tea").price(1.99).version(0L).build()
         );
     }
 
@@ -62,9 +113,247 @@ public class ProductControllerMockTest {
                   .expectBodyList(Product.class).isEqualTo(expectedList);
     }
 
+    @Test
+    void testGetAllProductsDefaultsToJson() {
+        when(productRepository.findAll()).thenReturn(Flux.fromIterable(expectedList));
+
+        testClient.get()
+                  .uri("/")
+                  .accept(MediaType.ALL)
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                  .expectBodyList(Product.class).isEqualTo(expectedList);
+    }
+
+    @Test
+    void testGetAllProductsAsSmile() {
+        when(productRepository.findAll()).thenReturn(Flux.fromIterable(expectedList));
+
+        testClient.get()
+                  .uri("/")
+                  .accept(ProductCodecs.APPLICATION_SMILE)
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().contentTypeCompatibleWith(ProductCodecs.APPLICATION_SMILE)
+                  .expectBodyList(Product.class).isEqualTo(expectedList);
+    }
+
+    @Test
+    void testGetAllProductsAsCbor() {
+        when(productRepository.findAll()).thenReturn(Flux.fromIterable(expectedList));
+
+        testClient.get()
+                  .uri("/")
+                  .accept(MediaType.APPLICATION_CBOR)
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR)
+                  .expectBodyList(Product.class).isEqualTo(expectedList);
+    }
+
+    @Test
+    void testGetProductPage() {
+        when(productRepository.findPage(ProductQuery.builder().sort("price").build(), null, 2))
+                .thenReturn(Mono.just(new ProductPage(expectedList.subList(0, 2), "next")));
+
+        testClient.get()
+                  .uri("/?size=2&sort=price")
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().valueEquals(ProductController.NEXT_CURSOR_HEADER, "next")
+                  .expectBodyList(Product.class).isEqualTo(expectedList.subList(0, 2));
+    }
+
+    @Test
+    void testGetProductPageBadCursor() {
+        when(productRepository.findPage(ProductQuery.all(), "bad", 20))
+                .thenReturn(Mono.error(new IllegalArgumentException("Malformed cursor")));
+
+        testClient.get()
+                  .uri("/?cursor=bad")
+                  .exchange()
+                  .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testGetProductsFiltered() {
+        ProductQuery query = ProductQuery.builder()
+                                         .namePrefix("Pro")
+                                         .minPrice(10.0)
+                                         .sort("price")
+                                         .fields(Set.of("id", "price"))
+                                         .build();
+        when(productRepository.findMatching(query)).thenReturn(Flux.fromIterable(expectedList));
+
+        testClient.get()
+                  .uri("/?namePrefix=Pro&minPrice=10&sort=price&fields=id,price")
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectBodyList(Product.class).isEqualTo(expectedList);
+    }
+
+    @Test
+    void testGetProductsUnknownField() {
+        testClient.get()
+                  .uri("/?fields=id,secret")
+                  .exchange()
+                  .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testSearchProducts() {
+        expectedList.forEach(productSearchIndex::index);
+
+        testClient.get()
+                  .uri("/search?q=big l")
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectBodyList(Product.class).isEqualTo(List.of(expectedList.get(0)));
+    }
+
+    @Test
+    void testSearchProductsBadLimit() {
+        testClient.get()
+                  .uri("/search?q=big&limit=0")
+                  .exchange()
+                  .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testGetPriceStats() {
+        when(productRepository.findAll()).thenReturn(Flux.fromIterable(expectedList));
+        productPriceSummary.load();
+
+        testClient.get()
+                  .uri("/stats")
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectBody()
+                  .jsonPath("$.count").isEqualTo(3)
+                  .jsonPath("$.minPrice").isEqualTo(1.99)
+                  .jsonPath("$.maxPrice").isEqualTo(2.99)
+                  .jsonPath("$.histogram[0].lowerBound").isEqualTo(0.0)
+                  .jsonPath("$.histogram[0].count").isEqualTo(3);
+    }
+
+    @Test
+    void testGetPriceStatsOtherWidthIsAggregated() {
+        ProductStats stats = ProductStats.builder().count(3).bucketWidth(1).histogram(List.of()).build();
+        when(productRepository.priceStats(1)).thenReturn(Mono.just(stats));
+
+        testClient.get()
+                  .uri("/stats?bucketWidth=1")
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectBody(ProductStats.class).isEqualTo(stats);
+    }
+
+    @Test
+    void testExportProducts() {
+        when(productRepository.streamAll(500)).thenReturn(Flux.fromIterable(expectedList));
+
+        FluxExchangeResult<Product> result = testClient.get()
+                                                       .uri("/export")
+                                                       .accept(MediaType.APPLICATION_NDJSON)
+                                                       .exchange()
+                                                       .expectStatus().isOk()
+                                                       .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                                                       .returnResult(Product.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .expectNextSequence(expectedList)
+                    .verifyComplete();
+    }
+
+    @Test
+    void testExportProductsAsProtobuf() {
+        when(productRepository.streamAll(500)).thenReturn(Flux.fromIterable(expectedList));
+
+        FluxExchangeResult<Product> result = testClient.get()
+                                                       .uri("/export")
+                                                       .accept(ProductCodecs.APPLICATION_PROTOBUF)
+                                                       .exchange()
+                                                       .expectStatus().isOk()
+                                                       .expectHeader().contentTypeCompatibleWith(ProductCodecs.APPLICATION_PROTOBUF)
+                                                       .returnResult(Product.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .expectNextSequence(expectedList)
+                    .verifyComplete();
+    }
+
+    @Test
+    void testExportProductsAsCborSequence() {
+        when(productRepository.streamAll(500)).thenReturn(Flux.fromIterable(expectedList));
+
+        FluxExchangeResult<Product> result = testClient.get()
+                                                       .uri("/export")
+                                                       .accept(ProductCodecs.APPLICATION_CBOR_SEQ)
+                                                       .exchange()
+                                                       .expectStatus().isOk()
+                                                       .expectHeader().contentTypeCompatibleWith(ProductCodecs.APPLICATION_CBOR_SEQ)
+                                                       .returnResult(Product.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .expectNextSequence(expectedList)
+                    .verifyComplete();
+    }
+
+    @Test
+    void testCatalogSnapshotNotWrittenYet() {
+        testClient.get()
+                  .uri("/snapshot")
+                  .exchange()
+                  .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    void testCatalogSnapshot() throws IOException {
+        when(productRepository.streamAll(500)).thenReturn(Flux.fromIterable(expectedList));
+        ProductCatalogSnapshot.Generation generation = productCatalogSnapshot.refresh().block();
+
+        testClient.get()
+                  .uri("/snapshot")
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().doesNotExist(HttpHeaders.CONTENT_ENCODING)
+                  .expectHeader().valueEquals(HttpHeaders.ETAG, generation.eTag(false))
+                  .expectHeader().cacheControl(CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic())
+                  .expectBodyList(Product.class).isEqualTo(expectedList);
+
+        byte[] gzipped = testClient.get()
+                                   .uri("/snapshot")
+                                   .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                                   .exchange()
+                                   .expectStatus().isOk()
+                                   .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                                   .expectHeader().valueEquals(HttpHeaders.ETAG, generation.eTag(true))
+                                   .expectBody(byte[].class)
+                                   .returnResult()
+                                   .getResponseBody();
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            assertEquals(expectedList, List.of(new ObjectMapper().readValue(in, Product[].class)));
+        }
+    }
+
+    @Test
+    void testCatalogSnapshotNotModified() {
+        when(productRepository.streamAll(500)).thenReturn(Flux.fromIterable(expectedList));
+        ProductCatalogSnapshot.Generation generation = productCatalogSnapshot.refresh().block();
+
+        testClient.get()
+                  .uri("/snapshot")
+                  .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                  .ifNoneMatch(generation.eTag(true))
+                  .exchange()
+                  .expectStatus().isNotModified();
+    }
+
     @Test
     void testProductNotFound() {
-        when(productRepository.findById("aaa")).thenReturn(Mono.empty());
+        when(productRepository.findAllById(Set.of("aaa"))).thenReturn(Flux.empty());
 
         testClient.get()
                   .uri("/aaa")
@@ -76,15 +365,109 @@ public class ProductControllerMockTest {
     void testGetProduct() {
         Product expectedProduct = expectedList.get(0);
 
-        when(productRepository.findById(expectedProduct.getId())).thenReturn(Mono.just(expectedProduct));
+        when(productRepository.findAllById(Set.of(expectedProduct.getId()))).thenReturn(Flux.just(expectedProduct));
+
+        testClient.get()
+                  .uri("/{id}", expectedProduct.getId())
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectBody(Product.class).isEqualTo(expectedProduct);
+    }
+
+    @Test
+    void testGetProductAsProtobuf() {
+        Product expectedProduct = expectedList.get(0);
+
+        when(productRepository.findAllById(Set.of(expectedProduct.getId()))).thenReturn(Flux.just(expectedProduct));
 
         testClient.get()
                   .uri("/{id}", expectedProduct.getId())
+                  .accept(ProductCodecs.APPLICATION_PROTOBUF)
                   .exchange()
                   .expectStatus().isOk()
+                  .expectHeader().contentTypeCompatibleWith(ProductCodecs.APPLICATION_PROTOBUF)
                   .expectBody(Product.class).isEqualTo(expectedProduct);
     }
 
+    @Test
+    void testGetProductNotModified() {
+        Product expectedProduct = expectedList.get(0);
+
+        when(productRepository.findAllById(Set.of(expectedProduct.getId()))).thenReturn(Flux.just(expectedProduct));
+
+        testClient.get()
+                  .uri("/{id}", expectedProduct.getId())
+                  .ifNoneMatch("\"0\"")
+                  .exchange()
+                  .expectStatus().isNotModified()
+                  .expectBody().isEmpty();
+    }
+
+    @Test
+    void testGetUnversionedProductHasNoETag() {
+        Product expectedProduct = Product.builder().id("4").name("Flat White").price(3.19).build();
+
+        when(productRepository.findAllById(Set.of(expectedProduct.getId()))).thenReturn(Flux.just(expectedProduct));
+
+        testClient.get()
+                  .uri("/{id}", expectedProduct.getId())
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().doesNotExist(HttpHeaders.ETAG);
+    }
+
+    @Test
+    void testGetProductsById() {
+        when(productRepository.findAllById(Set.of("3", "aaa", "1")))
+                .thenReturn(Flux.just(expectedList.get(0), expectedList.get(2)));
+
+        FluxExchangeResult<ProductLookupResult> result = testClient.post()
+                                                                   .uri("/_mget")
+                                                                   .contentType(MediaType.APPLICATION_JSON)
+                                                                   .accept(MediaType.APPLICATION_NDJSON)
+                                                                   .bodyValue(List.of("3", "aaa", "1", "3"))
+                                                                   .exchange()
+                                                                   .expectStatus().isOk()
+                                                                   .returnResult(ProductLookupResult.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .expectNext(new ProductLookupResult("3", ProductLookupResult.Status.FOUND, expectedList.get(2)))
+                    .expectNext(new ProductLookupResult("aaa", ProductLookupResult.Status.NOT_FOUND, null))
+                    .expectNext(new ProductLookupResult("1", ProductLookupResult.Status.FOUND, expectedList.get(0)))
+                    .expectNext(new ProductLookupResult("3", ProductLookupResult.Status.FOUND, expectedList.get(2)))
+                    .verifyComplete();
+    }
+
+    @Test
+    void testGetProductsByIdAsJsonArray() {
+        when(productRepository.findAllById(Set.of("1", "2"))).thenReturn(Flux.just(expectedList.get(1)));
+
+        testClient.post()
+                  .uri("/_mget")
+                  .contentType(MediaType.APPLICATION_JSON)
+                  .accept(MediaType.APPLICATION_JSON)
+                  .bodyValue(List.of("1", "2"))
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectBody()
+                  .jsonPath("$[0].status").isEqualTo("NOT_FOUND")
+                  .jsonPath("$[0].product").doesNotExist()
+                  .jsonPath("$[1].status").isEqualTo("FOUND")
+                  .jsonPath("$[1].product.name").isEqualTo("Big Decaf");
+    }
+
+    @Test
+    void testGetProductsByIdTooMany() {
+        List<String> ids = Flux.range(0, 1001).map(String::valueOf).collectList().block();
+
+        testClient.post()
+                  .uri("/_mget")
+                  .contentType(MediaType.APPLICATION_JSON)
+                  .bodyValue(ids)
+                  .exchange()
+                  .expectStatus().isBadRequest();
+    }
+
     @Test
     void testCreateProduct() {
         Product expectedProduct = Product.builder()
@@ -109,6 +492,72 @@ public class ProductControllerMockTest {
                   );
     }
 
+    @Test
+    void testCreateExistingProductConflicts() {
+        Product existingProduct = Product.builder()
+                                         .id("1")
+                                         .name("Jasmine Tea")
+                                         .price(0.99)
+                                         .build();
+
+        when(productRepository.insert(existingProduct)).thenReturn(Mono.error(new DuplicateKeyException("E11000")));
+
+        testClient.post()
+                  .uri("/")
+                  .body(Mono.just(existingProduct), Product.class)
+                  .exchange()
+                  .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void testSaveProducts() {
+        List<ProductWriteResult> expectedResults = List.of(
+                new ProductWriteResult(0, "1", ProductWriteResult.Status.UPDATED, null),
+                new ProductWriteResult(1, "2", ProductWriteResult.Status.FAILED, "duplicate key")
+        );
+
+        when(productRepository.bulkUpsert(any(), eq(1000), eq(2))).thenReturn(Flux.fromIterable(expectedResults));
+
+        FluxExchangeResult<ProductWriteResult> result = testClient.post()
+                                                                  .uri("/_bulk")
+                                                                  .contentType(MediaType.APPLICATION_JSON)
+                                                                  .accept(MediaType.APPLICATION_NDJSON)
+                                                                  .bodyValue(expectedList.subList(0, 2))
+                                                                  .exchange()
+                                                                  .expectStatus().isOk()
+                                                                  .returnResult(ProductWriteResult.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .expectNextSequence(expectedResults)
+                    .verifyComplete();
+    }
+
+    @Test
+    void testSaveProductsFromProtobuf() {
+        List<ProductWriteResult> expectedResults = List.of(
+                new ProductWriteResult(0, "1", ProductWriteResult.Status.UPDATED, null),
+                new ProductWriteResult(1, "2", ProductWriteResult.Status.UPDATED, null)
+        );
+
+        when(productRepository.bulkUpsert(any(), eq(1000), eq(2)))
+                .thenAnswer(invocation -> invocation.<Flux<Product>>getArgument(0)
+                                                    .index((index, product) -> new ProductWriteResult(index.intValue(), product.getId(),
+                                                            ProductWriteResult.Status.UPDATED, null)));
+
+        FluxExchangeResult<ProductWriteResult> result = testClient.post()
+                                                                  .uri("/_bulk")
+                                                                  .contentType(ProductCodecs.APPLICATION_PROTOBUF)
+                                                                  .accept(MediaType.APPLICATION_NDJSON)
+                                                                  .body(Flux.fromIterable(expectedList.subList(0, 2)), Product.class)
+                                                                  .exchange()
+                                                                  .expectStatus().isOk()
+                                                                  .returnResult(ProductWriteResult.class);
+
+        StepVerifier.create(result.getResponseBody())
+                    .expectNextSequence(expectedResults)
+                    .verifyComplete();
+    }
+
     @Test
     void testUpdateProduct() {
         Product expectedProduct = Product.builder()
@@ -117,8 +566,7 @@ public class ProductControllerMockTest {
         expectedProduct.setName("Jasmine Tea");
         expectedProduct.setPrice(0.99);
 
-        when(productRepository.findById(expectedProduct.getId())).thenReturn(Mono.just(expectedList.get(0)));
-        when(productRepository.save(expectedProduct)).thenReturn(Mono.just(expectedProduct));
+        when(productRepository.findAndUpdateById(expectedProduct.getId(), expectedProduct, null)).thenReturn(Mono.just(expectedProduct));
 
         testClient.put()
                   .uri("/{id}", expectedProduct.getId())
@@ -133,6 +581,50 @@ public class ProductControllerMockTest {
                   );
     }
 
+    @Test
+    void testUpdateProductStaleVersion() {
+        Product expectedProduct = expectedList.get(0);
+
+        when(productRepository.findAndUpdateById(expectedProduct.getId(), expectedProduct, Set.of(0L)))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("stale")));
+
+        testClient.put()
+                  .uri("/{id}", expectedProduct.getId())
+                  .header(HttpHeaders.IF_MATCH, "\"0\"")
+                  .body(Mono.just(expectedProduct), Product.class)
+                  .exchange()
+                  .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @Test
+    void testUpdateProductMatchesAnyListedVersion() {
+        Product expectedProduct = expectedList.get(0);
+        Product updatedProduct = Product.builder().id("1").name("Big Latte").price(2.99).version(1L).build();
+
+        when(productRepository.findAndUpdateById(expectedProduct.getId(), expectedProduct, Set.of(0L, 7L)))
+                .thenReturn(Mono.just(updatedProduct));
+
+        testClient.put()
+                  .uri("/{id}", expectedProduct.getId())
+                  .header(HttpHeaders.IF_MATCH, "\"7\", W/\"1\", \"0\"")
+                  .body(Mono.just(expectedProduct), Product.class)
+                  .exchange()
+                  .expectStatus().isOk()
+                  .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+    }
+
+    @Test
+    void testUpdateProductWeakTagNeverMatches() {
+        Product expectedProduct = expectedList.get(0);
+
+        testClient.put()
+                  .uri("/{id}", expectedProduct.getId())
+                  .header(HttpHeaders.IF_MATCH, "W/\"0\"")
+                  .body(Mono.just(expectedProduct), Product.class)
+                  .exchange()
+                  .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
     @Test
     void testUpdateProductNotFound() {
         Product expectedProduct = Product.builder()
@@ -141,7 +633,7 @@ public class ProductControllerMockTest {
                                          .price(0.99)
                                          .build();
 
-        when(productRepository.findById(expectedProduct.getId())).thenReturn(Mono.empty());
+        when(productRepository.findAndUpdateById(expectedProduct.getId(), expectedProduct, null)).thenReturn(Mono.empty());
 
         testClient.put()
                   .uri("/{id}", expectedProduct.getId())
@@ -154,8 +646,7 @@ public class ProductControllerMockTest {
     void testDeleteProduct() {
         String id = expectedList.get(0).getId();
 
-        when(productRepository.findById(id)).thenReturn(Mono.just(expectedList.get(0)));
-        when(productRepository.delete(expectedList.get(0))).thenReturn(Mono.empty());
+        when(productRepository.findAndRemoveById(id, null)).thenReturn(Mono.just(expectedList.get(0)));
 
         testClient.delete()
                   .uri("/{id}", id)
@@ -163,6 +654,16 @@ public class ProductControllerMockTest {
                   .expectStatus().isOk();
     }
 
+    @Test
+    void testDeleteProductNotFound() {
+        when(productRepository.findAndRemoveById("aaa", null)).thenReturn(Mono.empty());
+
+        testClient.delete()
+                  .uri("/{id}", "aaa")
+                  .exchange()
+                  .expectStatus().isNotFound();
+    }
+
     @Test
     void testDeleteAllProducts() {
         when(productRepository.deleteAll()).thenReturn(Mono.empty());
@@ -175,19 +676,26 @@ public class ProductControllerMockTest {
 
     @Test
     void testProductEvents() {
-        ProductEvent expectedEvent = ProductEvent.builder().eventId(0L).eventType("Product Event").build();
+        verifyProductEvents(testClient, productEventPublisher);
+    }
+
+    @Test
+    void testProductEventsReplay() {
+        for (int i = 0; i < 3; i++) {
+            productEventPublisher.publish(ProductEvent.Type.DELETE, String.valueOf(i), null);
+        }
 
         FluxExchangeResult<ProductEvent> result = testClient.get()
                                                             .uri("/events")
                                                             .accept(MediaType.TEXT_EVENT_STREAM)
+                                                            .header(ProductController.LAST_EVENT_ID_HEADER, "0")
                                                             .exchange()
                                                             .expectStatus().isOk()
                                                             .returnResult(ProductEvent.class);
 
         StepVerifier.create(result.getResponseBody())
-                    .expectNext(expectedEvent)
-                    .expectNextCount(2)
-                    .consumeNextWith(productEvent -> assertEquals(Long.valueOf(3), productEvent.getEventId()))
+                    .consumeNextWith(productEvent -> assertEquals("1", productEvent.getProductId()))
+                    .consumeNextWith(productEvent -> assertEquals("2", productEvent.getProductId()))
                     .thenCancel()
                     .verify();
     }
@@ -0,0 +1,133 @@
+package com.jozsef.webflux.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Harness of the load tests: drives requests at a fixed concurrency for a while, records their latencies and
+ * collects one row per measured run, {@code req/s} and the {@code p50/p99/p99.9/max} latencies after the columns
+ * that tell the runs apart. Keep an instance in a static field and call {@link #summary()} from {@code @AfterAll},
+ * so the rows of every parameter end up in one table.
+ */
+@Slf4j
+final class LoadReport {
+
+    private static final long HIGHEST_TRACKABLE_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    private static final String LATENCY_FORMAT = " %10s %9s %9s %10s %9s %7s";
+
+    private final String labelFormat;
+    private final String header;
+    private final List<String> rows = new ArrayList<>();
+
+    /**
+     * @param labelFormat format of the leading columns, e.g. {@code "%-9s %-20s"}
+     * @param labels their headers
+     */
+    LoadReport(String labelFormat, Object... labels) {
+        this.labelFormat = labelFormat;
+        this.header = String.format(labelFormat + LATENCY_FORMAT, concat(labels,
+                "req/s", "p50 us", "p99 us", "p99.9 us", "max us", "errors"));
+    }
+
+    /**
+     * Subscribes to requests from {@code request} with at most {@code concurrency} in flight until {@code runFor}
+     * has passed, then waits for the last ones. Returns the elapsed nanoseconds.
+     */
+    static long drive(Duration runFor, int concurrency, Supplier<Mono<?>> request) {
+        long start = System.nanoTime();
+        long deadline = start + runFor.toNanos();
+
+        Flux.<Integer>generate(sink -> sink.next(0))
+            .takeWhile(i -> System.nanoTime() < deadline)
+            .flatMap(i -> request.get(), concurrency)
+            .blockLast();
+
+        return System.nanoTime() - start;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Adds the row of a measured run and returns it.
+     */
+    String add(Latencies latencies, long elapsedNanos, Object... labels) {
+        Histogram histogram = latencies.histogram;
+        String row = String.format(labelFormat + LATENCY_FORMAT, concat(labels,
+                Math.round(histogram.getTotalCount() / (elapsedNanos / 1e9)),
+                micros(histogram.getValueAtPercentile(50)), micros(histogram.getValueAtPercentile(99)),
+                micros(histogram.getValueAtPercentile(99.9)), micros(histogram.getMaxValue()), latencies.errors()));
+        synchronized (rows) {
+            rows.add(row);
+        }
+        return row;
+    }
+
+    /**
+     * Logs the table of every row added so far and starts over.
+     */
+    void summary() {
+        synchronized (rows) {
+            log.info(header);
+            rows.forEach(log::info);
+            rows.clear();
+        }
+    }
+
+    private static Object[] concat(Object[] labels, Object... values) {
+        Object[] columns = new Object[labels.length + values.length];
+        System.arraycopy(labels, 0, columns, 0, labels.length);
+        System.arraycopy(values, 0, columns, labels.length, values.length);
+        return columns;
+    }
+
+    /**
+     * Latencies of the requests that succeeded and the number that failed.
+     */
+    static final class Latencies {
+
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_LATENCY, 3);
+        private final AtomicLong errors = new AtomicLong();
+
+        /**
+         * Times {@code request} from subscription to its value; a failure is counted and swallowed, and a request
+         * that completes empty was never sent and counts as neither.
+         */
+        <T> Mono<T> time(Mono<T> request) {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return request.doOnNext(value -> record(System.nanoTime() - start))
+                              .onErrorResume(e -> {
+                                  errors.incrementAndGet();
+                                  return Mono.empty();
+                              });
+            });
+        }
+
+        private void record(long nanos) {
+            histogram.recordValue(Math.min(nanos, HIGHEST_TRACKABLE_LATENCY));
+        }
+
+        long count() {
+            return histogram.getTotalCount();
+        }
+
+        long errors() {
+            return errors.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.jozsef.webflux.benchmark;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductBatchLoader;
+import com.jozsef.webflux.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A burst of concurrent lookups by id, answered one query per id or coalesced by {@link ProductBatchLoader}.
+ * The {@code queries} counter totals repository round trips; divided by the op count it is queries per burst.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductBatchLoaderBenchmark {
+
+    @Param({"true", "false"})
+    public boolean batching;
+
+    @Param({"64", "512"})
+    public int concurrency;
+
+    private final AtomicLong queries = new AtomicLong();
+
+    private ProductBatchLoader productBatchLoader;
+    private List<Mono<Product>> lookups;
+
+    @Setup
+    public void setUp() {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getBatching().setEnabled(batching);
+        productProperties.getBatching().setWindow(Duration.ofMillis(1));
+        productBatchLoader = new ProductBatchLoader(counting(ProductRepositoryStub.create(1_000)), productProperties,
+                new SimpleMeterRegistry());
+        lookups = Flux.range(0, concurrency)
+                      .map(i -> Mono.defer(() -> productBatchLoader.findById(String.valueOf(i % 700))))
+                      .collectList()
+                      .block();
+    }
+
+    @Benchmark
+    public List<Product> burst(Queries counters) {
+        long before = queries.get();
+        List<Product> products = Flux.merge(lookups).collectList().block();
+        counters.queries += queries.get() - before;
+        return products;
+    }
+
+    private ProductRepository counting(ProductRepository productRepository) {
+        return (ProductRepository) Proxy.newProxyInstance(ProductRepository.class.getClassLoader(),
+                new Class<?>[]{ProductRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().startsWith("find")) {
+                        queries.incrementAndGet();
+                    }
+                    return method.invoke(productRepository, args);
+                });
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Queries {
+
+        public long queries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            queries = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.jozsef.webflux.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jozsef.webflux.codec.ProductCodecs;
+import com.jozsef.webflux.codec.ProductProtobufDecoder;
+import com.jozsef.webflux.codec.ProductProtobufEncoder;
+import com.jozsef.webflux.codec.StreamingCborDecoder;
+import com.jozsef.webflux.codec.StreamingCborEncoder;
+import com.jozsef.webflux.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.codec.Hints;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of a single {@link Product} and of a {@code Flux<Product>} through the WebFlux codecs that write product
+ * responses, per wire format. {@link #main} prints the payload sizes the formats produce.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductCodecBenchmark {
+
+    private static final ResolvableType PRODUCT_TYPE = ResolvableType.forClass(Product.class);
+
+    // the test classpath logs at DEBUG, and the Jackson codecs would otherwise log every value
+    private static final Map<String, Object> HINTS = Map.of(Hints.SUPPRESS_LOGGING_HINT, true);
+
+    @Param({"json", "smile", "cbor", "protobuf"})
+    private String format;
+
+    @Param({"1", "100"})
+    private int listSize;
+
+    private Encoder<Object> encoder;
+    private Decoder<Object> decoder;
+    private MimeType mimeType;
+    private DefaultDataBufferFactory bufferFactory;
+
+    private Product product;
+    private byte[] productBytes;
+    private List<Product> products;
+    private byte[] productsBytes;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        switch (format) {
+            case "json":
+                encoder = new Jackson2JsonEncoder(objectMapper);
+                decoder = new Jackson2JsonDecoder(objectMapper);
+                mimeType = MediaType.APPLICATION_JSON;
+                break;
+            case "smile":
+                ObjectMapper smileMapper = Jackson2ObjectMapperBuilder.smile().build();
+                encoder = new Jackson2SmileEncoder(smileMapper);
+                decoder = new Jackson2SmileDecoder(smileMapper);
+                mimeType = ProductCodecs.APPLICATION_SMILE;
+                break;
+            case "cbor":
+                ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+                encoder = new StreamingCborEncoder(cborMapper);
+                decoder = new StreamingCborDecoder(cborMapper);
+                mimeType = MediaType.APPLICATION_CBOR;
+                break;
+            case "protobuf":
+                encoder = new ProductProtobufEncoder();
+                decoder = new ProductProtobufDecoder();
+                mimeType = ProductCodecs.APPLICATION_PROTOBUF;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        bufferFactory = new DefaultDataBufferFactory();
+
+        product = Product.builder().id("61355b2cbd2d1e3a6a1c1f4e").name("Big Latte").price(2.99).version(3L).build();
+        productBytes = toBytes(encoder.encode(Mono.just(product), bufferFactory, PRODUCT_TYPE, mimeType, HINTS));
+        products = IntStream.range(0, listSize)
+                            .mapToObj(i -> Product.builder().id(String.valueOf(i)).name("Product " + i).price(i * 0.5).version(0L).build())
+                            .collect(Collectors.toList());
+        productsBytes = toBytes(encoder.encode(Flux.fromIterable(products), bufferFactory, PRODUCT_TYPE, mimeType, HINTS));
+    }
+
+    @Benchmark
+    public long encodeProduct() {
+        DataBuffer buffer = encoder.encodeValue(product, bufferFactory, PRODUCT_TYPE, mimeType, HINTS);
+        int size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+
+    @Benchmark
+    public Object decodeProduct() {
+        return decoder.decode(bufferFactory.wrap(productBytes), PRODUCT_TYPE, mimeType, HINTS);
+    }
+
+    @Benchmark
+    public long encodeProductFlux() {
+        return encoder.encode(Flux.fromIterable(products), bufferFactory, PRODUCT_TYPE, mimeType, HINTS)
+                      .map(buffer -> {
+                          int size = buffer.readableByteCount();
+                          DataBufferUtils.release(buffer);
+                          return (long) size;
+                      })
+                      .reduce(0L, Long::sum)
+                      .block();
+    }
+
+    @Benchmark
+    public List<Object> decodeProductFlux() {
+        DataBuffer buffer = bufferFactory.wrap(productsBytes);
+        return decoder.decode(Flux.just(buffer), PRODUCT_TYPE, mimeType, HINTS)
+                      .collectList()
+                      .block();
+    }
+
+    private static byte[] toBytes(Flux<DataBuffer> buffers) {
+        return DataBufferUtils.join(buffers)
+                              .map(buffer -> {
+                                  byte[] bytes = new byte[buffer.readableByteCount()];
+                                  buffer.read(bytes);
+                                  DataBufferUtils.release(buffer);
+                                  return bytes;
+                              })
+                              .block();
+    }
+
+    /**
+     * Prints the encoded size of a single product and of each list size, per format.
+     */
+    public static void main(String[] args) {
+        System.out.printf("%-10s %8s %8s %8s%n", "format", "1", "100", "10000");
+        for (String format : List.of("json", "smile", "cbor", "protobuf")) {
+            ProductCodecBenchmark benchmark = new ProductCodecBenchmark();
+            benchmark.format = format;
+            StringBuilder line = new StringBuilder(String.format("%-10s", format));
+            for (int listSize : List.of(1, 100, 10_000)) {
+                benchmark.listSize = listSize;
+                benchmark.setUp();
+                line.append(String.format(" %8d", listSize == 1 ? benchmark.productBytes.length : benchmark.productsBytes.length));
+            }
+            System.out.println(line);
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.jozsef.webflux.benchmark;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.metrics.HttpConnectionMetrics;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductRepository;
+import com.jozsef.webflux.seed.ProductCatalogGenerator;
+import com.jozsef.webflux.seed.ProductCatalogSeeder;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static com.jozsef.webflux.ProductEventsTestSupport.keepPublishing;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * HTTP/1.1 against h2c for the same load: {@code GET /products/{id}} and {@code GET /functional/products/{id}} at a
+ * fixed concurrency while event streams stay open, reporting requests per second, latency percentiles and the TCP
+ * connections the server accepted, warmup included. Both runs use the JDK client, which opens a connection per
+ * concurrent HTTP/1.1 request and multiplexes HTTP/2 over one. Run with
+ * {@code mvn test -Pbenchmark -Dtest=ProductHttp2LoadTest}; tune with
+ * {@code -Dhttp2.duration=30s -Dhttp2.concurrency=64 -Dhttp2.sse-subscribers=20}. Requests and streams together should
+ * stay below {@code products.http2.max-concurrent-streams}.
+ */
+// one client generating the whole load, which the per-client rate limit would mostly turn away
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "products.rate-limit.enabled=false")
+@Tag("benchmark")
+@Slf4j
+public class ProductHttp2LoadTest {
+
+    private static final String[] BASE_PATHS = {"/products/", "/functional/products/"};
+
+    private static final LoadReport REPORT = new LoadReport("%-9s %11s %11s", "protocol", "conns open", "conns total");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCatalogSeeder productCatalogSeeder;
+
+    @Autowired
+    private ProductEventPublisher productEventPublisher;
+
+    @Autowired
+    private HttpConnectionMetrics httpConnectionMetrics;
+
+    @Value("${http2.duration:20s}")
+    private Duration duration;
+
+    @Value("${http2.warmup:5s}")
+    private Duration warmup;
+
+    @Value("${http2.concurrency:64}")
+    private int concurrency;
+
+    @Value("${http2.sse-subscribers:20}")
+    private int sseSubscribers;
+
+    @Value("${http2.products:1000}")
+    private int products;
+
+    private List<String> seededIds;
+
+    @BeforeEach
+    void setUp() {
+        ProductProperties.Seed seed = new ProductProperties.Seed();
+        seed.setCount(products);
+        log.info("Seeded {}", productRepository.deleteAll().then(productCatalogSeeder.seed(seed)).block());
+
+        ProductCatalogGenerator generator = new ProductCatalogGenerator(seed);
+        seededIds = LongStream.range(0, products).mapToObj(generator::id).collect(Collectors.toList());
+    }
+
+    @ParameterizedTest
+    @EnumSource(HttpClient.Version.class)
+    void loadTest(HttpClient.Version version) throws Exception {
+        // connections of earlier runs may still be open, so connections are counted relative to this run's start
+        int openBefore = httpConnectionMetrics.open();
+        long openedBefore = httpConnectionMetrics.opened();
+        HttpClient client = HttpClient.newBuilder().version(version).build();
+        // one request first: the JDK client upgrades to h2c per connection, and concurrent first requests would each
+        // open and upgrade a connection of their own
+        client.send(HttpRequest.newBuilder(uri(BASE_PATHS[0] + seededIds.get(0))).build(), HttpResponse.BodyHandlers.discarding());
+        run(client, warmup, new LoadReport.Latencies());
+
+        Product product = Product.builder().id(seededIds.get(0)).name("Load").price(1.0).build();
+        Disposable changes = keepPublishing(productEventPublisher, product);
+        List<EventCounter> subscribers = new ArrayList<>();
+        for (int i = 0; i < sseSubscribers; i++) {
+            EventCounter subscriber = new EventCounter();
+            client.sendAsync(HttpRequest.newBuilder(uri(BASE_PATHS[i % BASE_PATHS.length] + "events"))
+                                        .header("Accept", "text/event-stream")
+                                        .build(),
+                    HttpResponse.BodyHandlers.fromLineSubscriber(subscriber));
+            subscribers.add(subscriber);
+        }
+
+        LoadReport.Latencies latencies = new LoadReport.Latencies();
+        long elapsed = run(client, duration, latencies);
+        int openConnections = httpConnectionMetrics.open() - openBefore;
+        long openedConnections = httpConnectionMetrics.opened() - openedBefore;
+
+        changes.dispose();
+        subscribers.forEach(EventCounter::cancel);
+        long events = subscribers.stream().mapToLong(subscriber -> subscriber.events.get()).sum();
+
+        log.info("{} with concurrency {}, {} SSE events to {} subscribers",
+                REPORT.add(latencies, elapsed, version, openConnections, openedConnections), concurrency, events, sseSubscribers);
+        assertThat(latencies.count()).as("requests completed").isPositive();
+    }
+
+    @AfterAll
+    static void summary() {
+        REPORT.summary();
+    }
+
+    private long run(HttpClient client, Duration runFor, LoadReport.Latencies latencies) {
+        return LoadReport.drive(runFor, concurrency, () -> {
+            String path = BASE_PATHS[ThreadLocalRandom.current().nextInt(BASE_PATHS.length)]
+                    + seededIds.get(ThreadLocalRandom.current().nextInt(seededIds.size()));
+            return latencies.time(Mono.fromFuture(() -> client.sendAsync(HttpRequest.newBuilder(uri(path)).build(),
+                                                                          HttpResponse.BodyHandlers.discarding()))
+                                      .handle((response, sink) -> {
+                                          if (response.statusCode() == 200) {
+                                              sink.next(response);
+                                          } else {
+                                              sink.error(new IllegalStateException("Status " + response.statusCode()));
+                                          }
+                                      }));
+        });
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static class EventCounter implements Flow.Subscriber<String> {
+
+        private final AtomicLong events = new AtomicLong();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("data:")) {
+                events.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.warn("SSE subscriber failed", throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        void cancel() {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.jozsef.webflux.benchmark;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.metrics.MongoPoolMetrics;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.repository.ProductRepository;
+import com.jozsef.webflux.seed.ProductCatalogGenerator;
+import com.jozsef.webflux.seed.ProductCatalogSeeder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives a configurable mix of product requests and SSE subscriptions through {@link WebClient} against the app
+ * on a random port and the embedded Mongo, then reports per-operation latency percentiles and throughput.
+ * Run with {@code mvn test -Pbenchmark}; tune with system properties, e.g.
+ * {@code -Dload.duration=60s -Dload.concurrency=128 -Dload.mix=get:80,post:10,put:5,delete:5 -Dload.sse-subscribers=100}.
+ * The report includes the wait for Mongo connections and pool utilization; compare pool settings such as
+ * {@code -Dproducts.mongo.pool.max-size=10} or {@code -Dproducts.mongo.pool.adaptive.enabled=true}.
+ */
+// one client generating the whole load, which the per-client rate limit would mostly turn away
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "products.rate-limit.enabled=false")
+@Tag("benchmark")
+@Slf4j
+public class ProductLoadTest {
+
+    enum Operation {
+        GET, POST, PUT, DELETE
+    }
+
+    private static final LoadReport REPORT = new LoadReport("%-20s %-9s", "path", "operation");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCatalogSeeder productCatalogSeeder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${load.duration:20s}")
+    private Duration duration;
+
+    @Value("${load.warmup:5s}")
+    private Duration warmup;
+
+    @Value("${load.concurrency:64}")
+    private int concurrency;
+
+    @Value("${load.mix:get:70,post:10,put:15,delete:5}")
+    private String mix;
+
+    @Value("${load.products:1000}")
+    private int products;
+
+    @Value("${load.sse-subscribers:20}")
+    private int sseSubscribers;
+
+    private List<String> seededIds;
+
+    @BeforeEach
+    void setUp() {
+        ProductProperties.Seed seed = new ProductProperties.Seed();
+        seed.setCount(products);
+        ProductCatalogSeeder.Report report = productRepository.deleteAll()
+                                                              .then(productCatalogSeeder.seed(seed))
+                                                              .block();
+        log.info("Seeded {}", report);
+
+        ProductCatalogGenerator generator = new ProductCatalogGenerator(seed);
+        seededIds = LongStream.range(0, products).mapToObj(generator::id).collect(Collectors.toList());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/products", "/functional/products"})
+    void loadTest(String basePath) {
+        WebClient client = WebClient.create("http://localhost:" + port + basePath);
+        List<Operation> weightedOperations = parseMix(mix);
+
+        run(client, weightedOperations, warmup, new Stats());
+
+        Stats stats = new Stats();
+        AtomicLong sseEvents = new AtomicLong();
+        List<Disposable> subscriptions = new ArrayList<>();
+        for (int i = 0; i < sseSubscribers; i++) {
+            subscriptions.add(client.get()
+                                    .uri("/events")
+                                    .accept(MediaType.TEXT_EVENT_STREAM)
+                                    .retrieve()
+                                    .bodyToFlux(ProductEvent.class)
+                                    .subscribe(event -> sseEvents.incrementAndGet(), e -> log.warn("SSE subscriber failed", e)));
+        }
+
+        long elapsed = run(client, weightedOperations, duration, stats);
+        subscriptions.forEach(Disposable::dispose);
+
+        report(basePath, stats, elapsed, sseEvents.get());
+        reportMongoPool(basePath);
+        assertTrue(stats.total() > 0, "no request completed");
+    }
+
+    @AfterAll
+    static void summary() {
+        REPORT.summary();
+    }
+
+    private long run(WebClient client, List<Operation> weightedOperations, Duration runFor, Stats stats) {
+        ConcurrentLinkedDeque<String> createdIds = new ConcurrentLinkedDeque<>();
+
+        return LoadReport.drive(runFor, concurrency, () -> {
+            Operation operation = weightedOperations.get(ThreadLocalRandom.current().nextInt(weightedOperations.size()));
+            return stats.latencies.get(operation).time(execute(client, operation, createdIds));
+        });
+    }
+
+    /**
+     * Completes with {@code true} once the response arrived, or empty when there was nothing to send.
+     */
+    private Mono<Boolean> execute(WebClient client, Operation operation, ConcurrentLinkedDeque<String> createdIds) {
+        String id = seededIds.get(ThreadLocalRandom.current().nextInt(seededIds.size()));
+        Product product = Product.builder().name("Load").price(ThreadLocalRandom.current().nextDouble(1, 100)).build();
+
+        switch (operation) {
+            case POST:
+                return client.post().bodyValue(product)
+                             .retrieve().bodyToMono(Product.class)
+                             .doOnNext(created -> createdIds.add(created.getId()))
+                             .thenReturn(true);
+            case PUT:
+                return client.put().uri("/{id}", id).bodyValue(product)
+                             .retrieve().toBodilessEntity().thenReturn(true);
+            case DELETE:
+                // only delete what this run created, so reads and updates keep hitting existing products
+                String createdId = createdIds.poll();
+                return createdId == null
+                        ? Mono.empty()
+                        : client.delete().uri("/{id}", createdId).retrieve().toBodilessEntity().thenReturn(true);
+            default:
+                return client.get().uri("/{id}", id)
+                             .retrieve().toBodilessEntity().thenReturn(true);
+        }
+    }
+
+    private static List<Operation> parseMix(String mix) {
+        List<Operation> weighted = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            Operation operation = Operation.valueOf(parts[0].trim().toUpperCase());
+            for (int i = 0; i < Integer.parseInt(parts[1].trim()); i++) {
+                weighted.add(operation);
+            }
+        }
+        return weighted;
+    }
+
+    private void report(String basePath, Stats stats, long elapsedNanos, long sseEvents) {
+        double seconds = elapsedNanos / 1e9;
+        log.info("{}: {} requests in {} s with concurrency {}, {} req/s, {} SSE events to {} subscribers",
+                basePath, stats.total(), String.format("%.1f", seconds), concurrency,
+                Math.round(stats.total() / seconds), sseEvents, sseSubscribers);
+
+        for (Map.Entry<Operation, LoadReport.Latencies> entry : stats.latencies.entrySet()) {
+            if (entry.getValue().count() > 0) {
+                log.info(REPORT.add(entry.getValue(), elapsedNanos, basePath, entry.getKey()));
+            }
+        }
+    }
+
+    // cumulative since startup, warmup included
+    private void reportMongoPool(String basePath) {
+        for (Timer wait : meterRegistry.find(MongoPoolMetrics.CHECKOUT_WAIT_METRIC).timers()) {
+            log.info("{} Mongo connection wait in {}: count={} mean={}us max={}us", basePath, wait.getId().getTag("queue"),
+                    wait.count(), Math.round(wait.mean(TimeUnit.MICROSECONDS)), Math.round(wait.max(TimeUnit.MICROSECONDS)));
+        }
+        Gauge limit = meterRegistry.find("products.mongo.pool.limit").gauge();
+        log.info("{} Mongo pool utilization={} adaptive limit={}", basePath,
+                String.format("%.2f", meterRegistry.get("products.mongo.pool.utilization").gauge().value()),
+                limit == null ? "off" : String.valueOf((long) limit.value()));
+    }
+
+    private static class Stats {
+
+        private final Map<Operation, LoadReport.Latencies> latencies = new EnumMap<>(Operation.class);
+
+        Stats() {
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LoadReport.Latencies());
+            }
+        }
+
+        long total() {
+            return latencies.values().stream().mapToLong(LoadReport.Latencies::count).sum();
+        }
+
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.jozsef.webflux.benchmark;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductPage;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.repository.InMemoryProductCatalog;
+import com.jozsef.webflux.repository.InMemoryProductRepository;
+import com.jozsef.webflux.repository.ProductQuery;
+import com.jozsef.webflux.repository.ProductRepository;
+import com.jozsef.webflux.repository.ProductRepositoryCustomImpl;
+import com.jozsef.webflux.repository.ProductStore;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+import reactor.core.publisher.Flux;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Read latency of {@link InMemoryProductRepository} against the Mongo-backed {@link ProductRepository} on the same
+ * catalog. The {@code mongo} backend needs a server at {@code -Dbenchmark.mongo.uri} (default localhost) and seeds
+ * a {@code products-benchmark} database. {@link #main} prints the heap a catalog takes in the {@link ProductStore}
+ * and as {@link Product} objects in a map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductRepositoryBenchmark {
+
+    private static final String[] NAMES = {"Big Latte", "Big Decaf", "Green Tea", "Jasmine Tea", "Flat White",
+            "Espresso", "Cortado", "Chai Latte", "Hot Chocolate", "Matcha Latte"};
+
+    @Param({"memory", "mongo"})
+    public String backend;
+
+    @Param({"100000"})
+    public int products;
+
+    private ProductRepository productRepository;
+    private MongoClient mongoClient;
+    private List<String> ids;
+    private ProductQuery priceRange;
+
+    @Setup
+    public void setUp() {
+        ProductProperties productProperties = new ProductProperties();
+        ProductEventPublisher productEventPublisher = new ProductEventPublisher(productProperties);
+
+        if ("mongo".equals(backend)) {
+            productRepository = mongoRepository(productEventPublisher);
+            if (productRepository.count().block() != products) {
+                productRepository.deleteAll().block();
+                productRepository.bulkUpsert(Flux.range(0, products).map(i -> product(String.valueOf(i), i)), 1000, 2)
+                                 .blockLast();
+            }
+        } else {
+            ProductRepository source = ProductRepositoryStub.create(products);
+            InMemoryProductCatalog catalog = new InMemoryProductCatalog(source, productEventPublisher, productProperties);
+            catalog.load();
+            productRepository = new InMemoryProductRepository(source, catalog, productProperties);
+        }
+
+        ids = productRepository.findAll().map(Product::getId).collectList().block();
+        priceRange = ProductQuery.builder().sort("price").minPrice(40.0).maxPrice(60.0).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (mongoClient != null) {
+            mongoClient.close();
+        }
+    }
+
+    @Benchmark
+    public Product findById() {
+        return productRepository.findById(randomId()).block();
+    }
+
+    @Benchmark
+    public List<Product> findAllById() {
+        List<String> batch = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            batch.add(randomId());
+        }
+        return productRepository.findAllById(batch).collectList().block();
+    }
+
+    @Benchmark
+    public ProductPage findPageByPrice() {
+        return productRepository.findPage(priceRange, null, 20).block();
+    }
+
+    @Benchmark
+    public ProductStats priceStats() {
+        return productRepository.priceStats(10).block();
+    }
+
+    private String randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private ProductRepository mongoRepository(ProductEventPublisher productEventPublisher) {
+        mongoClient = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(System.getProperty("benchmark.mongo.uri", "mongodb://localhost:27017")))
+                .applyToClusterSettings(cluster -> cluster.serverSelectionTimeout(5, TimeUnit.SECONDS))
+                .build());
+        ReactiveMongoTemplate mongoTemplate = new ReactiveMongoTemplate(mongoClient, "products-benchmark");
+        mongoTemplate.indexOps(Product.class).ensureIndex(new Index().on("price", Sort.Direction.ASC).on("_id", Sort.Direction.ASC)).block();
+        mongoTemplate.indexOps(Product.class).ensureIndex(new Index().on("name", Sort.Direction.ASC).on("_id", Sort.Direction.ASC)).block();
+
+        return new ReactiveMongoRepositoryFactory(mongoTemplate).getRepository(ProductRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new ProductRepositoryCustomImpl(mongoTemplate, productEventPublisher)));
+    }
+
+    private static Product product(String id, int i) {
+        return new Product(id, NAMES[i % NAMES.length], 1.0 + i % 100, 0L);
+    }
+
+    public static void main(String[] args) {
+        int count = 1_000_000;
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(new ObjectId().toHexString());
+        }
+
+        // names are copied per product, as decoding each document from Mongo would
+        long map = retained(() -> {
+            Map<String, Product> products = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                Product product = product(ids.get(i), i);
+                product.setName(new String(product.getName()));
+                products.put(product.getId(), product);
+            }
+            return products;
+        });
+        long store = retained(() -> {
+            ProductStore products = new ProductStore();
+            for (int i = 0; i < count; i++) {
+                Product product = product(ids.get(i), i);
+                product.setName(new String(product.getName()));
+                products.put(product);
+            }
+            return products;
+        });
+
+        System.out.printf("%,d products, ids shared: HashMap<String, Product> %,d bytes (%d per product), "
+                + "ProductStore %,d bytes (%d per product)%n", count, map, map / count, store, store / count);
+    }
+
+    private static long retained(Supplier<Object> build) {
+        long before = usedAfterGc();
+        Object built = build.get();
+        long retained = usedAfterGc() - before;
+        Reference.reachabilityFence(built);
+        return retained;
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.jozsef.webflux.benchmark;
+
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductRepository;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Map-backed stand-in for the {@link ProductRepository} calls on the request path, so benchmarks measure the web and
+ * service layers rather than Mongo. Any other repository method fails on the call, naming the method, rather than
+ * handing back something the benchmark would silently measure.
+ */
+final class ProductRepositoryStub {
+
+    private ProductRepositoryStub() {
+    }
+
+    static ProductRepository create(int products) {
+        Map<String, Product> store = new ConcurrentHashMap<>();
+        AtomicLong ids = new AtomicLong();
+        for (int i = 0; i < products; i++) {
+            String id = String.valueOf(ids.getAndIncrement());
+            store.put(id, Product.builder().id(id).name("Product " + i).price(1.0 + i % 100).version(0L).build());
+        }
+
+        return (ProductRepository) Proxy.newProxyInstance(ProductRepository.class.getClassLoader(),
+                new Class<?>[]{ProductRepository.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findAll":
+                            return Flux.fromIterable(store.values());
+                        case "streamAll":
+                            return Flux.fromStream(store.values().stream().sorted(Comparator.comparing(Product::getId)));
+                        case "findById":
+                            return Mono.justOrEmpty(store.get((String) args[0]));
+                        case "findAllById":
+                            return (args[0] instanceof Publisher ? Flux.from((Publisher<?>) args[0]) : Flux.fromIterable((Iterable<?>) args[0]))
+                                    .mapNotNull(store::get);
+                        case "existsById":
+                            return Mono.just(store.containsKey((String) args[0]));
+                        case "count":
+                            return Mono.fromSupplier(() -> (long) store.size());
+                        case "insert":
+                        case "save": {
+                            Product product = (Product) args[0];
+                            if (product.getId() == null) {
+                                product.setId(String.valueOf(ids.getAndIncrement()));
+                            }
+                            store.put(product.getId(), product);
+                            return Mono.just(product);
+                        }
+                        case "findAndUpdateById": {
+                            Product changes = (Product) args[1];
+                            return Mono.justOrEmpty(store.computeIfPresent((String) args[0], (id, existing) ->
+                                    new Product(id, changes.getName(), changes.getPrice(), existing.getVersion() + 1)));
+                        }
+                        case "findAndRemoveById":
+                            return Mono.justOrEmpty(store.remove((String) args[0]));
+                        case "deleteById":
+                            return Mono.fromRunnable(() -> store.remove((String) args[0]));
+                        case "deleteAll":
+                            if (args == null || args.length == 0) {
+                                return Mono.fromRunnable(store::clear);
+                            }
+                            throw new UnsupportedOperationException(unsupported(method));
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return ProductRepositoryStub.class.getSimpleName();
+                        default:
+                            throw new UnsupportedOperationException(unsupported(method));
+                    }
+                });
+    }
+
+    private static String unsupported(Method method) {
+        return ProductRepositoryStub.class.getSimpleName() + " does not implement " + method.getName()
+                + Arrays.stream(method.getParameterTypes()).map(Class::getSimpleName).collect(Collectors.joining(", ", "(", ")"));
+    }
+
+}
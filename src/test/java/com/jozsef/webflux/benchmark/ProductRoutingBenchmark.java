@@ -0,0 +1,109 @@
+package com.jozsef.webflux.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jozsef.webflux.SpringWebfluxDemoApplication;
+import com.jozsef.webflux.api.controller.ProductController;
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.handler.ProductHandler;
+import com.jozsef.webflux.repository.ProductBatchLoader;
+import com.jozsef.webflux.repository.ProductRepository;
+import com.jozsef.webflux.search.ProductSearchIndex;
+import com.jozsef.webflux.service.ProductServiceImpl;
+import com.jozsef.webflux.snapshot.ProductCatalogSnapshot;
+import com.jozsef.webflux.stats.ProductPriceSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.reactive.config.EnableWebFlux;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full dispatch of {@code GET /products/{id}} through {@link ProductController} against
+ * {@code GET /functional/products/{id}} through the router function and {@link ProductHandler}, both in memory
+ * without a network hop, so the difference is the routing and handler adaptation cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductRoutingBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+    private HttpHandler annotatedHandler;
+    private HttpHandler functionalHandler;
+
+    @Setup
+    public void setUp() {
+        ProductRepository productRepository = ProductRepositoryStub.create(1_000);
+        ProductProperties productProperties = new ProductProperties();
+        // one request at a time, so batching lookups would only add its window; see ProductBatchLoaderBenchmark
+        productProperties.getBatching().setEnabled(false);
+        ProductEventPublisher productEventPublisher = new ProductEventPublisher(productProperties);
+        ProductSearchIndex productSearchIndex = new ProductSearchIndex(productRepository, productEventPublisher);
+        ProductPriceSummary productPriceSummary = new ProductPriceSummary(productRepository, productEventPublisher,
+                productProperties);
+        ProductCatalogSnapshot productCatalogSnapshot = new ProductCatalogSnapshot(productRepository, productEventPublisher,
+                new ObjectMapper(), productProperties);
+        ProductBatchLoader productBatchLoader = new ProductBatchLoader(productRepository, productProperties,
+                new SimpleMeterRegistry());
+
+        context = new AnnotationConfigApplicationContext();
+        context.register(WebFluxConfig.class);
+        context.registerBean(ProductController.class,
+                () -> new ProductController(new ProductServiceImpl(productRepository, productProperties, productEventPublisher,
+                        productSearchIndex, productPriceSummary, productCatalogSnapshot, productBatchLoader)));
+        context.refresh();
+        annotatedHandler = WebHttpHandlerBuilder.applicationContext(context).build();
+
+        ProductHandler handler = new ProductHandler(productRepository, productProperties, productEventPublisher,
+                productSearchIndex, productPriceSummary, productCatalogSnapshot, productBatchLoader);
+        functionalHandler = RouterFunctions.toHttpHandler(new SpringWebfluxDemoApplication().routes(handler));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String annotatedGetProduct() {
+        return get(annotatedHandler, "/products/42");
+    }
+
+    @Benchmark
+    public String functionalGetProduct() {
+        return get(functionalHandler, "/functional/products/42");
+    }
+
+    private static String get(HttpHandler httpHandler, String path) {
+        MockServerHttpRequest request = MockServerHttpRequest.get(path).accept(MediaType.APPLICATION_JSON).build();
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        httpHandler.handle(request, response).block();
+        return response.getBodyAsString().block();
+    }
+
+    @EnableWebFlux
+    static class WebFluxConfig {
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.jozsef.webflux.benchmark;
+
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.search.ProductSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typeahead latency of {@link ProductSearchIndex} over a synthetic catalog, from a one letter prefix matching a
+ * large share of the catalog to a two word query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSearchBenchmark {
+
+    private static final String[] WORDS = {"big", "small", "latte", "decaf", "green", "tea", "espresso", "mocha",
+            "iced", "oat", "vanilla", "caramel", "flat", "white", "cold", "brew"};
+
+    @Param({"100000"})
+    private int products;
+
+    @Param({"l", "lat", "iced lat"})
+    private String query;
+
+    private ProductSearchIndex productSearchIndex;
+
+    @Setup
+    public void setUp() {
+        productSearchIndex = new ProductSearchIndex(null, null);
+        Random random = new Random(42);
+        for (int i = 0; i < products; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            productSearchIndex.index(Product.builder().id(String.valueOf(i)).name(name).price(1.0).build());
+        }
+    }
+
+    @Benchmark
+    public List<Product> search() {
+        return productSearchIndex.search(query, ProductSearchIndex.DEFAULT_LIMIT);
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.jozsef.webflux.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductBatchLoader;
+import com.jozsef.webflux.repository.ProductRepository;
+import com.jozsef.webflux.search.ProductSearchIndex;
+import com.jozsef.webflux.service.CachingProductService;
+import com.jozsef.webflux.service.ProductServiceImpl;
+import com.jozsef.webflux.snapshot.ProductCatalogSnapshot;
+import com.jozsef.webflux.stats.ProductPriceSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service-layer overhead on top of the repository: reactive assembly, event publishing and the product cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    private ProductServiceImpl productService;
+    private CachingProductService cachingProductService;
+    private Product changes;
+
+    @Setup
+    public void setUp() {
+        ProductProperties productProperties = new ProductProperties();
+        // one lookup at a time, so batching would only add its window; see ProductBatchLoaderBenchmark
+        productProperties.getBatching().setEnabled(false);
+        ProductRepository productRepository = ProductRepositoryStub.create(1_000);
+        ProductEventPublisher productEventPublisher = new ProductEventPublisher(productProperties);
+        productService = new ProductServiceImpl(productRepository, productProperties, productEventPublisher,
+                new ProductSearchIndex(productRepository, productEventPublisher),
+                new ProductPriceSummary(productRepository, productEventPublisher, productProperties),
+                new ProductCatalogSnapshot(productRepository, productEventPublisher, new ObjectMapper(), productProperties),
+                new ProductBatchLoader(productRepository, productProperties, new SimpleMeterRegistry()));
+        cachingProductService = new CachingProductService(productService, productEventPublisher, productProperties,
+                new SimpleMeterRegistry());
+        changes = Product.builder().name("Big Latte").price(3.49).build();
+    }
+
+    @Benchmark
+    public Product getProductById() {
+        return productService.getProductById("42").block();
+    }
+
+    @Benchmark
+    public Product getProductByIdCached() {
+        return cachingProductService.getProductById("42").block();
+    }
+
+    @Benchmark
+    public Product updateProduct() {
+        return productService.updateProduct("42", changes, null).block();
+    }
+
+    @Benchmark
+    public List<Product> getAllProducts() {
+        return productService.getAllProducts().collectList().block();
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.jozsef.webflux.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup time and time to first request of the packaged application, started as a process per run:
+ * <ul>
+ *     <li>{@code jvm}: the executable jar from {@code mvn package}</li>
+ *     <li>{@code lazy}: the same jar with the {@code lazy} profile</li>
+ *     <li>{@code appcds}: the jar and archive from {@code mvn package -Pappcds}</li>
+ * </ul>
+ * Modes that were not built are skipped. "Started" is the wall-clock time until the application logs that it has
+ * started; "first response" until the first {@code GET /products/search} succeeds, polling from process start.
+ * Configure with {@code -Dstartup.modes=jvm,lazy,appcds -Dstartup.runs=5} and pass options to the
+ * application, such as the Mongo URI, with {@code -Dstartup.args="-Dspring.data.mongodb.uri=..."}.
+ */
+public class ProductStartupBenchmark {
+
+    private static final String STARTED = "Started SpringWebfluxDemoApplication in";
+    private static final String FIRST_REQUEST = "/products/search?q=latte";
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    public static void main(String[] args) throws Exception {
+        Path target = Path.of(System.getProperty("startup.target", "target"));
+        String jar = "spring-webflux-rest-demo-0.0.1-SNAPSHOT.jar";
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        modes.put("jvm", List.of(java, "-jar", target.resolve(jar).toString()));
+        modes.put("lazy", List.of(java, "-Dspring.profiles.include=lazy", "-jar", target.resolve(jar).toString()));
+        modes.put("appcds", List.of(java, "-Xshare:on", "-XX:SharedArchiveFile=" + target.resolve("appcds/app.jsa"),
+                "-jar", target.resolve("appcds").resolve(jar).toString()));
+
+        List<String> selected = Arrays.asList(System.getProperty("startup.modes", "jvm,lazy,appcds").split(","));
+        int runs = Integer.getInteger("startup.runs", 5);
+        List<String> appArgs = splitArgs(System.getProperty("startup.args", ""));
+
+        System.out.printf("%-8s %14s %14s %14s%n", "mode", "started ms", "first resp ms", "first req ms");
+        for (String mode : selected) {
+            List<String> command = modes.get(mode);
+            if (command == null) {
+                throw new IllegalArgumentException("Unknown mode " + mode + ", expected one of " + modes.keySet());
+            }
+            Path artifact = Path.of(command.get(command.size() - 1));
+            if (!Files.exists(artifact) || mode.equals("appcds") && !Files.exists(target.resolve("appcds/app.jsa"))) {
+                System.out.printf("%-8s not built, skipped%n", mode);
+                continue;
+            }
+
+            long[] started = new long[runs];
+            long[] firstResponse = new long[runs];
+            long[] firstRequest = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                Timings timings = start(withArgs(command, appArgs));
+                started[run] = timings.startedMillis;
+                firstResponse[run] = timings.firstResponseMillis;
+                firstRequest[run] = timings.firstRequestMillis;
+            }
+            System.out.printf("%-8s %14d %14d %14d   (median of %d, min %d / %d / %d)%n", mode,
+                    median(started), median(firstResponse), median(firstRequest), runs,
+                    Arrays.stream(started).min().orElse(0), Arrays.stream(firstResponse).min().orElse(0),
+                    Arrays.stream(firstRequest).min().orElse(0));
+        }
+    }
+
+    private static Timings start(List<String> command) throws Exception {
+        int port = freePort();
+        List<String> withPort = new ArrayList<>(command);
+        // system properties go before -jar
+        withPort.add(1, "-Dserver.port=" + port);
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(withPort).redirectErrorStream(true).start();
+        try {
+            CompletableFuture<Long> started = new CompletableFuture<>();
+            CompletableFuture.runAsync(() -> drain(process, start, started));
+            URI uri = URI.create("http://localhost:" + port + FIRST_REQUEST);
+
+            Timings timings = new Timings();
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Application exited with " + process.exitValue() + ": " + withPort);
+                }
+                if (System.nanoTime() - start > TIMEOUT.toNanos()) {
+                    throw new IllegalStateException("No response within " + TIMEOUT + ": " + withPort);
+                }
+                long requestStart = System.nanoTime();
+                try {
+                    HttpResponse<Void> response = CLIENT.send(HttpRequest.newBuilder(uri).timeout(TIMEOUT).build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() == 200) {
+                        long now = System.nanoTime();
+                        timings.firstResponseMillis = TimeUnit.NANOSECONDS.toMillis(now - start);
+                        timings.firstRequestMillis = TimeUnit.NANOSECONDS.toMillis(now - requestStart);
+                        break;
+                    }
+                } catch (ConnectException e) {
+                    // not listening yet
+                }
+                Thread.sleep(2);
+            }
+            timings.startedMillis = started.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            return timings;
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static void drain(Process process, long start, CompletableFuture<Long> started) {
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            // keeps reading after the log line, so the application never blocks on a full pipe
+            while ((line = output.readLine()) != null) {
+                if (!started.isDone() && line.contains(STARTED)) {
+                    started.complete(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            }
+            started.completeExceptionally(new IllegalStateException("Application output ended before " + STARTED));
+        } catch (IOException e) {
+            started.completeExceptionally(new UncheckedIOException(e));
+        }
+    }
+
+    private static List<String> withArgs(List<String> command, List<String> appArgs) {
+        List<String> withArgs = new ArrayList<>(command);
+        withArgs.addAll(1, appArgs);
+        return withArgs;
+    }
+
+    private static List<String> splitArgs(String args) {
+        return args.isBlank() ? List.of() : Arrays.asList(args.trim().split("\\s+"));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static class Timings {
+        long startedMillis;
+        long firstResponseMillis;
+        long firstRequestMillis;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.jozsef.webflux.benchmark;
+
+import com.jozsef.webflux.SpringWebfluxDemoApplication;
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.seed.ProductCatalogGenerator;
+import com.jozsef.webflux.seed.ProductCatalogSeeder;
+import io.netty.channel.epoll.Epoll;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Requests per second and latency percentiles of {@code GET /products/{id}} and {@code GET /functional/products/{id}}
+ * with the HTTP server on each transport: the application is started once per transport, in this JVM, against the
+ * embedded Mongo, and a fixed number of keep-alive connections send requests back to back. Transports the platform
+ * lacks are skipped: epoll needs Linux, io_uring also {@code -Pio_uring} and Linux 5.9 or later. Run with
+ * {@code mvn test -Pbenchmark,io_uring -Dtest=ProductTransportLoadTest}; tune with
+ * {@code -Dtransport.duration=30s -Dtransport.concurrency=256}, and pass server settings through as system
+ * properties, e.g. {@code -Dproducts.server.worker-threads=2 -Dproducts.server.backlog=4096}.
+ * <p>
+ * Client and server share the machine, so compare transports within one run rather than absolute numbers.
+ */
+@Tag("benchmark")
+@Slf4j
+public class ProductTransportLoadTest {
+
+    private static final String[] BASE_PATHS = {"/products", "/functional/products"};
+
+    private static final LoadReport REPORT = new LoadReport("%-9s %-20s", "transport", "path");
+
+    private final Duration duration = DurationStyle.detectAndParse(System.getProperty("transport.duration", "20s"));
+    private final Duration warmup = DurationStyle.detectAndParse(System.getProperty("transport.warmup", "5s"));
+    private final int concurrency = Integer.getInteger("transport.concurrency", 64);
+    private final int products = Integer.getInteger("transport.products", 1000);
+
+    @ParameterizedTest
+    @EnumSource(value = ProductProperties.Server.Transport.class, names = {"NIO", "EPOLL", "IO_URING"})
+    void loadTest(ProductProperties.Server.Transport transport) {
+        assumeTrue(available(transport), transport + " transport is not available here");
+
+        // one client generating the whole load, which the per-client rate limit would mostly turn away
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringWebfluxDemoApplication.class)
+                .properties("server.port=0", "products.server.transport=" + transport, "products.rate-limit.enabled=false")
+                .run()) {
+            List<String> ids = seed(context);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            ConnectionProvider connections = ConnectionProvider.create("transport-load", concurrency);
+            try {
+                for (String basePath : BASE_PATHS) {
+                    WebClient client = WebClient.builder()
+                                                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                                                .baseUrl("http://localhost:" + port + basePath)
+                                                .build();
+                    run(client, ids, warmup, new LoadReport.Latencies());
+
+                    LoadReport.Latencies latencies = new LoadReport.Latencies();
+                    long elapsed = run(client, ids, duration, latencies);
+                    log.info("{} with concurrency {}", REPORT.add(latencies, elapsed, transport.name().toLowerCase(), basePath),
+                            concurrency);
+                    assertTrue(latencies.count() > 0, "no request completed");
+                }
+            } finally {
+                connections.dispose();
+            }
+        }
+    }
+
+    @AfterAll
+    static void summary() {
+        REPORT.summary();
+    }
+
+    private List<String> seed(ConfigurableApplicationContext context) {
+        ProductProperties.Seed seed = new ProductProperties.Seed();
+        seed.setCount(products);
+        // idempotent, so it simply completes what the startup seeding began
+        log.info("Seeded {}", context.getBean(ProductCatalogSeeder.class).seed(seed).block());
+
+        ProductCatalogGenerator generator = new ProductCatalogGenerator(seed);
+        return LongStream.range(0, products).mapToObj(generator::id).collect(Collectors.toList());
+    }
+
+    private long run(WebClient client, List<String> ids, Duration runFor, LoadReport.Latencies latencies) {
+        return LoadReport.drive(runFor, concurrency, () -> latencies.time(
+                client.get().uri("/{id}", ids.get(ThreadLocalRandom.current().nextInt(ids.size())))
+                      .retrieve().toBodilessEntity()));
+    }
+
+    private static boolean available(ProductProperties.Server.Transport transport) {
+        switch (transport) {
+            case EPOLL:
+                return Epoll.isAvailable();
+            case IO_URING:
+                return ioUringAvailable();
+            default:
+                return true;
+        }
+    }
+
+    // by reflection, as the io_uring transport is only on the class path with -Pio_uring
+    private static boolean ioUringAvailable() {
+        String ioUring = "io.netty.incubator.channel.uring.IOUring";
+        if (!ClassUtils.isPresent(ioUring, null)) {
+            return false;
+        }
+        try {
+            return (Boolean) ClassUtils.forName(ioUring, null).getMethod("isAvailable").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+}
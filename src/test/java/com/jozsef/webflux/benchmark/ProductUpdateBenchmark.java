@@ -0,0 +1,104 @@
+package com.jozsef.webflux.benchmark;
+
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Compares the former read-then-save update against the single findAndModify round trip under concurrent updates
+ * of a small set of hot products. Read-then-save loses the version check to concurrent writers and retries, as a
+ * caller of it would have to. Run with {@code mvn test -Pbenchmark}.
+ */
+@SpringBootTest
+@Tag("benchmark")
+@Slf4j
+public class ProductUpdateBenchmark {
+
+    private static final int UPDATES = 5_000;
+    private static final int CONCURRENCY = 64;
+    private static final int HOT_PRODUCTS = 10;
+    private static final int MAX_RETRIES = 1_000;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private List<Product> products;
+
+    @BeforeEach
+    void setUp() {
+        products = Flux.range(0, HOT_PRODUCTS)
+                       .flatMap(i -> productRepository.insert(Product.builder().name("Hot " + i).price(1.0).build()))
+                       .collectList()
+                       .block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        // the embedded Mongo is shared by every test in the run
+        Flux.fromIterable(products)
+            .flatMap(product -> productRepository.findAndRemoveById(product.getId(), null))
+            .blockLast();
+    }
+
+    @Test
+    void benchmarkConcurrentUpdates() {
+        // warm up both paths before measuring
+        run(this::findThenSave);
+        run(this::findAndModify);
+
+        report("findById + save", run(this::findThenSave));
+        report("findAndModify", run(this::findAndModify));
+    }
+
+    private Mono<Product> findThenSave(String id, Product changes) {
+        return productRepository.findById(id)
+                                .flatMap(existingProduct -> {
+                                    existingProduct.setName(changes.getName());
+                                    existingProduct.setPrice(changes.getPrice());
+                                    return productRepository.save(existingProduct);
+                                })
+                                .retryWhen(Retry.max(MAX_RETRIES)
+                                                .filter(OptimisticLockingFailureException.class::isInstance)
+                                                .doBeforeRetry(signal -> retries.incrementAndGet()));
+    }
+
+    private Mono<Product> findAndModify(String id, Product changes) {
+        return productRepository.findAndUpdateById(id, changes, null);
+    }
+
+    private long run(BiFunction<String, Product, Mono<Product>> update) {
+        retries.set(0);
+        long start = System.nanoTime();
+        Flux.range(0, UPDATES)
+            .flatMap(i -> {
+                Product product = products.get(i % HOT_PRODUCTS);
+                return update.apply(product.getId(), Product.builder().name(product.getName()).price((double) i).build());
+            }, CONCURRENCY)
+            .blockLast();
+        return System.nanoTime() - start;
+    }
+
+    private void report(String name, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        log.info("{}: {} updates with concurrency {} in {} ms, {} updates/s, {} us mean latency, {} version conflicts retried",
+                name, UPDATES, CONCURRENCY, Math.round(seconds * 1000), Math.round(UPDATES / seconds),
+                Math.round(elapsedNanos / 1e3 * CONCURRENCY / UPDATES), retries.get());
+    }
+
+}
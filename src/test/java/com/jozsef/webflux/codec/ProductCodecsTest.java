@@ -0,0 +1,124 @@
+package com.jozsef.webflux.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.CodedOutputStream;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ProductCodecsTest {
+
+    private static final ResolvableType PRODUCT = ResolvableType.forClass(Product.class);
+    private static final ResolvableType EVENT = ResolvableType.forClass(ProductEvent.class);
+
+    private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+    private final ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+
+    private final List<Product> products = List.of(
+            Product.builder().id("1").name("Big Latte").price(2.99).version(0L).build(),
+            Product.builder().id("2").name("Big Decaf").build()
+    );
+
+    @Test
+    void testProtobufRoundTrip() {
+        ProductEvent event = ProductEvent.builder()
+                                         .eventId(7L)
+                                         .eventType(ProductEvent.Type.UPDATE)
+                                         .productId("1")
+                                         .product(products.get(0))
+                                         .build();
+        ProductEvent deleteAll = ProductEvent.builder().eventId(8L).eventType(ProductEvent.Type.DELETE).build();
+
+        Flux<DataBuffer> encoded = new ProductProtobufEncoder().encode(Flux.just(event, deleteAll), bufferFactory, EVENT,
+                ProductCodecs.APPLICATION_PROTOBUF, Collections.emptyMap());
+
+        StepVerifier.create(new ProductProtobufDecoder().decode(encoded, EVENT, ProductCodecs.APPLICATION_PROTOBUF,
+                            Collections.emptyMap()))
+                    .expectNext(event, deleteAll)
+                    .verifyComplete();
+    }
+
+    @Test
+    void testProtobufSkipsUnknownFields() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        out.writeString(1, "1");
+        out.writeString(9, "added in a later schema");
+        out.writeDouble(3, 2.99);
+        out.flush();
+
+        Product product = (Product) new ProductProtobufDecoder().decode(bufferFactory.wrap(bytes.toByteArray()), PRODUCT,
+                ProductCodecs.APPLICATION_PROTOBUF, Collections.emptyMap());
+
+        assertEquals(Product.builder().id("1").price(2.99).build(), product);
+    }
+
+    @Test
+    void testCborFluxIsOneArray() throws Exception {
+        byte[] encoded = join(new StreamingCborEncoder(cborMapper).encode(Flux.fromIterable(products), bufferFactory,
+                PRODUCT, MediaType.APPLICATION_CBOR, Collections.emptyMap()));
+
+        List<Product> decoded = List.of(cborMapper.readValue(encoded, Product[].class));
+        assertEquals(products, decoded);
+    }
+
+    @Test
+    void testCborEmptyFluxIsEmptyArray() {
+        byte[] encoded = join(new StreamingCborEncoder(cborMapper).encode(Flux.empty(), bufferFactory, PRODUCT,
+                MediaType.APPLICATION_CBOR, Collections.emptyMap()));
+
+        assertArrayEquals(new byte[]{(byte) 0x80}, encoded);
+    }
+
+    @Test
+    void testCborSequenceRoundTrip() {
+        StreamingCborEncoder encoder = new StreamingCborEncoder(cborMapper);
+        Flux<DataBuffer> encoded = encoder.encode(Flux.fromIterable(products), bufferFactory, PRODUCT,
+                ProductCodecs.APPLICATION_CBOR_SEQ, Collections.emptyMap());
+
+        StepVerifier.create(new StreamingCborDecoder(cborMapper).decode(encoded, PRODUCT,
+                            ProductCodecs.APPLICATION_CBOR_SEQ, Collections.emptyMap()))
+                    .expectNextSequence(products)
+                    .verifyComplete();
+        assertThat(encoder.getStreamingMediaTypes()).containsExactly(ProductCodecs.APPLICATION_CBOR_SEQ);
+    }
+
+    @Test
+    void testSelect() {
+        assertEquals(MediaType.APPLICATION_JSON, ProductCodecs.select(List.of(), ProductCodecs.PRODUCT_MEDIA_TYPES));
+        assertEquals(MediaType.APPLICATION_JSON, ProductCodecs.select(List.of(MediaType.ALL), ProductCodecs.PRODUCT_MEDIA_TYPES));
+        assertEquals(ProductCodecs.APPLICATION_PROTOBUF, ProductCodecs.select(
+                MediaType.parseMediaTypes("application/json;q=0.5, application/x-protobuf"), ProductCodecs.PRODUCT_MEDIA_TYPES));
+        assertEquals(MediaType.APPLICATION_NDJSON, ProductCodecs.select(
+                List.of(MediaType.TEXT_PLAIN), ProductCodecs.STREAM_MEDIA_TYPES));
+    }
+
+    private static byte[] join(Flux<DataBuffer> buffers) {
+        return DataBufferUtils.join(buffers)
+                              .map(buffer -> {
+                                  byte[] bytes = new byte[buffer.readableByteCount()];
+                                  buffer.read(bytes);
+                                  DataBufferUtils.release(buffer);
+                                  return bytes;
+                              })
+                              .block();
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.jozsef.webflux.event;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.ProductEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ProductEventPublisherTest {
+
+    private ProductProperties productProperties;
+
+    private ProductEventPublisher productEventPublisher;
+
+    @BeforeEach
+    void setUp() {
+        productProperties = new ProductProperties();
+        productProperties.getEvents().setBufferSize(2);
+        productEventPublisher = new ProductEventPublisher(productProperties);
+    }
+
+    @Test
+    void testEventsAreMulticast() {
+        StepVerifier.create(productEventPublisher.events().take(1).zipWith(productEventPublisher.events().take(1)))
+                    .then(() -> productEventPublisher.publish(ProductEvent.Type.DELETE, "1", null))
+                    .expectNextMatches(pair -> pair.getT1().equals(pair.getT2()) && "1".equals(pair.getT1().getProductId()))
+                    .verifyComplete();
+    }
+
+    @Test
+    void testSlowSubscriberKeepsLatestEvents() {
+        StepVerifier.create(productEventPublisher.events(), 0)
+                    .then(() -> {
+                        for (int i = 0; i < 5; i++) {
+                            productEventPublisher.publish(ProductEvent.Type.DELETE, String.valueOf(i), null);
+                        }
+                    })
+                    .thenRequest(2)
+                    .consumeNextWith(event -> assertEquals("3", event.getProductId()))
+                    .consumeNextWith(event -> assertEquals("4", event.getProductId()))
+                    .thenCancel()
+                    .verify();
+    }
+
+    @Test
+    void testBufferDepthTracksSlowSubscriber() {
+        StepVerifier.create(productEventPublisher.events(), 0)
+                    .then(() -> {
+                        assertEquals(1, productEventPublisher.subscriberCount());
+                        for (int i = 0; i < 5; i++) {
+                            productEventPublisher.publish(ProductEvent.Type.DELETE, String.valueOf(i), null);
+                        }
+                        assertEquals(2, productEventPublisher.maxBufferedEvents());
+                        assertEquals(3, productEventPublisher.droppedEvents());
+                    })
+                    .thenRequest(1)
+                    .expectNextCount(1)
+                    .then(() -> assertEquals(1, productEventPublisher.bufferedEvents()))
+                    .thenCancel()
+                    .verify();
+
+        assertEquals(0, productEventPublisher.subscriberCount());
+    }
+
+    @Test
+    void testConcurrentPublishersEmitInIdOrder() throws InterruptedException {
+        productProperties.getEvents().setBufferSize(4_000);
+        productEventPublisher = new ProductEventPublisher(productProperties);
+        List<Long> ids = new ArrayList<>();
+        productEventPublisher.events().subscribe(event -> ids.add(event.getEventId()));
+
+        Thread[] publishers = new Thread[4];
+        for (int t = 0; t < publishers.length; t++) {
+            publishers[t] = new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    productEventPublisher.publish(ProductEvent.Type.DELETE, String.valueOf(i), null);
+                }
+            });
+            publishers[t].start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+
+        assertEquals(LongStream.range(0, 4_000).boxed().collect(Collectors.toList()), ids);
+    }
+
+    @Test
+    void testEventPublishedByASubscriberFollowsTheCurrentOne() {
+        List<String> productIds = new ArrayList<>();
+        productEventPublisher.events().subscribe(event -> {
+            productIds.add(event.getProductId());
+            if ("1".equals(event.getProductId())) {
+                productEventPublisher.publish(ProductEvent.Type.DELETE, "2", null);
+            }
+        });
+
+        productEventPublisher.publish(ProductEvent.Type.DELETE, "1", null);
+
+        assertEquals(List.of("1", "2"), productIds);
+    }
+
+    @Test
+    void testLocalChangesIgnoredForChangeStreamSource() {
+        productProperties.getEvents().setSource(ProductProperties.Events.Source.CHANGE_STREAM);
+
+        StepVerifier.create(productEventPublisher.events(), 1)
+                    .then(() -> {
+                        productEventPublisher.publishLocal(ProductEvent.Type.DELETE, "1", null);
+                        productEventPublisher.publish(ProductEvent.Type.DELETE, "2", null);
+                    })
+                    .consumeNextWith(event -> assertEquals("2", event.getProductId()))
+                    .thenCancel()
+                    .verify();
+    }
+
+    @Test
+    void testReplayAfterLastEventId() {
+        productProperties.getEvents().getReplay().setSize(4);
+        productEventPublisher = new ProductEventPublisher(productProperties);
+        for (int i = 0; i < 3; i++) {
+            productEventPublisher.publish(ProductEvent.Type.DELETE, String.valueOf(i), null);
+        }
+
+        StepVerifier.create(productEventPublisher.events(0L))
+                    .consumeNextWith(event -> assertEquals(1L, event.getEventId()))
+                    .consumeNextWith(event -> assertEquals(2L, event.getEventId()))
+                    .then(() -> productEventPublisher.publish(ProductEvent.Type.DELETE, "3", null))
+                    .consumeNextWith(event -> assertEquals(3L, event.getEventId()))
+                    .thenCancel()
+                    .verify();
+    }
+
+    @Test
+    void testResyncWhenGapWasEvicted() {
+        productProperties.getEvents().getReplay().setSize(2);
+        productEventPublisher = new ProductEventPublisher(productProperties);
+        for (int i = 0; i < 5; i++) {
+            productEventPublisher.publish(ProductEvent.Type.DELETE, String.valueOf(i), null);
+        }
+
+        StepVerifier.create(productEventPublisher.events(1L))
+                    .consumeNextWith(event -> {
+                        assertEquals(ProductEvent.Type.RESYNC, event.getEventType());
+                        assertEquals(4L, event.getEventId());
+                    })
+                    .thenCancel()
+                    .verify();
+    }
+
+    @Test
+    void testResyncBeforeAnyEventHasNoId() {
+        StepVerifier.create(productEventPublisher.events(3L))
+                    .consumeNextWith(event -> {
+                        assertEquals(ProductEvent.Type.RESYNC, event.getEventType());
+                        assertNull(event.getEventId());
+                    })
+                    .then(() -> productEventPublisher.publish(ProductEvent.Type.DELETE, "0", null))
+                    .consumeNextWith(event -> assertEquals(0L, event.getEventId()))
+                    .thenCancel()
+                    .verify();
+    }
+
+    @Test
+    void testReplayBufferSurvivesRestart(@TempDir Path dir) {
+        productProperties.getEvents().getReplay().setFile(dir.resolve("events.ndjson"));
+        productEventPublisher = new ProductEventPublisher(productProperties);
+        productEventPublisher.publish(ProductEvent.Type.DELETE, "0", null);
+        productEventPublisher.publish(ProductEvent.Type.DELETE, "1", null);
+        productEventPublisher.save();
+
+        ProductEventPublisher restarted = new ProductEventPublisher(productProperties);
+
+        StepVerifier.create(restarted.events(0L))
+                    .consumeNextWith(event -> assertEquals("1", event.getProductId()))
+                    .then(() -> restarted.publish(ProductEvent.Type.DELETE, "2", null))
+                    .consumeNextWith(event -> assertEquals(2L, event.getEventId()))
+                    .thenCancel()
+                    .verify();
+    }
+
+}
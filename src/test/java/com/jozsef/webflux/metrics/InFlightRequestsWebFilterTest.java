@@ -0,0 +1,61 @@
+package com.jozsef.webflux.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InFlightRequestsWebFilterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private InFlightRequestsWebFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new InFlightRequestsWebFilter(meterRegistry);
+    }
+
+    private double inFlight() {
+        Gauge gauge = meterRegistry.get("http.server.requests.in.flight").gauge();
+        return gauge.value();
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/products"));
+    }
+
+    @Test
+    void testCountsRequestUntilItCompletes() {
+        StepVerifier.create(filter.filter(exchange(), exchange -> Mono.fromRunnable(() -> assertEquals(1, inFlight()))))
+                    .verifyComplete();
+
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void testBackToZeroAfterError() {
+        StepVerifier.create(filter.filter(exchange(), exchange -> Mono.error(new IllegalStateException("handler failed"))))
+                    .verifyError(IllegalStateException.class);
+
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void testBackToZeroAfterCancellation() {
+        Disposable request = filter.filter(exchange(), exchange -> Mono.never()).subscribe();
+        assertEquals(1, inFlight());
+
+        request.dispose();
+        assertEquals(0, inFlight());
+    }
+
+}
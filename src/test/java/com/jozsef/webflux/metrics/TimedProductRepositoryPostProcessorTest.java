@@ -0,0 +1,92 @@
+package com.jozsef.webflux.metrics;
+
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TimedProductRepositoryPostProcessorTest {
+
+    private final Product latte = Product.builder().id("1").name("Big Latte").price(2.99).build();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ProductRepository target = mock(ProductRepository.class);
+        when(target.findById("1")).thenReturn(Mono.just(latte));
+        when(target.findAll()).thenReturn(Flux.error(new IllegalStateException("no primary")));
+        when(target.streamAll(10)).thenReturn(Flux.never());
+
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        TimedProductRepositoryPostProcessor postProcessor =
+                new TimedProductRepositoryPostProcessor(beanFactory.getBeanProvider(MeterRegistry.class));
+        productRepository = (ProductRepository) postProcessor.postProcessAfterInitialization(target, "productRepository");
+    }
+
+    private Timer timer(String method, String outcome) {
+        return meterRegistry.find(TimedProductRepositoryPostProcessor.METRIC_NAME)
+                            .tag("method", method)
+                            .tag("outcome", outcome)
+                            .timer();
+    }
+
+    @Test
+    void testOutcomesAreTaggedPerMethod() {
+        StepVerifier.create(productRepository.findById("1")).expectNext(latte).verifyComplete();
+        StepVerifier.create(productRepository.findAll()).verifyError(IllegalStateException.class);
+        StepVerifier.create(productRepository.streamAll(10)).thenCancel().verify();
+
+        assertEquals(1, timer("findById", "SUCCESS").count());
+        assertEquals(1, timer("findAll", "ERROR").count());
+        assertEquals(1, timer("streamAll", "CANCELLED").count());
+        assertNull(timer("findById", "ERROR"));
+    }
+
+    @Test
+    void testTimedFromSubscriptionNotAssembly() {
+        Mono<Product> lookup = productRepository.findById("1");
+        assertNull(timer("findById", "SUCCESS"));
+
+        lookup.block();
+        lookup.block();
+        assertEquals(2, timer("findById", "SUCCESS").count());
+    }
+
+    @Test
+    void testTimerIsReused() {
+        productRepository.findById("1").block();
+        Timer first = timer("findById", "SUCCESS");
+        productRepository.findById("1").block();
+
+        assertSame(first, timer("findById", "SUCCESS"));
+        assertEquals(1, meterRegistry.find(TimedProductRepositoryPostProcessor.METRIC_NAME).timers().size());
+    }
+
+    @Test
+    void testOtherBeansAreLeftAlone() {
+        TimedProductRepositoryPostProcessor postProcessor = new TimedProductRepositoryPostProcessor(
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        Object other = new Object();
+
+        assertSame(other, postProcessor.postProcessAfterInitialization(other, "other"));
+    }
+
+}
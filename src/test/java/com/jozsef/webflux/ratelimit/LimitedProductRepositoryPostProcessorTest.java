@@ -0,0 +1,76 @@
+package com.jozsef.webflux.ratelimit;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LimitedProductRepositoryPostProcessorTest {
+
+    private final Product latte = Product.builder().id("1").name("Big Latte").price(2.99).build();
+
+    private MongoConnectionLimiter limiter;
+
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getMongo().getPool().setMaxSize(1);
+        productProperties.getMongo().getPool().getAdaptive().setMinSize(1);
+        productProperties.getMongo().getPool().getAdaptive().setInitialSize(1);
+        limiter = new MongoConnectionLimiter(productProperties, new MongoPoolWaitQueue(), new SimpleMeterRegistry(),
+                Schedulers.immediate());
+
+        ProductRepository target = mock(ProductRepository.class);
+        when(target.findById("1")).thenReturn(Mono.just(latte));
+        when(target.count()).thenReturn(Mono.never());
+        when(target.streamAll(10)).thenReturn(Flux.concat(Flux.just(latte), Flux.never()));
+
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("mongoConnectionLimiter", limiter);
+        LimitedProductRepositoryPostProcessor postProcessor =
+                new LimitedProductRepositoryPostProcessor(beanFactory.getBeanProvider(MongoConnectionLimiter.class));
+        productRepository = (ProductRepository) postProcessor.postProcessAfterInitialization(target, "productRepository");
+    }
+
+    @Test
+    void testSingleResultsWaitForAConnection() {
+        Disposable counting = productRepository.count().subscribe();
+        assertEquals(1, limiter.inUse());
+
+        List<Product> found = new ArrayList<>();
+        productRepository.findById("1").subscribe(found::add);
+        assertEquals(List.of(), found);
+
+        counting.dispose();
+        assertEquals(List.of(latte), found);
+        assertEquals(0, limiter.inUse());
+    }
+
+    @Test
+    void testStreamsHoldNoPermit() {
+        List<Product> streamed = new ArrayList<>();
+        Disposable export = productRepository.streamAll(10).subscribe(streamed::add);
+
+        assertEquals(List.of(latte), streamed);
+        assertEquals(0, limiter.inUse());
+        assertEquals(latte, productRepository.findById("1").block());
+        export.dispose();
+    }
+
+}
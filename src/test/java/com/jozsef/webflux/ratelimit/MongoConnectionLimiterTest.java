@@ -0,0 +1,124 @@
+package com.jozsef.webflux.ratelimit;
+
+import com.jozsef.webflux.config.ProductProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MongoConnectionLimiterTest {
+
+    private ProductProperties productProperties;
+
+    private MongoPoolWaitQueue mongoPoolWaitQueue;
+
+    private MongoConnectionLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        productProperties = new ProductProperties();
+        productProperties.getMongo().getPool().setMaxSize(10);
+        ProductProperties.Mongo.Pool.Adaptive adaptive = productProperties.getMongo().getPool().getAdaptive();
+        adaptive.setMinSize(1);
+        adaptive.setInitialSize(2);
+        adaptive.setTargetWait(Duration.ofMillis(1));
+        mongoPoolWaitQueue = new MongoPoolWaitQueue();
+        limiter = new MongoConnectionLimiter(productProperties, mongoPoolWaitQueue, new SimpleMeterRegistry(), Schedulers.immediate());
+    }
+
+    @Test
+    void testOperationsOverTheLimitWaitInOrder() {
+        List<Sinks.Empty<Void>> operations = new ArrayList<>();
+        List<Integer> started = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Sinks.Empty<Void> operation = Sinks.empty();
+            operations.add(operation);
+            int index = i;
+            limiter.withConnection(operation.asMono().doOnSubscribe(s -> started.add(index))).subscribe();
+        }
+
+        assertEquals(List.of(0, 1), started);
+        assertEquals(2, mongoPoolWaitQueue.size());
+
+        operations.get(1).tryEmitEmpty();
+        assertEquals(List.of(0, 1, 2), started);
+        operations.get(0).tryEmitError(new IllegalStateException());
+        assertEquals(List.of(0, 1, 2, 3), started);
+        assertEquals(0, mongoPoolWaitQueue.size());
+
+        operations.get(2).tryEmitEmpty();
+        operations.get(3).tryEmitEmpty();
+        assertEquals(0, limiter.inUse());
+    }
+
+    @Test
+    void testCancelledOperationsFreeTheirConnection() {
+        Disposable running = limiter.withConnection(Mono.never()).subscribe();
+        Disposable alsoRunning = limiter.withConnection(Mono.never()).subscribe();
+        Disposable waiting = limiter.withConnection(Mono.never()).subscribe();
+        assertEquals(1, mongoPoolWaitQueue.size());
+
+        waiting.dispose();
+        assertEquals(0, mongoPoolWaitQueue.size());
+        running.dispose();
+        alsoRunning.dispose();
+        assertEquals(0, limiter.inUse());
+
+        assertEquals("done", limiter.withConnection(Mono.just("done")).block());
+    }
+
+    @Test
+    void testLimitGrowsWhileOperationsWaitAndShrinksWhenUnused() throws InterruptedException {
+        List<Disposable> operations = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            operations.add(limiter.withConnection(Mono.never()).subscribe());
+        }
+        Thread.sleep(5);
+
+        limiter.adjust();
+        assertEquals(3, limiter.limit());
+        assertEquals(3, limiter.inUse());
+        limiter.adjust();
+        assertEquals(4, limiter.limit());
+        assertEquals(4, limiter.inUse());
+
+        operations.forEach(Disposable::dispose);
+        for (int i = 0; i < 10; i++) {
+            limiter.adjust();
+        }
+        assertEquals(1, limiter.limit());
+    }
+
+    @Test
+    void testLimitNeverExceedsThePoolSize() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            limiter.withConnection(Mono.never()).subscribe();
+        }
+        Thread.sleep(5);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.adjust();
+        }
+        assertEquals(10, limiter.limit());
+        assertEquals(10, limiter.inUse());
+    }
+
+    @Test
+    void testInitialSizeAbovePoolSizeIsRejected() {
+        productProperties.getMongo().getPool().getAdaptive().setInitialSize(11);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new MongoConnectionLimiter(productProperties, mongoPoolWaitQueue, new SimpleMeterRegistry()));
+    }
+
+}
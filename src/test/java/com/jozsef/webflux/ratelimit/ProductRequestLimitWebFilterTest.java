@@ -0,0 +1,187 @@
+package com.jozsef.webflux.ratelimit;
+
+import com.jozsef.webflux.config.ProductProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProductRequestLimitWebFilterTest {
+
+    private ProductProperties productProperties;
+
+    private MongoPoolWaitQueue mongoPoolWaitQueue;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private Sinks.Empty<Void> slowRequests;
+
+    @BeforeEach
+    void setUp() {
+        productProperties = new ProductProperties();
+        productProperties.getRateLimit().setRequestsPerSecond(1);
+        productProperties.getRateLimit().setBurst(10);
+        mongoPoolWaitQueue = new MongoPoolWaitQueue();
+        meterRegistry = new SimpleMeterRegistry();
+        slowRequests = Sinks.empty();
+    }
+
+    private WebTestClient testClient() {
+        ProductRequestLimitWebFilter filter = new ProductRequestLimitWebFilter(productProperties, mongoPoolWaitQueue, meterRegistry);
+        return WebTestClient.bindToWebHandler(exchange -> exchange.getRequest().getPath().value().endsWith("/slow")
+                                    ? slowRequests.asMono()
+                                    : Mono.empty())
+                            .webFilter(filter)
+                            .build();
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get(ProductRequestLimitWebFilter.REJECTED_METRIC).tag("reason", reason).counter().count();
+    }
+
+    @Test
+    void testClientOverItsRateIsRejected() {
+        WebTestClient testClient = testClient();
+
+        for (int i = 0; i < 10; i++) {
+            testClient.get().uri("/products").exchange().expectStatus().isOk();
+        }
+        testClient.get()
+                  .uri("/products")
+                  .exchange()
+                  .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                  .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+
+        assertEquals(1, rejected("rate_limited"));
+    }
+
+    @Test
+    void testClientsAreLimitedSeparately() {
+        WebTestClient testClient = testClient();
+
+        for (int i = 0; i < 10; i++) {
+            testClient.get().uri("/functional/products").header("X-API-Key", "a").exchange().expectStatus().isOk();
+        }
+        testClient.get().uri("/functional/products").header("X-API-Key", "a").exchange()
+                  .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        testClient.get().uri("/functional/products").header("X-API-Key", "b").exchange()
+                  .expectStatus().isOk();
+    }
+
+    @Test
+    void testWritesCostMore() {
+        WebTestClient testClient = testClient();
+
+        testClient.delete().uri("/products").exchange().expectStatus().isOk();
+        testClient.delete().uri("/products").exchange().expectStatus().isOk();
+        testClient.delete()
+                  .uri("/products")
+                  .exchange()
+                  .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                  .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "5");
+    }
+
+    @Test
+    void testOtherPathsAreNotLimited() {
+        WebTestClient testClient = testClient();
+
+        for (int i = 0; i < 20; i++) {
+            testClient.get().uri("/actuator/health").exchange().expectStatus().isOk();
+        }
+    }
+
+    @Test
+    void testShedWhileMongoPoolQueueIsLong() {
+        productProperties.getLoadShedding().setMaxMongoPoolWaitQueue(1);
+        WebTestClient testClient = testClient();
+
+        mongoPoolWaitQueue.connectionCheckOutStarted(null);
+        mongoPoolWaitQueue.connectionCheckOutStarted(null);
+        testClient.get().uri("/products").exchange().expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        mongoPoolWaitQueue.connectionCheckedOut(null);
+        testClient.get().uri("/products").exchange().expectStatus().isOk();
+        assertEquals(1, rejected("mongo_pool"));
+    }
+
+    @Test
+    void testShedOverConcurrencyLimit() {
+        productProperties.getRateLimit().setEnabled(false);
+        productProperties.getLoadShedding().setMaxConcurrentRequests(2);
+        ProductRequestLimitWebFilter filter = new ProductRequestLimitWebFilter(productProperties, mongoPoolWaitQueue, meterRegistry);
+        WebFilterChain slowChain = exchange -> slowRequests.asMono();
+
+        Disposable first = filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/products")), slowChain).subscribe();
+        Disposable second = filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/products")), slowChain).subscribe();
+        assertEquals(2, filter.inFlight());
+
+        MockServerWebExchange shed = MockServerWebExchange.from(MockServerHttpRequest.get("/products"));
+        filter.filter(shed, slowChain).block();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, shed.getResponse().getStatusCode());
+
+        slowRequests.tryEmitEmpty();
+        assertEquals(0, filter.inFlight());
+        assertEquals(1, rejected("concurrency"));
+        assertTrue(first.isDisposed() && second.isDisposed());
+    }
+
+    @Test
+    void testStreamsHaveTheirOwnBudget() {
+        productProperties.getRateLimit().setEnabled(false);
+        productProperties.getLoadShedding().setMaxConcurrentRequests(1);
+        productProperties.getLoadShedding().setMaxConcurrentStreams(2);
+        ProductRequestLimitWebFilter filter = new ProductRequestLimitWebFilter(productProperties, mongoPoolWaitQueue, meterRegistry);
+        WebFilterChain slowChain = exchange -> slowRequests.asMono();
+
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/products/events")), slowChain).subscribe();
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/functional/products")
+                                                                      .accept(MediaType.APPLICATION_NDJSON)), slowChain).subscribe();
+        assertEquals(2, filter.openStreams());
+        assertEquals(0, filter.inFlight());
+
+        AtomicBoolean handled = new AtomicBoolean();
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/products/1")),
+                exchange -> Mono.fromRunnable(() -> handled.set(true))).block();
+        assertTrue(handled.get());
+
+        MockServerWebExchange shed = MockServerWebExchange.from(MockServerHttpRequest.get("/functional/products/export"));
+        filter.filter(shed, slowChain).block();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, shed.getResponse().getStatusCode());
+        assertEquals(1, rejected("streams"));
+
+        slowRequests.tryEmitEmpty();
+        assertEquals(0, filter.openStreams());
+    }
+
+    @Test
+    void testShedRequestsTakeNoTokens() {
+        productProperties.getLoadShedding().setMaxMongoPoolWaitQueue(0);
+        WebTestClient testClient = testClient();
+
+        mongoPoolWaitQueue.connectionCheckOutStarted(null);
+        for (int i = 0; i < 20; i++) {
+            testClient.get().uri("/products").exchange().expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        mongoPoolWaitQueue.connectionCheckedOut(null);
+        for (int i = 0; i < 10; i++) {
+            testClient.get().uri("/products").exchange().expectStatus().isOk();
+        }
+        assertEquals(0, rejected("rate_limited"));
+    }
+
+}
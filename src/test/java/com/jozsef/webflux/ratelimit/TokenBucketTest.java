@@ -0,0 +1,73 @@
+package com.jozsef.webflux.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testBurstThenRefill() {
+        TokenBucket bucket = new TokenBucket(2, 4, 0);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, bucket.tryAcquire(1, 0));
+        }
+        assertEquals(SECOND / 2, bucket.tryAcquire(1, 0));
+
+        assertEquals(0, bucket.tryAcquire(1, SECOND / 2));
+        assertTrue(bucket.tryAcquire(1, SECOND / 2) > 0);
+
+        // idle long enough to be full, but never more than the burst
+        long later = 10 * SECOND;
+        assertEquals(0, bucket.tryAcquire(4, later));
+        assertTrue(bucket.tryAcquire(1, later) > 0);
+    }
+
+    @Test
+    void testRejectionTakesNothing() {
+        TokenBucket bucket = new TokenBucket(1, 5, 0);
+
+        assertEquals(0, bucket.tryAcquire(3, 0));
+        assertEquals(SECOND, bucket.tryAcquire(3, 0));
+        assertEquals(0, bucket.tryAcquire(2, 0));
+    }
+
+    @Test
+    void testConcurrentAcquiresNeverExceedBurst() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(0.001, 1000, 0);
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (bucket.tryAcquire(1, 0) == 0) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1000, acquired.get());
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductWriteResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InMemoryProductRepositoryTest {
+
+    private final Product latte = new Product("1", "Big Latte", 2.99, 0L);
+    private final Product tea = new Product("2", "Green Tea", 1.99, 0L);
+
+    private ProductRepository mongoRepository;
+
+    private ProductEventPublisher productEventPublisher;
+
+    private InMemoryProductCatalog catalog;
+
+    private InMemoryProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() {
+        mongoRepository = mock(ProductRepository.class);
+        ProductProperties productProperties = new ProductProperties();
+        productEventPublisher = new ProductEventPublisher(productProperties);
+        catalog = new InMemoryProductCatalog(mongoRepository, productEventPublisher, productProperties);
+        productRepository = new InMemoryProductRepository(mongoRepository, catalog, productProperties);
+        catalog.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        catalog.stop();
+    }
+
+    @Test
+    void testReadsGoToMongoUntilLoaded() {
+        when(mongoRepository.findById("1")).thenReturn(Mono.just(latte));
+
+        StepVerifier.create(productRepository.findById("1")).expectNext(latte).verifyComplete();
+        verify(mongoRepository).findById("1");
+    }
+
+    @Test
+    void testReadsAreServedFromMemory() {
+        load(latte, tea);
+
+        StepVerifier.create(productRepository.findById("1")).expectNext(latte).verifyComplete();
+        StepVerifier.create(productRepository.findAllById(List.of("2", "3"))).expectNext(tea).verifyComplete();
+        StepVerifier.create(productRepository.findMatching(ProductQuery.builder().sort(ProductCursor.PRICE).build()))
+                    .expectNext(tea, latte)
+                    .verifyComplete();
+        StepVerifier.create(productRepository.streamAll(1)).expectNext(latte, tea).verifyComplete();
+        StepVerifier.create(productRepository.findPage(ProductQuery.all(), null, 1))
+                    .assertNext(page -> {
+                        assertEquals(List.of(latte), page.getProducts());
+                        assertEquals(ProductCursor.after(ProductCursor.ID, latte).encode(), page.getNextCursor());
+                    })
+                    .verifyComplete();
+        StepVerifier.create(productRepository.count()).expectNext(2L).verifyComplete();
+
+        verify(mongoRepository, never()).findById(anyString());
+        verify(mongoRepository, never()).findMatching(any());
+    }
+
+    @Test
+    void testWritesGoThroughToMongo() {
+        load(latte);
+        Product updated = new Product("1", "Big Latte", 3.49, 1L);
+        when(mongoRepository.findAndUpdateById("1", updated, Set.of(0L))).thenReturn(Mono.just(updated));
+        when(mongoRepository.insert(tea)).thenReturn(Mono.just(tea));
+        when(mongoRepository.deleteById("2")).thenReturn(Mono.empty());
+
+        StepVerifier.create(productRepository.findAndUpdateById("1", updated, Set.of(0L))).expectNext(updated).verifyComplete();
+        StepVerifier.create(productRepository.insert(tea)).expectNext(tea).verifyComplete();
+        assertEquals(updated, catalog.getStore().get("1"));
+        assertEquals(tea, catalog.getStore().get("2"));
+
+        StepVerifier.create(productRepository.deleteById("2")).verifyComplete();
+        assertEquals(1, catalog.getStore().size());
+    }
+
+    @Test
+    void testBulkUpsertStoresWhatTheEventsCarry() {
+        load(latte);
+        Product stored = new Product("1", "Big Latte", 3.49, 1L);
+        // the request's version is not the stored one, Mongo increments it
+        Product requested = new Product("1", "Big Latte", 3.49, 99L);
+        when(mongoRepository.bulkUpsert(any(), anyInt(), anyInt())).thenReturn(Flux.just(
+                        new ProductWriteResult(0, "1", ProductWriteResult.Status.UPDATED, null),
+                        new ProductWriteResult(1, "9", ProductWriteResult.Status.FAILED, "duplicate key"))
+                .doOnSubscribe(s -> productEventPublisher.publish(ProductEvent.Type.UPDATE, "1", stored)));
+
+        StepVerifier.create(productRepository.bulkUpsert(Flux.just(requested), 1000, 2)).expectNextCount(2).verifyComplete();
+        assertEquals(stored, catalog.getStore().get("1"));
+        verify(mongoRepository, never()).findAllById(ArgumentMatchers.<Iterable<String>>any());
+    }
+
+    @Test
+    void testEventsKeepTheStoreCurrent() {
+        load(latte, tea);
+
+        productEventPublisher.publish(ProductEvent.Type.UPDATE, "1", new Product("1", "Big Latte", 3.49, 1L));
+        productEventPublisher.publish(ProductEvent.Type.DELETE, "2", null);
+
+        assertEquals(3.49, catalog.getStore().get("1").getPrice());
+        assertEquals(1, catalog.getStore().size());
+
+        productEventPublisher.publish(ProductEvent.Type.DELETE, null, null);
+        assertEquals(0, catalog.getStore().size());
+    }
+
+    private void load(Product... products) {
+        when(mongoRepository.streamAll(anyInt())).thenReturn(Flux.just(products));
+        catalog.load();
+        assertTrue(catalog.isLoaded());
+    }
+
+}
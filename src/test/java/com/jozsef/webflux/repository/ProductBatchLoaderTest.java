@@ -0,0 +1,112 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProductBatchLoaderTest {
+
+    private final Product latte = Product.builder().id("1").name("Big Latte").price(2.99).build();
+    private final Product tea = Product.builder().id("2").name("Green Tea").price(1.99).build();
+
+    private ProductRepository productRepository;
+
+    private ProductProperties productProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private VirtualTimeScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        productProperties = new ProductProperties();
+        productProperties.getBatching().setWindow(Duration.ofMillis(5));
+        meterRegistry = new SimpleMeterRegistry();
+        scheduler = VirtualTimeScheduler.create();
+    }
+
+    private ProductBatchLoader loader() {
+        return new ProductBatchLoader(productRepository, productProperties, meterRegistry, scheduler);
+    }
+
+    @Test
+    void testLookupsInOneWindowShareAQuery() {
+        when(productRepository.findAllById(Set.of("1", "2", "3"))).thenReturn(Flux.just(tea, latte));
+        ProductBatchLoader loader = loader();
+
+        AtomicReference<Product> first = new AtomicReference<>();
+        AtomicReference<Product> again = new AtomicReference<>();
+        AtomicReference<Product> second = new AtomicReference<>();
+        AtomicReference<Product> missing = new AtomicReference<>();
+        loader.findById("1").subscribe(first::set);
+        loader.findById("1").subscribe(again::set);
+        loader.findById("2").subscribe(second::set);
+        loader.findById("3").subscribe(missing::set);
+
+        verify(productRepository, never()).findAllById(ArgumentMatchers.<Iterable<String>>any());
+        scheduler.advanceTimeBy(Duration.ofMillis(5));
+
+        verify(productRepository, times(1)).findAllById(ArgumentMatchers.<Iterable<String>>any());
+        assertEquals(latte, first.get());
+        assertEquals(latte, again.get());
+        assertEquals(tea, second.get());
+        assertNull(missing.get());
+        assertEquals(3, meterRegistry.get("products.repository.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    void testFullBatchIsSentWithoutWaiting() {
+        productProperties.getBatching().setMaxSize(2);
+        when(productRepository.findAllById(Set.of("1", "2"))).thenReturn(Flux.just(latte, tea));
+        ProductBatchLoader loader = loader();
+
+        StepVerifier.create(Flux.merge(loader.findById("1"), loader.findById("2")))
+                    .expectNextCount(2)
+                    .verifyComplete();
+        verify(productRepository, times(1)).findAllById(ArgumentMatchers.<Iterable<String>>any());
+    }
+
+    @Test
+    void testErrorReachesEveryLookup() {
+        when(productRepository.findAllById(ArgumentMatchers.<Iterable<String>>any())).thenReturn(Flux.error(new IllegalStateException("no primary")));
+        ProductBatchLoader loader = loader();
+
+        Mono<List<Product>> lookups = Flux.merge(loader.findById("1"), loader.findById("2")).collectList();
+        StepVerifier.withVirtualTime(() -> lookups, () -> scheduler, Long.MAX_VALUE)
+                    .thenAwait(Duration.ofMillis(5))
+                    .verifyError(IllegalStateException.class);
+    }
+
+    @Test
+    void testDisabledLooksUpDirectly() {
+        productProperties.getBatching().setEnabled(false);
+        when(productRepository.findById("1")).thenReturn(Mono.just(latte));
+
+        StepVerifier.create(loader().findById("1"))
+                    .expectNext(latte)
+                    .verifyComplete();
+        verify(productRepository, never()).findAllById(ArgumentMatchers.<Iterable<String>>any());
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ProductCursorTest {
+
+    private final Product product = Product.builder().id("a|b").name("Tea | Latte|").price(2.99).build();
+
+    @Test
+    void testSeparatorInIdAndNameRoundTrips() {
+        ProductCursor byName = ProductCursor.after(ProductCursor.NAME, product);
+        ProductCursor byPrice = ProductCursor.after(ProductCursor.PRICE, product);
+        ProductCursor byId = ProductCursor.after(ProductCursor.ID, product);
+
+        assertEquals(byName, ProductCursor.decode(byName.encode(), ProductCursor.NAME));
+        assertEquals(byPrice, ProductCursor.decode(byPrice.encode(), ProductCursor.PRICE));
+        assertEquals(byId, ProductCursor.decode(byId.encode(), ProductCursor.ID));
+    }
+
+    @Test
+    void testCursorForAnotherSortIsRejected() {
+        String token = ProductCursor.after(ProductCursor.NAME, product).encode();
+
+        assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode(token, ProductCursor.PRICE));
+    }
+
+    @Test
+    void testMalformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode("not base64!", ProductCursor.ID));
+        assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode(token("id|x|abc0"), ProductCursor.ID));
+        assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode(token("id|3|abc"), ProductCursor.ID));
+    }
+
+    private static String token(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
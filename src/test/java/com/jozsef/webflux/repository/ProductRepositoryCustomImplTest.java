@@ -0,0 +1,130 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProductRepositoryCustomImplTest {
+
+    private final Product latte = new Product("1", "Big Latte", 2.99, 0L);
+
+    private ReactiveMongoOperations mongoOperations;
+
+    private ProductRepository productRepository;
+
+    private final List<ProductEvent> events = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        mongoOperations = mock(ReactiveMongoOperations.class);
+        when(mongoOperations.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        ProductEventPublisher productEventPublisher = new ProductEventPublisher(new ProductProperties());
+        productEventPublisher.events().subscribe(events::add);
+
+        // composed the way Spring Data does it, so the inherited methods this fragment replaces are covered as well
+        productRepository = new ReactiveMongoRepositoryFactory(mongoOperations).getRepository(ProductRepository.class,
+                RepositoryComposition.RepositoryFragments.just(new ProductRepositoryCustomImpl(mongoOperations, productEventPublisher)));
+    }
+
+    @Test
+    void testInsertIsPublished() {
+        when(mongoOperations.insert(latte)).thenReturn(Mono.just(latte));
+
+        StepVerifier.create(productRepository.insert(latte)).expectNext(latte).verifyComplete();
+
+        assertEquals(1, events.size());
+        assertEquals(ProductEvent.Type.INSERT, events.get(0).getEventType());
+        assertEquals(latte, events.get(0).getProduct());
+    }
+
+    @Test
+    void testFailedInsertIsNotPublished() {
+        when(mongoOperations.insert(latte)).thenReturn(Mono.error(new DuplicateKeyException("E11000")));
+
+        StepVerifier.create(productRepository.insert(latte)).verifyError(DuplicateKeyException.class);
+
+        assertEquals(List.of(), events);
+    }
+
+    @Test
+    void testUpdateAndRemoveArePublished() {
+        Product updated = new Product("1", "Big Latte", 3.49, 1L);
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Product.class)))
+                .thenReturn(Mono.just(updated));
+        when(mongoOperations.findAndRemove(any(Query.class), eq(Product.class))).thenReturn(Mono.just(updated), Mono.empty());
+
+        productRepository.findAndUpdateById("1", updated, null).block();
+        productRepository.findAndRemoveById("1", null).block();
+        productRepository.findAndRemoveById("1", null).block();
+
+        assertEquals(2, events.size());
+        assertEquals(ProductEvent.Type.UPDATE, events.get(0).getEventType());
+        assertEquals(updated, events.get(0).getProduct());
+        assertEquals(ProductEvent.Type.DELETE, events.get(1).getEventType());
+        assertEquals("1", events.get(1).getProductId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBulkWritesPublishTheStoredProducts() {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        when(mongoOperations.getCollectionName(Product.class)).thenReturn("product");
+        when(mongoOperations.getCollection("product")).thenReturn(Mono.just(collection));
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenReturn(Mono.just(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of())));
+        Product stored = new Product("1", "Big Latte", 3.49, 1L);
+        when(mongoOperations.find(any(Query.class), eq(Product.class))).thenReturn(Flux.just(stored));
+
+        StepVerifier.create(productRepository.bulkUpsert(Flux.just(new Product("1", "Big Latte", 3.49, 99L)), 10, 1))
+                    .expectNextMatches(result -> result.getStatus() == ProductWriteResult.Status.UPDATED)
+                    .verifyComplete();
+
+        assertEquals(1, events.size());
+        assertEquals(ProductEvent.Type.UPDATE, events.get(0).getEventType());
+        assertEquals(stored, events.get(0).getProduct());
+    }
+
+    @Test
+    void testDeleteAllIsPublished() {
+        when(mongoOperations.remove(any(Query.class), eq(Product.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(productRepository.deleteAll()).verifyComplete();
+
+        assertEquals(1, events.size());
+        assertEquals(ProductEvent.Type.DELETE, events.get(0).getEventType());
+        assertEquals(null, events.get(0).getProductId());
+    }
+
+}
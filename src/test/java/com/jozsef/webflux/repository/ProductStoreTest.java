@@ -0,0 +1,193 @@
+package com.jozsef.webflux.repository;
+
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProductStoreTest {
+
+    private static final Comparator<String> NULLS_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+    private static final Comparator<Double> PRICE_NULLS_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private final ProductStore store = new ProductStore();
+
+    @Test
+    void testPutGetAndRemove() {
+        Product latte = new Product("1", "Big Latte", 2.99, 0L);
+        assertTrue(store.put(latte));
+
+        assertEquals(latte, store.get("1"));
+        assertNull(store.get("2"));
+
+        assertTrue(store.put(new Product("1", "Big Latte", 3.49, 1L)));
+        assertEquals(3.49, store.get("1").getPrice());
+
+        assertTrue(store.remove("1"));
+        assertFalse(store.remove("1"));
+        assertNull(store.get("1"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testOlderVersionIsIgnored() {
+        store.put(new Product("1", "Big Latte", 3.49, 2L));
+
+        assertFalse(store.put(new Product("1", "Big Latte", 2.99, 1L)));
+        assertEquals(3.49, store.get("1").getPrice());
+    }
+
+    @Test
+    void testNullsAreKept() {
+        store.put(new Product("1", null, null, null));
+
+        assertEquals(new Product("1", null, null, null), store.get("1"));
+    }
+
+    @Test
+    void testMatchesReferenceModelUnderRandomWrites() {
+        Random random = new Random(42);
+        Map<String, Product> reference = new TreeMap<>();
+        String[] names = {"Big Latte", "Big Decaf", "Green Tea", "Jasmine Tea", null};
+
+        for (int i = 0; i < 20_000; i++) {
+            String id = String.valueOf(random.nextInt(2_000));
+            if (random.nextInt(4) == 0) {
+                assertEquals(reference.remove(id) != null, store.remove(id));
+            } else {
+                Double price = random.nextInt(10) == 0 ? null : (double) random.nextInt(500) / 10;
+                Product product = new Product(id, names[random.nextInt(names.length)], price, null);
+                store.put(product);
+                reference.put(id, product);
+            }
+        }
+
+        assertEquals(reference.size(), store.size());
+        for (int i = 0; i < 2_000; i++) {
+            assertEquals(reference.get(String.valueOf(i)), store.get(String.valueOf(i)));
+        }
+
+        assertListing(reference, ProductQuery.builder().build(), product -> true,
+                Comparator.comparing(Product::getId));
+        assertListing(reference, ProductQuery.builder().sort(ProductCursor.NAME).namePrefix("Big").build(),
+                product -> product.getName() != null && product.getName().startsWith("Big"),
+                Comparator.comparing(Product::getName, NULLS_FIRST).thenComparing(Product::getId));
+        assertListing(reference, ProductQuery.builder().sort(ProductCursor.PRICE).minPrice(10.0).maxPrice(20.0).build(),
+                product -> product.getPrice() != null && product.getPrice() >= 10 && product.getPrice() <= 20,
+                Comparator.comparing(Product::getPrice, PRICE_NULLS_FIRST).thenComparing(Product::getId));
+        assertListing(reference, ProductQuery.builder().sort(ProductCursor.PRICE).nameContains("Tea").build(),
+                product -> product.getName() != null && product.getName().contains("Tea"),
+                Comparator.comparing(Product::getPrice, PRICE_NULLS_FIRST).thenComparing(Product::getId));
+    }
+
+    @Test
+    void testDeferredIndexesAreBuiltBySorting() {
+        Random random = new Random(7);
+        Map<String, Product> reference = new TreeMap<>();
+        String[] names = {"Big Latte", "Big Decaf", "Green Tea", null};
+
+        store.deferIndexes();
+        for (int i = 0; i < 5_000; i++) {
+            String id = String.valueOf(random.nextInt(4_000));
+            Double price = random.nextInt(10) == 0 ? null : (double) random.nextInt(500) / 10;
+            Product product = new Product(id, names[random.nextInt(names.length)], price, null);
+            store.put(product);
+            reference.put(id, product);
+        }
+        store.remove("1");
+        reference.remove("1");
+        assertEquals(reference.get("2"), store.get("2"));
+        assertThrows(IllegalStateException.class, () -> store.find(ProductQuery.all(), null, 10));
+        store.buildIndexes();
+
+        // and kept in order by the writes that follow
+        for (int i = 0; i < 2_000; i++) {
+            String id = String.valueOf(random.nextInt(4_000));
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(id) != null, store.remove(id));
+            } else {
+                Product product = new Product(id, names[random.nextInt(names.length)], (double) random.nextInt(500) / 10, null);
+                store.put(product);
+                reference.put(id, product);
+            }
+        }
+
+        assertListing(reference, ProductQuery.builder().build(), product -> true,
+                Comparator.comparing(Product::getId));
+        assertListing(reference, ProductQuery.builder().sort(ProductCursor.NAME).build(), product -> true,
+                Comparator.comparing(Product::getName, NULLS_FIRST).thenComparing(Product::getId));
+        assertListing(reference, ProductQuery.builder().sort(ProductCursor.PRICE).maxPrice(25.0).build(),
+                product -> product.getPrice() != null && product.getPrice() <= 25,
+                Comparator.comparing(Product::getPrice, PRICE_NULLS_FIRST).thenComparing(Product::getId));
+    }
+
+    @Test
+    void testProjectionKeepsIdAndSortField() {
+        store.put(new Product("1", "Big Latte", 2.99, 0L));
+        ProductQuery query = ProductQuery.builder().sort(ProductCursor.PRICE).fields(Set.of(ProductCursor.NAME)).build();
+
+        assertEquals(List.of(new Product("1", "Big Latte", 2.99, null)), store.find(query, null, 10));
+    }
+
+    @Test
+    void testPriceStats() {
+        store.put(new Product("1", "Big Latte", 2.99, 0L));
+        store.put(new Product("2", "Big Decaf", 12.49, 0L));
+        store.put(new Product("3", "Green Tea", 11.0, 0L));
+        store.put(new Product("4", "Mystery", null, 0L));
+
+        ProductStats stats = store.priceStats(10);
+
+        assertEquals(4, stats.getCount());
+        assertEquals(2.99, stats.getMinPrice());
+        assertEquals(12.49, stats.getMaxPrice());
+        assertEquals((2.99 + 12.49 + 11.0) / 3, stats.getAvgPrice(), 1e-9);
+        assertEquals(List.of(new ProductStats.PriceBucket(0, 1), new ProductStats.PriceBucket(10, 2)), stats.getHistogram());
+    }
+
+    @Test
+    void testClear() {
+        store.put(new Product("1", "Big Latte", 2.99, 0L));
+        store.clear();
+        store.put(new Product("2", "Green Tea", 1.99, 0L));
+
+        assertNull(store.get("1"));
+        assertEquals(List.of(new Product("2", "Green Tea", 1.99, 0L)), store.find(ProductQuery.all(), null, 10));
+    }
+
+    /**
+     * Walks the listing page by page with cursors and compares it to the reference model sorted and filtered the
+     * same way.
+     */
+    private void assertListing(Map<String, Product> reference, ProductQuery query, Predicate<Product> filter,
+                               Comparator<Product> order) {
+        List<Product> expected = reference.values().stream().filter(filter).sorted(order).collect(Collectors.toList());
+
+        List<Product> actual = new ArrayList<>();
+        ProductCursor after = null;
+        List<Product> page;
+        do {
+            page = store.find(query, after, 37);
+            actual.addAll(page);
+            after = page.isEmpty() ? null : ProductCursor.after(query.getSort(), page.get(page.size() - 1));
+        } while (page.size() == 37);
+
+        assertEquals(expected, actual);
+    }
+
+}
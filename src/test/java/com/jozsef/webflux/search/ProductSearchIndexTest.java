@@ -0,0 +1,131 @@
+package com.jozsef.webflux.search;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProductSearchIndexTest {
+
+    private ProductEventPublisher productEventPublisher;
+
+    private ProductSearchIndex productSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        productEventPublisher = new ProductEventPublisher(new ProductProperties());
+        productSearchIndex = new ProductSearchIndex(null, productEventPublisher);
+        productSearchIndex.index(product("1", "Big Latte"));
+        productSearchIndex.index(product("2", "Big Decaf"));
+        productSearchIndex.index(product("3", "Latte Macchiato"));
+        productSearchIndex.index(product("4", "Crème Brûlée Latte"));
+    }
+
+    @Test
+    void testPrefixSearchRanksWholeWordsFirst() {
+        productSearchIndex.index(product("5", "Lattes To Go"));
+
+        assertEquals(List.of("1", "3", "4", "5"), ids(productSearchIndex.search("latte", 10)));
+        assertEquals(List.of("1", "5", "3", "4"), ids(productSearchIndex.search("lat", 10)));
+    }
+
+    @Test
+    void testAllTermsMustMatch() {
+        assertEquals(List.of("1"), ids(productSearchIndex.search("big la", 10)));
+        assertTrue(productSearchIndex.search("big tea", 10).isEmpty());
+    }
+
+    @Test
+    void testSearchIgnoresCaseAndAccents() {
+        assertEquals(List.of("4"), ids(productSearchIndex.search("CREME brul", 10)));
+    }
+
+    @Test
+    void testLimit() {
+        assertEquals(List.of("1", "3"), ids(productSearchIndex.search("latte", 2)));
+        assertThrows(IllegalArgumentException.class, () -> productSearchIndex.search("latte", 0));
+    }
+
+    @Test
+    void testRenameAndRemove() {
+        productSearchIndex.index(product("1", "Small Latte"));
+        productSearchIndex.remove("2");
+
+        assertTrue(productSearchIndex.search("big", 10).isEmpty());
+        assertEquals(List.of("1"), ids(productSearchIndex.search("small", 10)));
+    }
+
+    @Test
+    void testStaleVersionIsIgnored() {
+        productSearchIndex.index(Product.builder().id("1").name("Big Latte v2").version(2L).build());
+        productSearchIndex.index(Product.builder().id("1").name("Big Latte v1").version(1L).build());
+
+        assertEquals(List.of("1"), ids(productSearchIndex.search("v2", 10)));
+        assertTrue(productSearchIndex.search("v1", 10).isEmpty());
+    }
+
+    @Test
+    void testKeptInSyncFromEvents() {
+        productSearchIndex.start();
+        try {
+            productEventPublisher.publish(ProductEvent.Type.INSERT, "6", product("6", "Green Tea"));
+            productEventPublisher.publish(ProductEvent.Type.DELETE, "3", null);
+
+            assertEquals(List.of("6"), ids(productSearchIndex.search("tea", 10)));
+            assertEquals(List.of("1", "4"), ids(productSearchIndex.search("latte", 10)));
+
+            productEventPublisher.publish(ProductEvent.Type.DELETE, null, null);
+            assertEquals(0, productSearchIndex.size());
+        } finally {
+            productSearchIndex.stop();
+        }
+    }
+
+    @Test
+    void testDeleteDuringLoadIsNotUndone() {
+        Sinks.Many<Product> catalog = Sinks.many().unicast().onBackpressureBuffer();
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.findAll()).thenReturn(catalog.asFlux());
+        productSearchIndex = new ProductSearchIndex(productRepository, productEventPublisher);
+        productSearchIndex.start();
+        try {
+            productSearchIndex.load();
+            catalog.tryEmitNext(product("1", "Big Latte"));
+            // deleted after the load read it, but before the load got to it
+            productEventPublisher.publish(ProductEvent.Type.DELETE, "2", null);
+            catalog.tryEmitNext(product("2", "Green Tea"));
+            catalog.tryEmitComplete();
+
+            assertEquals(List.of("1"), ids(productSearchIndex.search("big", 10)));
+            assertTrue(productSearchIndex.search("tea", 10).isEmpty());
+
+            // once loaded, the id can be reused
+            productEventPublisher.publish(ProductEvent.Type.INSERT, "2", product("2", "Green Tea"));
+            assertEquals(List.of("2"), ids(productSearchIndex.search("tea", 10)));
+        } finally {
+            productSearchIndex.stop();
+        }
+    }
+
+    private static Product product(String id, String name) {
+        return Product.builder().id(id).name(name).price(1.0).version(0L).build();
+    }
+
+    private static List<String> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+
+}
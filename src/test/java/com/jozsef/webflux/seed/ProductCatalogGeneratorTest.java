@@ -0,0 +1,100 @@
+package com.jozsef.webflux.seed;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProductCatalogGeneratorTest {
+
+    @Test
+    void testSameSettingsGenerateTheSameCatalog() {
+        ProductProperties.Seed seed = seed(2_500);
+        seed.setChunkSize(100);
+
+        List<Product> products = generate(seed);
+        assertEquals(2_500, products.size());
+        assertEquals(products, generate(seed));
+
+        ProductCatalogGenerator generator = new ProductCatalogGenerator(seed);
+        for (int i = 0; i < products.size(); i++) {
+            assertEquals(generator.product(i), products.get(i));
+        }
+
+        seed.setRandomSeed(7);
+        assertNotEquals(products.get(0).getId(), new ProductCatalogGenerator(seed).id(0));
+    }
+
+    @Test
+    void testIdsAreDistinctObjectIds() {
+        List<Product> products = generate(seed(10_000));
+
+        assertThat(products).allMatch(product -> ObjectId.isValid(product.getId()));
+        assertEquals(products.size(), products.stream().map(Product::getId).distinct().count());
+    }
+
+    @Test
+    void testPricesStayInRange() {
+        ProductProperties.Seed seed = seed(10_000);
+        seed.setMinPrice(1);
+        seed.setMaxPrice(20);
+
+        for (ProductProperties.Seed.PriceDistribution distribution : ProductProperties.Seed.PriceDistribution.values()) {
+            seed.setPriceDistribution(distribution);
+            assertThat(generate(seed)).allMatch(product -> product.getPrice() >= 1 && product.getPrice() <= 20
+                    && Math.abs(product.getPrice() * 100 - Math.rint(product.getPrice() * 100)) < 1e-6);
+        }
+    }
+
+    @Test
+    void testZipfNamesAreSkewed() {
+        ProductProperties.Seed seed = seed(20_000);
+
+        seed.setNameDistribution(ProductProperties.Seed.NameDistribution.UNIFORM);
+        long uniformTop = mostCommonName(generate(seed));
+        seed.setNameDistribution(ProductProperties.Seed.NameDistribution.ZIPF);
+        long zipfTop = mostCommonName(generate(seed));
+
+        // 720 names: about 28 each when uniform, about 14% of all products for the first rank with s = 1
+        assertTrue(uniformTop < 100, "uniform top name count " + uniformTop);
+        assertTrue(zipfTop > 2_000, "zipf top name count " + zipfTop);
+    }
+
+    @Test
+    void testInvalidSettingsAreRejected() {
+        ProductProperties.Seed seed = seed(10);
+        seed.setMinPrice(5);
+        seed.setMaxPrice(1);
+
+        assertThrows(IllegalArgumentException.class, () -> new ProductCatalogGenerator(seed));
+    }
+
+    private static long mostCommonName(List<Product> products) {
+        Map<String, Long> counts = products.stream().collect(Collectors.groupingBy(Product::getName, Collectors.counting()));
+        return counts.values().stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    private static List<Product> generate(ProductProperties.Seed seed) {
+        return new ProductCatalogGenerator(seed).chunks()
+                                                .flatMapIterable(chunk -> chunk)
+                                                .collectList()
+                                                .block();
+    }
+
+    static ProductProperties.Seed seed(long count) {
+        ProductProperties.Seed seed = new ProductProperties.Seed();
+        seed.setCount(count);
+        return seed;
+    }
+
+}
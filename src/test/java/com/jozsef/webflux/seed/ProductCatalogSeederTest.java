@@ -0,0 +1,88 @@
+package com.jozsef.webflux.seed;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductWriteResult;
+import com.jozsef.webflux.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProductCatalogSeederTest {
+
+    private final Map<String, Product> stored = new ConcurrentHashMap<>();
+
+    private ProductRepository productRepository;
+
+    private ProductCatalogSeeder seeder;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        when(productRepository.findAllById(any(Iterable.class))).thenAnswer(invocation ->
+                Flux.fromIterable((Iterable<String>) invocation.getArgument(0)).mapNotNull(stored::get));
+        when(productRepository.bulkUpsert(any(), anyInt(), anyInt())).thenAnswer(invocation ->
+                ((Flux<Product>) invocation.getArgument(0)).index().map(item -> {
+                    stored.put(item.getT2().getId(), item.getT2());
+                    return new ProductWriteResult(item.getT1(), item.getT2().getId(), ProductWriteResult.Status.CREATED, null);
+                }));
+
+        seeder = new ProductCatalogSeeder(productRepository, new ProductProperties());
+    }
+
+    @Test
+    void testSeedsTheGeneratedCatalog() {
+        ProductProperties.Seed seed = ProductCatalogGeneratorTest.seed(2_500);
+        seed.setChunkSize(1_000);
+
+        ProductCatalogSeeder.Report report = seeder.seed(seed).block();
+
+        assertEquals(2_500, report.getInserted());
+        assertEquals(0, report.getExisting());
+        assertEquals(2_500, stored.size());
+        verify(productRepository, times(3)).bulkUpsert(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void testSeedingAgainWritesNothing() {
+        ProductProperties.Seed seed = ProductCatalogGeneratorTest.seed(2_500);
+        seeder.seed(seed).block();
+        clearInvocations(productRepository);
+
+        ProductCatalogSeeder.Report report = seeder.seed(seed).block();
+
+        assertEquals(2_500, report.getExisting());
+        assertEquals(0, report.getInserted());
+        verify(productRepository, never()).bulkUpsert(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void testInterruptedSeedingOnlyWritesTheMissingProducts() {
+        ProductProperties.Seed seed = ProductCatalogGeneratorTest.seed(2_500);
+        ProductCatalogGenerator generator = new ProductCatalogGenerator(seed);
+        for (int i = 0; i < 2_500; i += 2) {
+            stored.put(generator.id(i), generator.product(i));
+        }
+
+        ProductCatalogSeeder.Report report = seeder.seed(seed).block();
+
+        assertEquals(1_250, report.getExisting());
+        assertEquals(1_250, report.getInserted());
+        assertEquals(2_500, stored.size());
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.jozsef.webflux.service;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductLookupResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+public class CachingProductServiceTest {
+
+    private CachingProductService productService;
+
+    private ProductEventPublisher productEventPublisher;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private Product product;
+
+    @Mock
+    private ProductServiceImpl delegate;
+
+    @AfterEach
+    void tearDown() {
+        productService.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        productEventPublisher = new ProductEventPublisher(new ProductProperties());
+        productService = new CachingProductService(delegate, productEventPublisher, new ProductProperties(), meterRegistry);
+        productService.start();
+        product = Product.builder().id("1").name("Big Latte").price(2.99).build();
+    }
+
+    @Test
+    void testGetProductIsCached() {
+        when(delegate.getProductById("1")).thenReturn(Mono.just(product));
+
+        StepVerifier.create(productService.getProductById("1")).expectNext(product).verifyComplete();
+        StepVerifier.create(productService.getProductById("1")).expectNext(product).verifyComplete();
+
+        verify(delegate, times(1)).getProductById("1");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void testConcurrentMissesAreCoalesced() {
+        Sinks.One<Product> lookup = Sinks.one();
+        when(delegate.getProductById("1")).thenReturn(lookup.asMono());
+
+        Mono<Product> first = productService.getProductById("1");
+        Mono<Product> second = productService.getProductById("1");
+
+        StepVerifier.create(first.zipWith(second))
+                    .then(() -> lookup.tryEmitValue(product))
+                    .expectNextMatches(pair -> pair.getT1() == product && pair.getT2() == product)
+                    .verifyComplete();
+
+        verify(delegate, times(1)).getProductById("1");
+    }
+
+    @Test
+    void testGetProductsByIdQueriesOnlyMisses() {
+        Product tea = Product.builder().id("2").name("Green Tea").price(1.99).build();
+        when(delegate.getProductById("1")).thenReturn(Mono.just(product));
+        when(delegate.getProductsById(List.of("2", "3"))).thenReturn(Flux.just(
+                new ProductLookupResult("2", ProductLookupResult.Status.FOUND, tea),
+                new ProductLookupResult("3", ProductLookupResult.Status.NOT_FOUND, null)));
+
+        StepVerifier.create(productService.getProductById("1")).expectNext(product).verifyComplete();
+        StepVerifier.create(productService.getProductsById(List.of("2", "1", "3")))
+                    .expectNext(new ProductLookupResult("2", ProductLookupResult.Status.FOUND, tea))
+                    .expectNext(new ProductLookupResult("1", ProductLookupResult.Status.FOUND, product))
+                    .expectNext(new ProductLookupResult("3", ProductLookupResult.Status.NOT_FOUND, null))
+                    .verifyComplete();
+
+        verify(delegate, times(1)).getProductsById(List.of("2", "3"));
+    }
+
+    @Test
+    void testProductNotFoundIsNotCached() {
+        when(delegate.getProductById("aaa")).thenReturn(Mono.empty());
+
+        StepVerifier.create(productService.getProductById("aaa")).verifyComplete();
+        StepVerifier.create(productService.getProductById("aaa")).verifyComplete();
+
+        verify(delegate, times(2)).getProductById("aaa");
+    }
+
+    @Test
+    void testUpdateEventInvalidates() {
+        Product updatedProduct = Product.builder().id("1").name("Jasmine Tea").price(0.99).build();
+        when(delegate.getProductById("1")).thenReturn(Mono.just(product), Mono.just(updatedProduct));
+
+        StepVerifier.create(productService.getProductById("1")).expectNext(product).verifyComplete();
+        // written past this service, e.g. through the functional routes or by another instance
+        productEventPublisher.publish(ProductEvent.Type.UPDATE, "1", updatedProduct);
+        StepVerifier.create(productService.getProductById("1")).expectNext(updatedProduct).verifyComplete();
+    }
+
+    @Test
+    void testInFlightLookupIsDroppedByAnEvent() {
+        Sinks.One<Product> lookup = Sinks.one();
+        when(delegate.getProductById("1")).thenReturn(lookup.asMono(), Mono.empty());
+
+        StepVerifier.create(productService.getProductById("1"))
+                    .then(() -> {
+                        productEventPublisher.publish(ProductEvent.Type.DELETE, "1", null);
+                        lookup.tryEmitValue(product);
+                    })
+                    .expectNext(product)
+                    .verifyComplete();
+        StepVerifier.create(productService.getProductById("1")).verifyComplete();
+    }
+
+    @Test
+    void testDeleteAllEventInvalidatesEverything() {
+        when(delegate.getProductById("1")).thenReturn(Mono.just(product), Mono.empty());
+
+        StepVerifier.create(productService.getProductById("1")).expectNext(product).verifyComplete();
+        productEventPublisher.publish(ProductEvent.Type.DELETE, null, null);
+        StepVerifier.create(productService.getProductById("1")).verifyComplete();
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.jozsef.webflux.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProductCatalogSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ProductRepository productRepository;
+
+    private ProductEventPublisher productEventPublisher;
+
+    private ProductCatalogSnapshot productCatalogSnapshot;
+
+    private final List<Product> products = List.of(
+            Product.builder().id("1").name("Big Latte").price(2.99).version(0L).build(),
+            Product.builder().id("2").name("Green Tea").price(1.99).version(0L).build()
+    );
+
+    @BeforeEach
+    void setUp() {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getSnapshot().setDirectory(directory);
+        productRepository = mock(ProductRepository.class);
+        when(productRepository.streamAll(500)).thenReturn(Flux.fromIterable(products));
+        productEventPublisher = new ProductEventPublisher(productProperties);
+        productCatalogSnapshot = new ProductCatalogSnapshot(productRepository, productEventPublisher, objectMapper,
+                productProperties);
+        productCatalogSnapshot.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        productCatalogSnapshot.stop();
+    }
+
+    @Test
+    void testWritesPlainAndGzippedFile() throws IOException {
+        ProductCatalogSnapshot.Generation generation = productCatalogSnapshot.refresh().block();
+
+        assertEquals(2, generation.getCount());
+        assertEquals(products, List.of(objectMapper.readValue(generation.getFile().toFile(), Product[].class)));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(generation.getGzipFile()))) {
+            assertEquals(products, List.of(objectMapper.readValue(in, Product[].class)));
+        }
+        assertEquals(Files.size(generation.getFile()), generation.getSize());
+    }
+
+    @Test
+    void testEmptyCatalogIsEmptyArray() throws IOException {
+        when(productRepository.streamAll(500)).thenReturn(Flux.empty());
+
+        ProductCatalogSnapshot.Generation generation = productCatalogSnapshot.refresh().block();
+
+        assertEquals("[]", Files.readString(generation.getFile()));
+    }
+
+    @Test
+    void testRewrittenOnlyAfterChanges() {
+        ProductCatalogSnapshot.Generation first = productCatalogSnapshot.refresh().block();
+
+        StepVerifier.create(productCatalogSnapshot.refresh())
+                    .verifyComplete();
+
+        productEventPublisher.publishLocal(ProductEvent.Type.UPDATE, "1", products.get(0));
+        ProductCatalogSnapshot.Generation second = productCatalogSnapshot.refresh().block();
+        assertEquals(first.getNumber() + 1, second.getNumber());
+        assertEquals(second, productCatalogSnapshot.current().block());
+
+        // the previous generation stays for responses still reading it, the one before goes
+        productEventPublisher.publishLocal(ProductEvent.Type.DELETE, "2", null);
+        productCatalogSnapshot.refresh().block();
+        assertFalse(Files.exists(first.getFile()));
+        assertFalse(Files.exists(first.getGzipFile()));
+        assertTrue(Files.exists(second.getFile()));
+    }
+
+    @Test
+    void testETagFollowsContent(@TempDir Path otherDirectory) {
+        ProductProperties otherProperties = new ProductProperties();
+        otherProperties.getSnapshot().setDirectory(otherDirectory);
+        ProductCatalogSnapshot otherInstance = new ProductCatalogSnapshot(productRepository, productEventPublisher,
+                objectMapper, otherProperties);
+
+        ProductCatalogSnapshot.Generation first = productCatalogSnapshot.refresh().block();
+        otherInstance.refresh().block();
+        otherInstance.refresh().block();
+        assertEquals(first.eTag(false), otherInstance.current().block().eTag(false));
+        assertEquals(first.eTag(true), otherInstance.current().block().eTag(true));
+
+        when(productRepository.streamAll(500)).thenReturn(Flux.fromIterable(products.subList(0, 1)));
+        productEventPublisher.publishLocal(ProductEvent.Type.DELETE, "2", null);
+        ProductCatalogSnapshot.Generation second = productCatalogSnapshot.refresh().block();
+        assertNotEquals(first.eTag(false), second.eTag(false));
+    }
+
+    @Test
+    void testFailedWriteIsRetried() {
+        when(productRepository.streamAll(500)).thenReturn(Flux.error(new IllegalStateException("cursor killed")));
+
+        StepVerifier.create(productCatalogSnapshot.refresh())
+                    .verifyError(IllegalStateException.class);
+        assertEquals(0, directory.toFile().list().length);
+
+        when(productRepository.streamAll(500)).thenReturn(Flux.fromIterable(products));
+        StepVerifier.create(productCatalogSnapshot.refresh())
+                    .expectNextCount(1)
+                    .verifyComplete();
+    }
+
+    @Test
+    void testAcceptsGzip() {
+        assertTrue(ProductCatalogSnapshot.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ProductCatalogSnapshot.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(ProductCatalogSnapshot.acceptsGzip("*"));
+        assertFalse(ProductCatalogSnapshot.acceptsGzip(null));
+        assertFalse(ProductCatalogSnapshot.acceptsGzip("identity"));
+        assertFalse(ProductCatalogSnapshot.acceptsGzip("gzip;q=0"));
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.jozsef.webflux.stats;
+
+import com.jozsef.webflux.config.ProductProperties;
+import com.jozsef.webflux.event.ProductEventPublisher;
+import com.jozsef.webflux.model.Product;
+import com.jozsef.webflux.model.ProductEvent;
+import com.jozsef.webflux.model.ProductStats;
+import com.jozsef.webflux.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProductPriceSummaryTest {
+
+    private ProductProperties productProperties;
+
+    private ProductEventPublisher productEventPublisher;
+
+    private ProductRepository productRepository;
+
+    private ProductPriceSummary productPriceSummary;
+
+    @BeforeEach
+    void setUp() {
+        productProperties = new ProductProperties();
+        productProperties.getStats().setBucketWidth(5);
+        productEventPublisher = new ProductEventPublisher(productProperties);
+        productRepository = mock(ProductRepository.class);
+        when(productRepository.findAll()).thenReturn(Flux.just(product("1", 2.0), product("2", 7.0), product("3", 9.0),
+                product("4", null)));
+        productPriceSummary = new ProductPriceSummary(productRepository, productEventPublisher, productProperties);
+        productPriceSummary.load();
+    }
+
+    @Test
+    void testSummary() {
+        StepVerifier.create(productPriceSummary.stats(null))
+                    .expectNext(ProductStats.builder()
+                                            .count(4)
+                                            .minPrice(2.0)
+                                            .maxPrice(9.0)
+                                            .avgPrice(6.0)
+                                            .bucketWidth(5)
+                                            .histogram(List.of(new ProductStats.PriceBucket(0, 1), new ProductStats.PriceBucket(5, 2)))
+                                            .build())
+                    .verifyComplete();
+    }
+
+    @Test
+    void testUpdateAndRemoveTakeOldPriceOut() {
+        productPriceSummary.put(product("3", 12.0));
+        productPriceSummary.remove("1");
+
+        ProductStats stats = productPriceSummary.stats(null).block();
+        assertEquals(3, stats.getCount());
+        assertEquals(7.0, stats.getMinPrice());
+        assertEquals(12.0, stats.getMaxPrice());
+        assertEquals(9.5, stats.getAvgPrice());
+        assertEquals(List.of(new ProductStats.PriceBucket(5, 1), new ProductStats.PriceBucket(10, 1)), stats.getHistogram());
+    }
+
+    @Test
+    void testOtherWidthOrDisabledFallsBackToAggregation() {
+        StepVerifier.create(productPriceSummary.stats(1.0)).verifyComplete();
+
+        productProperties.getStats().setInMemory(false);
+        StepVerifier.create(productPriceSummary.stats(null)).verifyComplete();
+    }
+
+    @Test
+    void testAggregatedUntilLoaded() {
+        productPriceSummary = new ProductPriceSummary(productRepository, productEventPublisher, productProperties);
+        productPriceSummary.put(product("1", 2.0));
+        StepVerifier.create(productPriceSummary.stats(null)).verifyComplete();
+
+        when(productRepository.findAll()).thenReturn(Flux.error(new IllegalStateException("no primary")));
+        productPriceSummary.load();
+        StepVerifier.create(productPriceSummary.stats(null)).verifyComplete();
+    }
+
+    @Test
+    void testDeleteDuringLoadIsNotUndone() {
+        Sinks.Many<Product> catalog = Sinks.many().unicast().onBackpressureBuffer();
+        when(productRepository.findAll()).thenReturn(catalog.asFlux());
+        productPriceSummary = new ProductPriceSummary(productRepository, productEventPublisher, productProperties);
+        productPriceSummary.start();
+        try {
+            productPriceSummary.load();
+            catalog.tryEmitNext(product("1", 2.0));
+            // deleted after the load read it, but before the load got to it
+            productEventPublisher.publish(ProductEvent.Type.DELETE, "2", null);
+            catalog.tryEmitNext(product("2", 7.0));
+            // updated after the load read it
+            productEventPublisher.publish(ProductEvent.Type.UPDATE, "3", product("3", 12.0));
+            catalog.tryEmitNext(product("3", 9.0));
+            catalog.tryEmitComplete();
+
+            ProductStats stats = productPriceSummary.stats(null).block();
+            assertEquals(2, stats.getCount());
+            assertEquals(12.0, stats.getMaxPrice());
+            assertEquals(7.0, stats.getAvgPrice());
+        } finally {
+            productPriceSummary.stop();
+        }
+    }
+
+    @Test
+    void testKeptInSyncFromEvents() {
+        productPriceSummary.start();
+        try {
+            productEventPublisher.publish(ProductEvent.Type.UPDATE, "2", product("2", 1.0));
+            assertEquals(1.0, productPriceSummary.stats(null).block().getMinPrice());
+
+            productEventPublisher.publish(ProductEvent.Type.DELETE, null, null);
+            ProductStats stats = productPriceSummary.stats(null).block();
+            assertEquals(0, stats.getCount());
+            assertNull(stats.getAvgPrice());
+        } finally {
+            productPriceSummary.stop();
+        }
+    }
+
+    private static Product product(String id, Double price) {
+        return Product.builder().id(id).name("Product " + id).price(price).version(0L).build();
+    }
+
+}